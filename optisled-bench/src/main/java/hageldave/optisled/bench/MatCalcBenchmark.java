@@ -0,0 +1,71 @@
+package hageldave.optisled.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.ejml.data.DMatrixRMaj;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+
+/**
+ * Throughput of {@link MatCalcEJML} kernels.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MatCalcBenchmark {
+
+	@Param({"16", "128"})
+	public int dim;
+
+	MatCalcEJML mc = new MatCalcEJML();
+	DMatrixRMaj a, b, A, B;
+
+	@Setup
+	public void setup() {
+		Random rnd = new Random(42);
+		a = mc.rand(dim, 1, rnd);
+		b = mc.rand(dim, 1, rnd);
+		A = mc.rand(dim, dim, rnd);
+		B = mc.rand(dim, dim, rnd);
+	}
+
+	@Benchmark
+	public double inner() {
+		return mc.inner(a, b);
+	}
+
+	@Benchmark
+	public DMatrixRMaj matmul() {
+		return mc.matmul(A, B);
+	}
+
+	@Benchmark
+	public DMatrixRMaj pairwiseDistances2() {
+		return mc.pairwiseDistances2(A, B);
+	}
+
+	@Benchmark
+	public DMatrixRMaj[] svd() {
+		return mc.svd(A, false);
+	}
+
+	@Benchmark
+	public DMatrixRMaj pinv() {
+		return mc.pinv(A);
+	}
+}
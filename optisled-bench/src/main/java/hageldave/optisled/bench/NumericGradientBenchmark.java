@@ -0,0 +1,55 @@
+package hageldave.optisled.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.ejml.data.DMatrixRMaj;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.generic.numerics.NumericGradient;
+
+/**
+ * Throughput of {@link NumericGradient} on the rosenbrock function at several dimensionalities.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NumericGradientBenchmark {
+
+	@Param({"10", "100", "1000"})
+	public int dim;
+
+	MatCalcEJML mc = new MatCalcEJML();
+	NumericGradient<DMatrixRMaj> gradient;
+	DMatrixRMaj x;
+
+	@Setup
+	public void setup() {
+		gradient = new NumericGradient<>(mc, TestFunctions.rosenbrock(mc));
+		x = mc.rand(dim, 1, new Random(42));
+	}
+
+	@Benchmark
+	public DMatrixRMaj forward() {
+		return gradient.evaluate(x);
+	}
+
+	@Benchmark
+	public DMatrixRMaj central() {
+		return gradient.central.evaluate(x);
+	}
+}
@@ -0,0 +1,117 @@
+package hageldave.optisled.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.ejml.MatCalcEJMLF32;
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.ScalarFN.ScalarFNWithValueAndGradient;
+import hageldave.optisled.generic.problem.VectorFN;
+import hageldave.optisled.generic.solver.AdamGradientDescent;
+import hageldave.optisled.generic.solver.GradientDescent;
+
+/**
+ * Double ({@link MatCalcEJML}) versus single precision ({@link MatCalcEJMLF32}) descents on a
+ * large separable quadratic, which is memory-bandwidth bound.
+ * Run through {@link BenchmarkMain} to see the allocation rate next to the time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PrecisionBenchmark {
+
+	@Param({"F64", "F32"})
+	public String precision;
+
+	@Param({"100000", "1000000"})
+	public int dim;
+
+	Descents<?> descents;
+
+	@Setup
+	public void setup() {
+		descents = precision.equals("F32") ? new Descents<>(new MatCalcEJMLF32(), dim) : new Descents<>(new MatCalcEJML(), dim);
+	}
+
+	@Benchmark
+	public Object gradientDescent() {
+		return descents.gradientDescent();
+	}
+
+	@Benchmark
+	public Object adam() {
+		return descents.adam();
+	}
+
+	/** problem and solvers for one backend */
+	static class Descents<M> {
+		final MatCalc<M> mc;
+		final ScalarFNWithValueAndGradient<M> f;
+		final M init;
+
+		Descents(MatCalc<M> mc, int dim) {
+			this.mc = mc;
+			Random rnd = new Random(42);
+			M target = mc.randN(dim, 1, rnd);
+			M weights = mc.add_inp(mc.rand(dim, 1, rnd), 0.5);
+			M diff = mc.zeros(dim);
+			/* f(x) = sum_i w_i (x_i-t_i)^2 */
+			this.f = new ScalarFNWithValueAndGradient<M>() {
+				final VectorFN<M> gradient = x->{
+					M g = mc.zeros(dim);
+					evaluateWithGradient(x, g);
+					return g;
+				};
+
+				@Override
+				public double evaluate(M x) {
+					mc.lincomb_inp(diff, 1.0, x, -1.0, target);
+					return mc.innerWeighted(diff, weights, diff);
+				}
+
+				@Override
+				public double evaluateWithGradient(M x, M gradOut) {
+					double fx = evaluate(x);
+					mc.copyValues(diff, gradOut);
+					mc.elemmulAxpby_inp(2.0, weights, diff, 0.0, gradOut);
+					return fx;
+				}
+
+				@Override
+				public VectorFN<M> gradient() {
+					return gradient;
+				}
+			};
+			this.init = mc.zeros(dim);
+		}
+
+		M gradientDescent() {
+			GradientDescent<M> gd = new GradientDescent<>(mc);
+			gd.hyperparams.set(GradientDescent.PARAM_MAX_ITERATIONS, 20);
+			return gd.arg_min(f, f.gradient(), init);
+		}
+
+		M adam() {
+			AdamGradientDescent<M> adam = new AdamGradientDescent<>(mc);
+			adam.hyperparams.set(AdamGradientDescent.PARAM_STEP_SCALING, 0.1);
+			adam.hyperparams.set(AdamGradientDescent.PARAM_MAX_ITERATIONS, 20);
+			return adam.arg_min(f, f.gradient(), init);
+		}
+	}
+}
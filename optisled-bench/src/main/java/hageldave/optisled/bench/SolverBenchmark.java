@@ -0,0 +1,92 @@
+package hageldave.optisled.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ejml.data.DMatrixRMaj;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.generic.problem.OptimizationProblem;
+import hageldave.optisled.generic.problem.ScalarFN.ScalarFNWithGradient;
+import hageldave.optisled.generic.solver.AdamGradientDescent;
+import hageldave.optisled.generic.solver.AugmentedLagrangian;
+import hageldave.optisled.generic.solver.GradientDescent;
+import hageldave.optisled.generic.solver.LBFGS;
+import hageldave.optisled.generic.solver.LogBarrier;
+
+/**
+ * End-to-end solves on standard test functions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SolverBenchmark {
+
+	MatCalcEJML mc = new MatCalcEJML();
+	ScalarFNWithGradient<DMatrixRMaj> rosenbrock, quadratic;
+	OptimizationProblem<DMatrixRMaj> constrainedQP;
+	DMatrixRMaj init2, init50, init10;
+
+	@Setup
+	public void setup() {
+		rosenbrock = TestFunctions.rosenbrock(mc);
+		quadratic = TestFunctions.quadratic(mc, 50, 42);
+		constrainedQP = TestFunctions.constrainedQP(mc, 10);
+		init2 = mc.vecOf(-1.2, 1.0);
+		init50 = mc.zeros(50);
+		init10 = mc.zeros(10);
+	}
+
+	@Benchmark
+	public DMatrixRMaj gradientDescentRosenbrock() {
+		GradientDescent<DMatrixRMaj> gd = new GradientDescent<>(mc);
+		gd.hyperparams.set(GradientDescent.PARAM_MAX_ITERATIONS, 1000);
+		return gd.arg_min(rosenbrock, rosenbrock.gradient(), init2);
+	}
+
+	@Benchmark
+	public DMatrixRMaj gradientDescentQuadratic() {
+		GradientDescent<DMatrixRMaj> gd = new GradientDescent<>(mc);
+		return gd.arg_min(quadratic, quadratic.gradient(), init50);
+	}
+
+	@Benchmark
+	public DMatrixRMaj lbfgsRosenbrock() {
+		return new LBFGS<>(mc).arg_min(rosenbrock, rosenbrock.gradient(), init2);
+	}
+
+	@Benchmark
+	public DMatrixRMaj lbfgsQuadratic() {
+		return new LBFGS<>(mc).arg_min(quadratic, quadratic.gradient(), init50);
+	}
+
+	@Benchmark
+	public DMatrixRMaj adamQuadratic() {
+		AdamGradientDescent<DMatrixRMaj> adam = new AdamGradientDescent<>(mc);
+		adam.hyperparams.set(AdamGradientDescent.PARAM_STEP_SCALING, 0.1);
+		adam.hyperparams.set(AdamGradientDescent.PARAM_MAX_ITERATIONS, 1000);
+		return adam.arg_min(quadratic, quadratic.gradient(), init50);
+	}
+
+	@Benchmark
+	public DMatrixRMaj logBarrierConstrainedQP() {
+		return new LogBarrier<>(mc).arg_min(constrainedQP, init10);
+	}
+
+	@Benchmark
+	public DMatrixRMaj augmentedLagrangianConstrainedQP() {
+		return new AugmentedLagrangian<>(mc).arg_min(constrainedQP, init10);
+	}
+}
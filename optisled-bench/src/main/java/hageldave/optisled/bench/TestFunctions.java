@@ -0,0 +1,87 @@
+package hageldave.optisled.bench;
+
+import java.util.Random;
+
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.OptimizationProblem;
+import hageldave.optisled.generic.problem.OptimizationProblemBuilder;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.problem.ScalarFN.ScalarFNWithGradient;
+import hageldave.optisled.generic.problem.VectorFN;
+
+/**
+ * Standard test functions used by the benchmarks.
+ */
+public class TestFunctions {
+
+	/**
+	 * @param mc matrix calculator
+	 * @return rosenbrock function f(x) = sum_i 100*(x_i+1 - x_i^2)^2 + (1-x_i)^2 with analytic gradient
+	 */
+	public static <M> ScalarFNWithGradient<M> rosenbrock(MatCalc<M> mc) {
+		return new ScalarFNWithGradient<M>() {
+			@Override
+			public double evaluate(M x) {
+				double sum = 0;
+				for(int i=0; i<mc.numElem(x)-1; i++) {
+					double xi = mc.get(x, i), xn = mc.get(x, i+1);
+					double a = xn-xi*xi, b = 1-xi;
+					sum += 100*a*a + b*b;
+				}
+				return sum;
+			}
+
+			final VectorFN<M> grad = x->{
+				int n = mc.numElem(x);
+				M g = mc.zeros(n);
+				for(int i=0; i<n-1; i++) {
+					double xi = mc.get(x, i), xn = mc.get(x, i+1);
+					double a = xn-xi*xi;
+					mc.set_inp(g, i, mc.get(g, i) - 400*a*xi - 2*(1-xi));
+					mc.set_inp(g, i+1, mc.get(g, i+1) + 200*a);
+				}
+				return g;
+			};
+
+			@Override
+			public VectorFN<M> gradient() {
+				return grad;
+			}
+		};
+	}
+
+	/**
+	 * @param mc matrix calculator
+	 * @param dim dimensionality
+	 * @param seed random seed
+	 * @return ill conditioned convex quadratic f(x) = x^T Q x + l^T x with analytic gradient
+	 */
+	public static <M> ScalarFNWithGradient<M> quadratic(MatCalc<M> mc, int dim, long seed) {
+		Random rnd = new Random(seed);
+		M diag = mc.zeros(dim);
+		for(int i=0; i<dim; i++)
+			mc.set_inp(diag, i, 1.0 + 10.0*i/dim);
+		M R = mc.randN(dim, dim, rnd);
+		// Q = R^T diag R / dim (symmetric positive definite)
+		M Q = mc.scale_inp(mc.mult_aTb(R, mc.mulRowsByColVec(R, diag)), 1.0/dim);
+		M l = mc.randN(dim, 1, rnd);
+		return ScalarFN.quadratic(mc, Q, l, 0.0);
+	}
+
+	/**
+	 * @param mc matrix calculator
+	 * @param dim dimensionality
+	 * @return constrained quadratic problem, minimizing distance to (3,3,...) subject to x_i LEQ 1
+	 */
+	public static <M> OptimizationProblem<M> constrainedQP(MatCalc<M> mc, int dim) {
+		M target = mc.add_inp(mc.zeros(dim), 3.0);
+		OptimizationProblemBuilder<M> builder = OptimizationProblemBuilder.instance(mc, dim)
+				.setObjective(ScalarFN.quadratic(mc, mc.eye(dim), mc.scale(target, -2), mc.norm2(target)), null);
+		for(int i=0; i<dim; i++) {
+			M coefficients = mc.zeros(dim);
+			mc.set_inp(coefficients, i, 1.0);
+			builder.addIneqConstraint(ScalarFN.linear(mc, coefficients, -1.0), null);
+		}
+		return builder.build();
+	}
+}
@@ -112,6 +112,12 @@ public class MatCalcEJML implements MatCalc<DMatrixRMaj> {
 		return c;
 	}
 	
+	@Override
+	public DMatrixRMaj elemmul_inp(DMatrixRMaj a, DMatrixRMaj b) {
+		CommonOps_DDRM.elementMult(a, b);
+		return a;
+	}
+	
 	@Override
 	public DMatrixRMaj rowSums(DMatrixRMaj m) {
 		return CommonOps_DDRM.sumRows(m,null);
@@ -262,6 +268,49 @@ public class MatCalcEJML implements MatCalc<DMatrixRMaj> {
 		return c;
 	}
 
+	@Override
+	public DMatrixRMaj axpy_inp(double a, DMatrixRMaj x, DMatrixRMaj y) {
+		CommonOps_DDRM.addEquals(y, a, x);
+		return y;
+	}
+
+	@Override
+	public DMatrixRMaj axpby_inp(double a, DMatrixRMaj x, double b, DMatrixRMaj y) {
+		CommonOps_DDRM.add(a, x, b, y, y);
+		return y;
+	}
+
+	@Override
+	public DMatrixRMaj lincomb_inp(DMatrixRMaj target, double a, DMatrixRMaj x, double b, DMatrixRMaj y) {
+		CommonOps_DDRM.add(a, x, b, y, target);
+		return target;
+	}
+
+	@Override
+	public DMatrixRMaj elemmulAxpby_inp(double a, DMatrixRMaj x1, DMatrixRMaj x2, double b, DMatrixRMaj y) {
+		final int size = y.getNumElements();
+		for(int i=0; i<size; i++) {
+			y.data[i] = a*x1.data[i]*x2.data[i] + b*y.data[i];
+		}
+		return y;
+	}
+
+	@Override
+	public double innerWeighted(DMatrixRMaj a, DMatrixRMaj w, DMatrixRMaj b) {
+		final int size = a.getNumElements();
+		double sum=0;
+		for(int i=0; i<size; i++) {
+			sum += a.data[i]*w.data[i]*b.data[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public DMatrixRMaj fill_inp(DMatrixRMaj m, double v) {
+		CommonOps_DDRM.fill(m, v);
+		return m;
+	}
+
 	@Override
 	public DMatrixRMaj set_inp(DMatrixRMaj m, int idx, double v) {
 		m.set(idx, v);
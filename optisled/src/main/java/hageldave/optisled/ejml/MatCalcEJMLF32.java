@@ -0,0 +1,577 @@
+package hageldave.optisled.ejml;
+
+import java.util.function.DoubleUnaryOperator;
+
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.dense.row.CommonOps_FDRM;
+import org.ejml.dense.row.factory.DecompositionFactory_FDRM;
+import org.ejml.interfaces.decomposition.CholeskyDecomposition_F32;
+import org.ejml.interfaces.decomposition.EigenDecomposition_F32;
+import org.ejml.simple.SimpleMatrix;
+import org.ejml.simple.SimpleSVD;
+import org.ejml.simple.ops.SimpleOperations_FDRM;
+
+import hageldave.optisled.generic.numerics.MatCalc;
+
+/**
+ * {@link MatCalc} implementation using the single precision {@link FMatrixRMaj} matrix type of
+ * Efficient Java Matrix Library (EJML).
+ * <p>
+ * Halves the memory footprint and bandwidth of vectors and matrices compared to {@link MatCalcEJML},
+ * which pays off for memory-bound workloads (large dimensions, many cheap element-wise operations)
+ * that tolerate a relative precision of about {@code 1e-7}.
+ * Scalars passed in and returned are doubles and are rounded to float when stored.
+ * Reductions ({@link #inner(FMatrixRMaj, FMatrixRMaj)}, {@link #sum(FMatrixRMaj)}, ...) accumulate in double.
+ * <p>
+ * Solvers and {@link hageldave.optisled.generic.numerics.NumericGradient} adapt their precision dependent
+ * defaults through {@link #machineEpsilon()}.
+ */
+public class MatCalcEJMLF32 implements MatCalc<FMatrixRMaj> {
+	
+	static final SimpleOperations_FDRM ops = new SimpleOperations_FDRM();
+
+	@Override
+	public FMatrixRMaj vecOf(double... v) {
+		return FMatrixRMaj.wrap(v.length, 1, toFloat(v));
+	}
+	
+	@Override
+	public FMatrixRMaj matOf(double[][] values) {
+		FMatrixRMaj m = new FMatrixRMaj(values.length, values.length==0 ? 0:values[0].length);
+		for(int r=0; r<m.numRows; r++)
+			for(int c=0; c<m.numCols; c++)
+				m.unsafe_set(r, c, (float)values[r][c]);
+		return m;
+	}
+	
+	@Override
+	public FMatrixRMaj matOf(int nRows, double... values) {
+		return FMatrixRMaj.wrap(nRows, values.length/nRows, toFloat(values));
+	}
+
+	@Override
+	public FMatrixRMaj zeros(int size) {
+		return new FMatrixRMaj(size, 1);
+	}
+	
+	@Override
+	public FMatrixRMaj zeros(int rows, int columns) {
+		return new FMatrixRMaj(rows, columns);
+	}
+	
+	@Override
+	public FMatrixRMaj eye(int n, double s) {
+		FMatrixRMaj eye = eye(n);
+		// ops.scale(eye, s, eye);
+		CommonOps_FDRM.scale((float)s, eye, eye);
+		return eye;
+	}
+	
+	@Override
+	public FMatrixRMaj eye(int n) {
+		FMatrixRMaj m = zeros(n, n);
+//		ops.setIdentity(m);
+		CommonOps_FDRM.setIdentity(m);
+		return m;
+	}
+
+	@Override
+	public int numRows(FMatrixRMaj m) {
+		return m.numRows;
+	}
+
+	@Override
+	public int numCols(FMatrixRMaj m) {
+		return m.numCols;
+	}
+
+	@Override
+	public double inner(FMatrixRMaj a, FMatrixRMaj b) {
+		final int size = a.getNumElements();
+		double sum=0;
+		for(int i=0; i<size; i++) {
+			sum += (double)a.data[i]*b.data[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public FMatrixRMaj scale(FMatrixRMaj m, double s) {
+		return scale_inp(copy(m), s);
+	}
+
+	@Override
+	public FMatrixRMaj scale_inp(FMatrixRMaj m, double s) {
+//		ops.scale(m, s, m);
+		CommonOps_FDRM.scale((float)s, m, m);
+		return m;
+	}
+
+	@Override
+	public FMatrixRMaj matmul(FMatrixRMaj a, FMatrixRMaj b) {
+		FMatrixRMaj c = zeros(a.numRows, b.numCols);
+//		ops.mult(a, b, c);
+		CommonOps_FDRM.mult(a, b, c);
+		return c;
+	}
+	
+	@Override
+	public FMatrixRMaj elemmul(FMatrixRMaj a, FMatrixRMaj b) {
+		FMatrixRMaj c = a.copy();
+//		ops.elementMult(a, b, c);
+		CommonOps_FDRM.elementMult(a, b, c);
+		return c;
+	}
+	
+	@Override
+	public FMatrixRMaj elemdiv(FMatrixRMaj a, FMatrixRMaj b) {
+		FMatrixRMaj c = a.copy();
+//		ops.elementDiv(a, b, c);
+		CommonOps_FDRM.elementDiv(a, b, c);
+		return c;
+	}
+	
+	@Override
+	public FMatrixRMaj elemmul_inp(FMatrixRMaj a, FMatrixRMaj b) {
+		CommonOps_FDRM.elementMult(a, b);
+		return a;
+	}
+	
+	@Override
+	public FMatrixRMaj rowSums(FMatrixRMaj m) {
+		return CommonOps_FDRM.sumRows(m,null);
+	}
+	
+	@Override
+	public FMatrixRMaj colSums(FMatrixRMaj m) {
+		return CommonOps_FDRM.sumCols(m,null);
+	}
+	
+	@Override
+	public FMatrixRMaj rowMins(FMatrixRMaj m) {
+		return CommonOps_FDRM.minRows(m, null);
+	}
+	
+	@Override
+	public FMatrixRMaj colMins(FMatrixRMaj m) {
+		return CommonOps_FDRM.minCols(m, null);
+	}
+	
+	@Override
+	public FMatrixRMaj rowMaxs(FMatrixRMaj m) {
+		return CommonOps_FDRM.maxRows(m, null);
+	}
+	
+	@Override
+	public FMatrixRMaj colMaxs(FMatrixRMaj m) {
+		return CommonOps_FDRM.maxCols(m, null);
+	}
+	
+	@Override
+	public FMatrixRMaj mulColsByRowVec(FMatrixRMaj m, FMatrixRMaj rowV) {
+		FMatrixRMaj copy = m.copy();
+		CommonOps_FDRM.multCols(copy, rowV.data);
+		return copy;
+	}
+	
+	@Override
+	public FMatrixRMaj mulRowsByColVec(FMatrixRMaj m, FMatrixRMaj colV) {
+		FMatrixRMaj copy = m.copy();
+		CommonOps_FDRM.multRows(colV.data, copy);
+		
+		return copy;
+	}
+	
+	@Override
+	public FMatrixRMaj subRowVec(FMatrixRMaj m, FMatrixRMaj rowV) {
+		int cols = m.numCols;
+		int rows = m.numRows;
+		FMatrixRMaj copy = m.copy();
+		for(int r=0; r<rows; r++) {
+			for(int c=0; c<cols; c++) {
+				copy.data[r*cols+c] -= rowV.data[c];
+			}
+		}
+		return copy;
+	}
+	
+	@Override
+	public FMatrixRMaj subColVec(FMatrixRMaj m, FMatrixRMaj colV) {
+		int cols = m.numCols;
+		int rows = m.numRows;
+		FMatrixRMaj copy = m.copy();
+		for(int r=0; r<rows; r++) {
+			for(int c=0; c<cols; c++) {
+				copy.data[r*cols+c] -= colV.data[r];
+			}
+		}
+		return copy;
+	}
+	
+	@Override
+	public FMatrixRMaj addRowVec(FMatrixRMaj m, FMatrixRMaj rowV) {
+		int cols = m.numCols;
+		int rows = m.numRows;
+		FMatrixRMaj copy = m.copy();
+		for(int r=0; r<rows; r++) {
+			for(int c=0; c<cols; c++) {
+				copy.data[r*cols+c] += rowV.data[c];
+			}
+		}
+		return copy;
+	}
+	
+	@Override
+	public FMatrixRMaj addColVec(FMatrixRMaj m, FMatrixRMaj colV) {
+		int cols = m.numCols;
+		int rows = m.numRows;
+		FMatrixRMaj copy = m.copy();
+		for(int r=0; r<rows; r++) {
+			for(int c=0; c<cols; c++) {
+				copy.data[r*cols+c] += colV.data[r];
+			}
+		}
+		return copy;
+	}
+	
+	@Override
+	public FMatrixRMaj trp(FMatrixRMaj m) {
+		FMatrixRMaj trp = zeros(m.numCols, m.numRows);
+//		ops.transpose(m, trp);
+		CommonOps_FDRM.transpose(m, trp);
+		return trp;
+	}
+
+	@Override
+	public FMatrixRMaj add(FMatrixRMaj a, FMatrixRMaj b) {
+		FMatrixRMaj c = a.copy();
+//		ops.plus(a, b, c);
+		CommonOps_FDRM.add(a, b, c);
+		return c;
+	}
+	
+	@Override
+	public FMatrixRMaj add_inp(FMatrixRMaj a, FMatrixRMaj b) {
+//		ops.plus(a, b, a);
+		CommonOps_FDRM.add(a, b, a);
+		return a;
+	}
+	
+	@Override
+	public FMatrixRMaj add_inp(FMatrixRMaj a, double b) {
+//		ops.plus(a, b, a);
+		CommonOps_FDRM.add(a, (float)b, a);
+		return a;
+	}
+	
+	@Override
+	public FMatrixRMaj sub_inp(FMatrixRMaj a, FMatrixRMaj b) {
+//		ops.minus(a, b, a);
+		CommonOps_FDRM.subtract(a, b, a);
+		return a;
+	}
+	
+	@Override
+	public FMatrixRMaj add(FMatrixRMaj a, double b) {
+		FMatrixRMaj c = a.copy();
+//		ops.plus(a, b, c);
+		CommonOps_FDRM.add(a, (float)b, c);
+		return c;
+	}
+
+	@Override
+	public FMatrixRMaj sub(FMatrixRMaj a, FMatrixRMaj b) {
+		FMatrixRMaj c = a.copy();
+//		ops.minus(a, b, c);
+		CommonOps_FDRM.subtract(a, b, c);
+		return c;
+	}
+
+	@Override
+	public FMatrixRMaj axpy_inp(double a, FMatrixRMaj x, FMatrixRMaj y) {
+		CommonOps_FDRM.addEquals(y, (float)a, x);
+		return y;
+	}
+
+	@Override
+	public FMatrixRMaj axpby_inp(double a, FMatrixRMaj x, double b, FMatrixRMaj y) {
+		CommonOps_FDRM.add((float)a, x, (float)b, y, y);
+		return y;
+	}
+
+	@Override
+	public FMatrixRMaj lincomb_inp(FMatrixRMaj target, double a, FMatrixRMaj x, double b, FMatrixRMaj y) {
+		CommonOps_FDRM.add((float)a, x, (float)b, y, target);
+		return target;
+	}
+
+	@Override
+	public FMatrixRMaj elemmulAxpby_inp(double a, FMatrixRMaj x1, FMatrixRMaj x2, double b, FMatrixRMaj y) {
+		final int size = y.getNumElements();
+		final float af = (float)a, bf = (float)b;
+		for(int i=0; i<size; i++) {
+			y.data[i] = af*x1.data[i]*x2.data[i] + bf*y.data[i];
+		}
+		return y;
+	}
+
+	@Override
+	public double innerWeighted(FMatrixRMaj a, FMatrixRMaj w, FMatrixRMaj b) {
+		final int size = a.getNumElements();
+		double sum=0;
+		for(int i=0; i<size; i++) {
+			sum += (double)a.data[i]*w.data[i]*b.data[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public FMatrixRMaj fill_inp(FMatrixRMaj m, double v) {
+		CommonOps_FDRM.fill(m, (float)v);
+		return m;
+	}
+
+	@Override
+	public FMatrixRMaj set_inp(FMatrixRMaj m, int idx, double v) {
+		m.set(idx, (float)v);
+		return m;
+	}
+
+	@Override
+	public double get(FMatrixRMaj m, int idx) {
+		return m.get(idx);
+	}
+
+	@Override
+	public FMatrixRMaj copy(FMatrixRMaj m) {
+		return m.copy();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The returned array is a double precision copy of the elements, not the backing float array of the matrix.
+	 */
+	@Override
+	public double[] toArray(FMatrixRMaj m) {
+		final int size = m.getNumElements();
+		double[] data = new double[size];
+		for(int i=0; i<size; i++)
+			data[i] = m.data[i];
+		return data;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Always fills the buffer, since the backing array of the matrix is a float array.
+	 */
+	@Override
+	public double[] toArray(FMatrixRMaj m, double[] buffer) {
+		final int size = m.getNumElements();
+		for(int i=0; i<size; i++)
+			buffer[i] = m.data[i];
+		return buffer;
+	}
+
+	@Override
+	public double[][] toArray2D(FMatrixRMaj m) {
+		double[][] data = new double[m.numRows][m.numCols];
+		for(int r=0; r<m.numRows; r++)
+			for(int c=0; c<m.numCols; c++)
+				data[r][c] = m.unsafe_get(r, c);
+		return data;
+	}
+	
+	@Override
+	public FMatrixRMaj[] svd(FMatrixRMaj m, boolean full) {
+		SimpleSVD<SimpleMatrix> svd = SimpleMatrix.wrap(m).svd(!full);
+		return new FMatrixRMaj[] {svd.getU().getFDRM(), svd.getW().getFDRM(), svd.getV().getFDRM()};
+	}
+	
+	@Override
+	public FMatrixRMaj cholesky(FMatrixRMaj m) {
+		m = m.copy();
+		CholeskyDecomposition_F32<FMatrixRMaj> chol = DecompositionFactory_FDRM.chol(false);
+		chol.decompose(m);
+		return chol.getT(null);
+	}
+	
+	@Override
+	public FMatrixRMaj[] symEvd(FMatrixRMaj m) {
+		m = m.copy();
+		EigenDecomposition_F32<FMatrixRMaj> eig = DecompositionFactory_FDRM.eig(true, true);
+		eig.decompose(m);
+		double[] vals = new double[m.numCols];
+		for(int i=0; i<vals.length; i++) {
+			vals[i] = eig.getEigenvalue(i).real;
+		}
+		FMatrixRMaj vectors = zeros(m.numCols, m.numCols);
+		
+		for(int i=0; i<m.numCols; i++) {
+			FMatrixRMaj ev = eig.getEigenVector(i);
+			for(int r=0; r<m.numCols; r++)
+				vectors.unsafe_set(r, i, ev.data[r]);
+		}
+		return new FMatrixRMaj[] {vectors, diagM(vecOf(vals))};
+	}
+
+	@Override
+	public double det(FMatrixRMaj m) {
+//		return ops.determinant(m);
+		return CommonOps_FDRM.det(m);
+	}
+	
+	@Override
+	public FMatrixRMaj exp_inp(FMatrixRMaj m) {
+//		ops.elementExp(m, m);
+		CommonOps_FDRM.elementExp(m,m);
+		return m;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Values are widened to double and narrowed back in chunks, which keeps the conversion loops vectorizable
+	 * (converting per element around the call of f is several times slower).
+	 */
+	@Override
+	public FMatrixRMaj elemwise_inp(FMatrixRMaj m, DoubleUnaryOperator f) {
+		final int size = m.getNumElements();
+		final float[] md = m.data;
+		final double[] chunk = new double[Math.min(size, 256)];
+		for(int start=0; start<size; start+=chunk.length) {
+			final int n = Math.min(chunk.length, size-start);
+			for(int i=0; i<n; i++)
+				chunk[i] = md[start+i];
+			for(int i=0; i<n; i++)
+				chunk[i] = f.applyAsDouble(chunk[i]);
+			for(int i=0; i<n; i++)
+				md[start+i] = (float)chunk[i];
+		}
+		return m;
+	}
+
+	@Override
+	public FMatrixRMaj sqrt_inp(FMatrixRMaj m) {
+		final int size = m.getNumElements();
+		final float[] md = m.data;
+		for(int i=0; i<size; i++)
+			md[i] = (float)Math.sqrt(md[i]);
+		return m;
+	}
+	
+	@Override
+	public FMatrixRMaj concatHorz(FMatrixRMaj a, FMatrixRMaj b) {
+		return SimpleMatrix.wrap(a).concatColumns(SimpleMatrix.wrap(b)).getFDRM();
+	}
+	
+	@Override
+	public FMatrixRMaj concatVert(FMatrixRMaj a, FMatrixRMaj b) {
+		return SimpleMatrix.wrap(a).concatRows(SimpleMatrix.wrap(b)).getFDRM();
+	}
+	
+	@Override
+	public FMatrixRMaj getRange(FMatrixRMaj m, int ra, int rb, int ca, int cb) {
+		FMatrixRMaj dst = zeros(rb-ra, cb-ca);
+		CommonOps_FDRM.extract(m, ra, rb, ca, cb, dst, 0, 0);
+		return dst;
+	}
+	
+	@Override
+	public FMatrixRMaj diagM(FMatrixRMaj v) {
+		if(!(v.numCols==1 || v.numRows==1)) {
+			throw new IllegalArgumentException("argument has to be a vector");
+		}
+		return CommonOps_FDRM.diag(v.data);
+	}
+	
+	@Override
+	public FMatrixRMaj diagV(FMatrixRMaj m) {
+		if(m.numCols != m.numRows) {
+			throw new IllegalArgumentException("argument has to be a square matrix");
+		}
+		FMatrixRMaj v = zeros(m.numCols);
+		CommonOps_FDRM.extractDiag(m, v);
+		return v;
+	}
+	
+	@Override
+	public FMatrixRMaj[] matArray(int n) {
+		return new FMatrixRMaj[n];
+	}
+	
+	@Override
+	public FMatrixRMaj[][] matArray(int m, int n) {
+		return new FMatrixRMaj[m][n];
+	}
+	
+	@Override
+	public FMatrixRMaj mult_aTb(FMatrixRMaj a, FMatrixRMaj b) {
+		FMatrixRMaj c = zeros(a.numCols, b.numCols);
+		// ops.multTransA(a, b, c);
+		CommonOps_FDRM.multTransA(a, b, c);
+		return c;
+	}
+	
+	@Override
+	public FMatrixRMaj mult_abT(FMatrixRMaj a, FMatrixRMaj b) {
+		FMatrixRMaj c = zeros(a.numRows, b.numRows);
+		CommonOps_FDRM.multTransB(a, b, c);
+		return c;
+	}
+	
+	@Override
+	public void copyValues(FMatrixRMaj src, FMatrixRMaj target) {
+		System.arraycopy(src.data, 0, target.data, 0, Math.min(src.data.length, target.data.length));
+	}
+	
+	@Override
+	public void copyValues(FMatrixRMaj src, int startSrc, FMatrixRMaj target, int startTarget, int len) {
+		System.arraycopy(src.data, startSrc, target.data, startTarget, len);
+	}
+	
+	@Override
+	public double sum(FMatrixRMaj m) {
+		double sum=0;
+		for(int i=0; i<m.data.length; i++) {
+			sum += m.data[i];
+		}
+		return sum;
+	}
+	
+	@Override
+	public double frob2(FMatrixRMaj a) {
+		double total = 0;
+        double scale = CommonOps_FDRM.elementMaxAbs(a);
+        if (scale == 0.0)
+            return 0.0;
+        
+        final int size = a.getNumElements();
+        double divByScale = 1.0/scale;
+        for (int i = 0; i < size; i++) {
+            double val = a.data[i]*divByScale;
+            total += val*val;
+        }
+        return scale*scale*total;
+	}
+
+	@Override
+	public FMatrixRMaj pinv(FMatrixRMaj m) {
+		FMatrixRMaj result = zeros(numCols(m), numRows(m));
+		ops.pseudoInverse(m, result);
+		return result;
+	}
+
+	@Override
+	public double machineEpsilon() {
+		return Math.ulp(1.0f);
+	}
+
+	static float[] toFloat(double[] v) {
+		float[] f = new float[v.length];
+		for(int i=0; i<v.length; i++)
+			f[i] = (float)v[i];
+		return f;
+	}
+}
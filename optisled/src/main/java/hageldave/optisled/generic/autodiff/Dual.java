@@ -0,0 +1,214 @@
+package hageldave.optisled.generic.autodiff;
+
+/**
+ * Dual number for forward-mode automatic differentiation.
+ * A dual number carries a value together with its partial derivatives
+ * (tangent) with respect to all variables of the function being differentiated.
+ * Arithmetic on dual numbers propagates derivatives by the chain rule, so that evaluating
+ * an expression on dual numbers yields its exact gradient alongside the value.
+ * <p>
+ * A null tangent means that all partial derivatives are zero (constant), which
+ * skips the derivative propagation entirely. This is used when only the value is of interest.
+ * <p>
+ * Dual numbers are immutable.
+ */
+public final class Dual {
+
+	/** value */
+	public final double value;
+	/** partial derivatives, null when constant */
+	final double[] tangent;
+
+	Dual(double value, double[] tangent) {
+		this.value = value;
+		this.tangent = tangent;
+	}
+
+	/**
+	 * @param value value
+	 * @return constant dual number (all partial derivatives are zero)
+	 */
+	public static Dual constant(double value) {
+		return new Dual(value, null);
+	}
+
+	/**
+	 * @param value value of the variable
+	 * @param index index of the variable
+	 * @param numVariables total number of variables
+	 * @return dual number of variable with index i (partial derivative 1 for index i, 0 for others)
+	 */
+	public static Dual variable(double value, int index, int numVariables) {
+		double[] tangent = new double[numVariables];
+		tangent[index] = 1.0;
+		return new Dual(value, tangent);
+	}
+
+	/**
+	 * @return true if all partial derivatives are zero
+	 */
+	public boolean isConstant() {
+		return tangent == null;
+	}
+
+	/**
+	 * @param i index of variable
+	 * @return partial derivative with respect to variable i
+	 */
+	public double derivative(int i) {
+		return tangent == null ? 0.0 : tangent[i];
+	}
+
+	/** tangent = ca*a.tangent + cb*b.tangent */
+	private static double[] combine(double ca, double[] a, double cb, double[] b) {
+		if(a == null && b == null)
+			return null;
+		if(b == null)
+			return scaled(ca, a);
+		if(a == null)
+			return scaled(cb, b);
+		double[] t = new double[a.length];
+		for(int i=0; i<t.length; i++)
+			t[i] = ca*a[i] + cb*b[i];
+		return t;
+	}
+
+	/** tangent = c*a */
+	private static double[] scaled(double c, double[] a) {
+		if(a == null)
+			return null;
+		double[] t = new double[a.length];
+		for(int i=0; i<t.length; i++)
+			t[i] = c*a[i];
+		return t;
+	}
+
+	/** applies a unary function with derivative df at this value */
+	private Dual chain(double fv, double df) {
+		return new Dual(fv, scaled(df, tangent));
+	}
+
+	public Dual add(Dual b) {
+		return new Dual(value+b.value, combine(1.0, tangent, 1.0, b.tangent));
+	}
+
+	public Dual add(double b) {
+		return new Dual(value+b, tangent);
+	}
+
+	public Dual sub(Dual b) {
+		return new Dual(value-b.value, combine(1.0, tangent, -1.0, b.tangent));
+	}
+
+	public Dual sub(double b) {
+		return new Dual(value-b, tangent);
+	}
+
+	public Dual mul(Dual b) {
+		return new Dual(value*b.value, combine(b.value, tangent, value, b.tangent));
+	}
+
+	public Dual mul(double b) {
+		return new Dual(value*b, scaled(b, tangent));
+	}
+
+	public Dual div(Dual b) {
+		double q = value/b.value;
+		return new Dual(q, combine(1.0/b.value, tangent, -q/b.value, b.tangent));
+	}
+
+	public Dual div(double b) {
+		return mul(1.0/b);
+	}
+
+	public Dual neg() {
+		return mul(-1.0);
+	}
+
+	public Dual square() {
+		return chain(value*value, 2*value);
+	}
+
+	public Dual pow(double p) {
+		return chain(Math.pow(value, p), p*Math.pow(value, p-1));
+	}
+
+	public Dual sqrt() {
+		double s = Math.sqrt(value);
+		return chain(s, 0.5/s);
+	}
+
+	public Dual exp() {
+		double e = Math.exp(value);
+		return chain(e, e);
+	}
+
+	public Dual log() {
+		return chain(Math.log(value), 1.0/value);
+	}
+
+	public Dual sin() {
+		return chain(Math.sin(value), Math.cos(value));
+	}
+
+	public Dual cos() {
+		return chain(Math.cos(value), -Math.sin(value));
+	}
+
+	public Dual tanh() {
+		double t = Math.tanh(value);
+		return chain(t, 1-t*t);
+	}
+
+	public Dual abs() {
+		return value < 0 ? neg() : this;
+	}
+
+	public Dual max(Dual b) {
+		return value >= b.value ? this : b;
+	}
+
+	public Dual min(Dual b) {
+		return value <= b.value ? this : b;
+	}
+
+	/**
+	 * @param a dual numbers
+	 * @param b dual numbers
+	 * @return sum of a[i]*b[i]
+	 */
+	public static Dual inner(Dual[] a, Dual[] b) {
+		Dual sum = constant(0);
+		for(int i=0; i<a.length; i++)
+			sum = sum.add(a[i].mul(b[i]));
+		return sum;
+	}
+
+	/**
+	 * @param a dual numbers
+	 * @param b constants
+	 * @return sum of a[i]*b[i]
+	 */
+	public static Dual inner(Dual[] a, double[] b) {
+		Dual sum = constant(0);
+		for(int i=0; i<a.length; i++)
+			sum = sum.add(a[i].mul(b[i]));
+		return sum;
+	}
+
+	/**
+	 * @param a dual numbers
+	 * @return sum of all a[i]
+	 */
+	public static Dual sum(Dual[] a) {
+		Dual sum = constant(0);
+		for(int i=0; i<a.length; i++)
+			sum = sum.add(a[i]);
+		return sum;
+	}
+
+	@Override
+	public String toString() {
+		return "Dual[" + value + "]";
+	}
+}
@@ -0,0 +1,15 @@
+package hageldave.optisled.generic.autodiff;
+
+/**
+ * Function taking a vector of {@link Dual} numbers and giving a scalar {@link Dual} output.
+ * Expressing a function this way allows for exact derivatives through forward-mode
+ * automatic differentiation, see {@link ForwardDiffFN}.
+ */
+@FunctionalInterface
+public interface DualFN {
+	/**
+	 * @param x function argument (vector of dual numbers)
+	 * @return value of the function evaluated at x (dual number)
+	 */
+	public Dual evaluate(Dual[] x);
+}
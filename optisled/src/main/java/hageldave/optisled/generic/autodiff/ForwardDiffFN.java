@@ -0,0 +1,77 @@
+package hageldave.optisled.generic.autodiff;
+
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.ScalarFN.ScalarFNWithGradient;
+import hageldave.optisled.generic.problem.ScalarFN.ScalarFNWithValueAndGradient;
+import hageldave.optisled.generic.problem.VectorFN;
+
+/**
+ * {@link ScalarFNWithGradient} that computes exact gradients of a {@link DualFN}
+ * by forward-mode automatic differentiation.
+ * <p>
+ * Evaluating the value only uses constant dual numbers, which do not carry derivatives.
+ * Evaluating the gradient seeds each argument as a variable and obtains all partial 
+ * derivatives in a single pass over the expression (the cost of each operation is 
+ * proportional to the number of variables). This pass also yields the value, so
+ * {@link #evaluateWithGradient(Object, Object)} costs the same as the gradient alone.
+ * @param <M> matrix type
+ */
+public class ForwardDiffFN<M> implements ScalarFNWithValueAndGradient<M> {
+
+	final MatCalc<M> mc;
+	final DualFN fn;
+	final VectorFN<M> grad = this::evaluateGradient;
+
+	/**
+	 * @param mc matrix calculator
+	 * @param fn function expressed on dual numbers
+	 */
+	public ForwardDiffFN(MatCalc<M> mc, DualFN fn) {
+		this.mc = mc;
+		this.fn = fn;
+	}
+
+	@Override
+	public double evaluate(M x) {
+		final int dim = mc.numElem(x);
+		Dual[] args = new Dual[dim];
+		for(int i=0; i<dim; i++)
+			args[i] = Dual.constant(mc.get(x, i));
+		return fn.evaluate(args).value;
+	}
+
+	/**
+	 * @param x function argument (vector)
+	 * @return value of function at x, with all partial derivatives
+	 */
+	public Dual evaluateDual(M x) {
+		final int dim = mc.numElem(x);
+		Dual[] args = new Dual[dim];
+		for(int i=0; i<dim; i++)
+			args[i] = Dual.variable(mc.get(x, i), i, dim);
+		return fn.evaluate(args);
+	}
+
+	@Override
+	public double evaluateWithGradient(M x, M gradOut) {
+		Dual result = evaluateDual(x);
+		for(int i=0; i<mc.numElem(x); i++)
+			mc.set_inp(gradOut, i, result.derivative(i));
+		return result.value;
+	}
+
+	M evaluateGradient(M x) {
+		Dual result = evaluateDual(x);
+		final int dim = mc.numElem(x);
+		M g = mc.zeros(dim);
+		for(int i=0; i<dim; i++)
+			mc.set_inp(g, i, result.derivative(i));
+		return g;
+	}
+
+	@Override
+	public VectorFN<M> gradient() {
+		return grad;
+	}
+
+}
@@ -0,0 +1,410 @@
+package hageldave.optisled.generic.autodiff;
+
+import java.util.ArrayList;
+import java.util.function.DoubleUnaryOperator;
+
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.ScalarFN.ScalarFNWithGradient;
+import hageldave.optisled.generic.problem.ScalarFN.ScalarFNWithValueAndGradient;
+import hageldave.optisled.generic.problem.VectorFN;
+
+/**
+ * Tape for reverse-mode automatic differentiation of functions on vectors and matrices.
+ * <p>
+ * A function is recorded once as an expression graph by creating {@link Node}s through the
+ * methods of the tape, starting from the {@link #input(int, int)} node and constants.
+ * The graph is then turned into a {@link ScalarFNWithGradient} via {@link #function(Node)}.
+ * Evaluating that function replays the tape forward, evaluating its gradient additionally
+ * propagates adjoints backward through the tape, which costs a small constant multiple
+ * of one function evaluation regardless of the dimensionality.
+ * <p>
+ * Each node owns a value and an adjoint buffer that are allocated once when it is recorded
+ * and reused for every evaluation, i.e. there is no re-recording per evaluation.
+ * Element-wise operations are computed in-place on these buffers.
+ * Matrix products go through {@link MatCalc#matmul(Object, Object)} and friends and allocate their
+ * temporary result.
+ * <p>
+ * Since the buffers are shared, evaluations on the same tape are serialized.
+ *
+ * <pre>
+ * Tape&lt;M&gt; t = new Tape&lt;&gt;(mc);
+ * Tape&lt;M&gt;.Node x = t.input(n, 1);
+ * Tape&lt;M&gt;.Node r = t.sub(t.matmul(t.constant(A), x), t.constant(b));
+ * ScalarFNWithGradient&lt;M&gt; f = t.function(t.inner(r, r)); // ||Ax-b||^2
+ * </pre>
+ * @param <M> matrix type
+ */
+public class Tape<M> {
+
+	final MatCalc<M> mc;
+	/** nodes in recording (topological) order */
+	final ArrayList<Node> nodes = new ArrayList<>();
+	Node input;
+
+	/**
+	 * @param mc matrix calculator
+	 */
+	public Tape(MatCalc<M> mc) {
+		this.mc = mc;
+	}
+
+	/**
+	 * Node of the expression graph, holding value and adjoint buffers.
+	 */
+	public abstract class Node {
+		final M value;
+		final M adjoint;
+		/** whether this node depends on the input (otherwise no adjoints need to be propagated) */
+		final boolean variable;
+
+		Node(int rows, int cols, boolean variable) {
+			this.value = mc.zeros(rows, cols);
+			this.adjoint = mc.zeros(rows, cols);
+			this.variable = variable;
+			nodes.add(this);
+		}
+
+		/** computes value from the values of the operands */
+		abstract void forward();
+
+		/** accumulates adjoints of the operands from the adjoint of this node */
+		abstract void backward();
+
+		/**
+		 * @return value of this node from the last evaluation (buffer, do not modify)
+		 */
+		public M value() {
+			return value;
+		}
+
+		public int numRows() {
+			return mc.numRows(value);
+		}
+
+		public int numCols() {
+			return mc.numCols(value);
+		}
+	}
+
+	/** node without operands, value set from outside */
+	class Leaf extends Node {
+		Leaf(int rows, int cols, boolean variable) {
+			super(rows, cols, variable);
+		}
+		@Override
+		void forward() {}
+		@Override
+		void backward() {}
+	}
+
+	/**
+	 * @param rows number of rows
+	 * @param cols number of columns
+	 * @return the input node (argument of the function), there is only one per tape
+	 */
+	public Node input(int rows, int cols) {
+		if(input != null)
+			throw new IllegalStateException("input was already recorded");
+		return input = new Leaf(rows, cols, true);
+	}
+
+	/**
+	 * @param c constant value (is copied)
+	 * @return constant node
+	 */
+	public Node constant(M c) {
+		Node n = new Leaf(mc.numRows(c), mc.numCols(c), false);
+		mc.copyValues(c, n.value);
+		return n;
+	}
+
+	/**
+	 * @param c constant value
+	 * @return constant scalar (1x1) node
+	 */
+	public Node constant(double c) {
+		Node n = new Leaf(1, 1, false);
+		mc.set_inp(n.value, 0, c);
+		return n;
+	}
+
+	/**
+	 * @param a operand
+	 * @param b operand (same size as a)
+	 * @return a+b
+	 */
+	public Node add(Node a, Node b) {
+		return new Node(a.numRows(), a.numCols(), a.variable || b.variable) {
+			@Override
+			void forward() { mc.lincomb_inp(value, 1.0, a.value, 1.0, b.value); }
+			@Override
+			void backward() {
+				if(a.variable) mc.add_inp(a.adjoint, adjoint);
+				if(b.variable) mc.add_inp(b.adjoint, adjoint);
+			}
+		};
+	}
+
+	/**
+	 * @param a operand
+	 * @param b operand (same size as a)
+	 * @return a-b
+	 */
+	public Node sub(Node a, Node b) {
+		return new Node(a.numRows(), a.numCols(), a.variable || b.variable) {
+			@Override
+			void forward() { mc.lincomb_inp(value, 1.0, a.value, -1.0, b.value); }
+			@Override
+			void backward() {
+				if(a.variable) mc.add_inp(a.adjoint, adjoint);
+				if(b.variable) mc.sub_inp(b.adjoint, adjoint);
+			}
+		};
+	}
+
+	/**
+	 * @param a operand
+	 * @param c scalar
+	 * @return a+c (added to each element)
+	 */
+	public Node add(Node a, double c) {
+		return new Node(a.numRows(), a.numCols(), a.variable) {
+			@Override
+			void forward() { mc.add_inp(copyFrom(value, a.value), c); }
+			@Override
+			void backward() { mc.add_inp(a.adjoint, adjoint); }
+		};
+	}
+
+	/**
+	 * @param a operand
+	 * @param s scalar
+	 * @return s*a
+	 */
+	public Node scale(Node a, double s) {
+		return new Node(a.numRows(), a.numCols(), a.variable) {
+			@Override
+			void forward() { mc.scale_inp(copyFrom(value, a.value), s); }
+			@Override
+			void backward() { mc.axpy_inp(s, adjoint, a.adjoint); }
+		};
+	}
+
+	/**
+	 * @param s scalar (1x1) operand
+	 * @param a operand
+	 * @return s*a
+	 */
+	public Node scale(Node s, Node a) {
+		return new Node(a.numRows(), a.numCols(), a.variable || s.variable) {
+			@Override
+			void forward() { mc.scale_inp(copyFrom(value, a.value), mc.get(s.value, 0)); }
+			@Override
+			void backward() {
+				if(a.variable) mc.axpy_inp(mc.get(s.value, 0), adjoint, a.adjoint);
+				if(s.variable) mc.set_inp(s.adjoint, 0, mc.get(s.adjoint, 0) + mc.inner(adjoint, a.value));
+			}
+		};
+	}
+
+	/**
+	 * @param a operand
+	 * @param b operand (same size as a)
+	 * @return a.*b (element-wise product)
+	 */
+	public Node elemmul(Node a, Node b) {
+		return new Node(a.numRows(), a.numCols(), a.variable || b.variable) {
+			@Override
+			void forward() { mc.elemmul_inp(copyFrom(value, a.value), b.value); }
+			@Override
+			void backward() {
+				if(a.variable) mc.elemmulAxpby_inp(1.0, adjoint, b.value, 1.0, a.adjoint);
+				if(b.variable) mc.elemmulAxpby_inp(1.0, adjoint, a.value, 1.0, b.adjoint);
+			}
+		};
+	}
+
+	/**
+	 * @param a operand
+	 * @param b operand
+	 * @return a*b (matrix product)
+	 */
+	public Node matmul(Node a, Node b) {
+		return new Node(a.numRows(), b.numCols(), a.variable || b.variable) {
+			@Override
+			void forward() { mc.copyValues(mc.matmul(a.value, b.value), value); }
+			@Override
+			void backward() {
+				if(a.variable) mc.add_inp(a.adjoint, mc.mult_abT(adjoint, b.value));
+				if(b.variable) mc.add_inp(b.adjoint, mc.mult_aTb(a.value, adjoint));
+			}
+		};
+	}
+
+	/**
+	 * @param a operand
+	 * @param b operand (same size as a)
+	 * @return {@code <a,b>} (scalar node)
+	 */
+	public Node inner(Node a, Node b) {
+		return new Node(1, 1, a.variable || b.variable) {
+			@Override
+			void forward() { mc.set_inp(value, 0, mc.inner(a.value, b.value)); }
+			@Override
+			void backward() {
+				double adj = mc.get(adjoint, 0);
+				if(a.variable) mc.axpy_inp(adj, b.value, a.adjoint);
+				if(b.variable) mc.axpy_inp(adj, a.value, b.adjoint);
+			}
+		};
+	}
+
+	/**
+	 * @param a operand
+	 * @return sum of elements of a (scalar node)
+	 */
+	public Node sum(Node a) {
+		return new Node(1, 1, a.variable) {
+			@Override
+			void forward() { mc.set_inp(value, 0, mc.sum(a.value)); }
+			@Override
+			void backward() { mc.add_inp(a.adjoint, mc.get(adjoint, 0)); }
+		};
+	}
+
+	/**
+	 * @param a operand
+	 * @param f function applied to each element
+	 * @param df derivative of f
+	 * @return f(a) element-wise
+	 */
+	public Node elemwise(Node a, DoubleUnaryOperator f, DoubleUnaryOperator df) {
+		return new Node(a.numRows(), a.numCols(), a.variable) {
+			@Override
+			void forward() { mc.elemwise_inp(copyFrom(value, a.value), f); }
+			@Override
+			void backward() {
+				for(int i=0; i<mc.numElem(adjoint); i++) {
+					double d = mc.get(adjoint, i)*df.applyAsDouble(mc.get(a.value, i));
+					mc.set_inp(a.adjoint, i, mc.get(a.adjoint, i) + d);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @param a operand
+	 * @return a.*a
+	 */
+	public Node square(Node a) {
+		return elemwise(a, v->v*v, v->2*v);
+	}
+
+	/**
+	 * @param a operand
+	 * @return exp(a) element-wise
+	 */
+	public Node exp(Node a) {
+		return elemwise(a, Math::exp, Math::exp);
+	}
+
+	/**
+	 * @param a operand
+	 * @return log(a) element-wise
+	 */
+	public Node log(Node a) {
+		return elemwise(a, Math::log, v->1.0/v);
+	}
+
+	/**
+	 * @param a operand
+	 * @return sqrt(a) element-wise
+	 */
+	public Node sqrt(Node a) {
+		return elemwise(a, Math::sqrt, v->0.5/Math.sqrt(v));
+	}
+
+	M copyFrom(M target, M src) {
+		mc.copyValues(src, target);
+		return target;
+	}
+
+	/**
+	 * Creates a function from the recorded graph. The tape must not be extended afterwards.
+	 * @param output scalar (1x1) output node
+	 * @return function with gradient, evaluated by replaying this tape
+	 */
+	public TapeFN function(Node output) {
+		if(input == null)
+			throw new IllegalStateException("no input was recorded");
+		if(output.numRows()*output.numCols() != 1)
+			throw new IllegalArgumentException("output has to be a scalar (1x1) node");
+		return new TapeFN(output);
+	}
+
+	/**
+	 * Function evaluated by replaying the tape.
+	 * Value and gradient are obtained from a single forward and backward pass through
+	 * {@link #evaluateWithGradient(Object, Object)}.
+	 */
+	public class TapeFN implements ScalarFNWithValueAndGradient<M> {
+		final Node output;
+		final int numNodes;
+		final VectorFN<M> grad = this::evaluateGradient;
+
+		TapeFN(Node output) {
+			this.output = output;
+			// nodes recorded after the output do not contribute
+			this.numNodes = nodes.indexOf(output)+1;
+		}
+
+		void forward(M x) {
+			mc.copyValues(x, input.value);
+			for(int i=0; i<numNodes; i++)
+				nodes.get(i).forward();
+		}
+
+		void backward() {
+			for(int i=0; i<numNodes; i++)
+				mc.fill_inp(nodes.get(i).adjoint, 0.0);
+			mc.set_inp(output.adjoint, 0, 1.0);
+			for(int i=numNodes-1; i>=0; i--) {
+				Node n = nodes.get(i);
+				if(n.variable)
+					n.backward();
+			}
+		}
+
+		@Override
+		public double evaluate(M x) {
+			synchronized (Tape.this) {
+				forward(x);
+				return mc.get(output.value, 0);
+			}
+		}
+
+		@Override
+		public double evaluateWithGradient(M x, M gradOut) {
+			synchronized (Tape.this) {
+				forward(x);
+				backward();
+				mc.copyValues(input.adjoint, gradOut);
+				return mc.get(output.value, 0);
+			}
+		}
+
+		M evaluateGradient(M x) {
+			synchronized (Tape.this) {
+				forward(x);
+				backward();
+				return mc.copy(input.adjoint);
+			}
+		}
+
+		@Override
+		public VectorFN<M> gradient() {
+			return grad;
+		}
+	}
+
+}
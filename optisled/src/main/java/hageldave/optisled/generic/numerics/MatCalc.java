@@ -223,6 +223,17 @@ import java.util.stream.IntStream;
 	  * @return element-wise division of a and b (need to be of same size) 
 	  */
 	 M elemdiv(M a, M b);
+
+	 /**
+	  * @param a matrix/vector
+	  * @param b matrix/vector
+	  * @return a=a.*b (in-place element-wise multiplication, need to be of same size)
+	  */
+	 default M elemmul_inp(M a, M b) {
+		 for(int i=0; i<numElem(a); i++)
+			 set_inp(a, i, get(a, i)*get(b, i));
+		 return a;
+	 }
 	
 	/**
 	 * @param m matrix
@@ -384,6 +395,131 @@ import java.util.stream.IntStream;
 		return add(a, -b);
 	}
 
+	/**
+	 * Fused multiply-add, avoids the temporary of {@code add_inp(y, scale(x,a))}.
+	 * @param a scalar
+	 * @param x matrix/vector
+	 * @param y matrix/vector
+	 * @return y=a*x+y (in-place on y, need to be same size)
+	 */
+	 default M axpy_inp(double a, M x, M y) {
+		for(int i=0; i<numElem(y); i++)
+			set_inp(y, i, a*get(x, i)+get(y, i));
+		return y;
+	}
+
+	/**
+	 * @param a scalar
+	 * @param x matrix/vector
+	 * @param y matrix/vector
+	 * @return a*x+y (need to be same size)
+	 */
+	 default M axpy(double a, M x, M y) {
+		return axpy_inp(a, x, copy(y));
+	}
+
+	/**
+	 * Sparse-dense fused multiply-add, only touches the non-zero entries of x.
+	 * @param a scalar
+	 * @param x sparse vector
+	 * @param y vector (number of elements has to equal the dimension of x)
+	 * @return y=a*x+y (in-place on y)
+	 */
+	 default M axpySparse_inp(double a, SparseVec x, M y) {
+		if(numElem(y) != x.dim)
+			throw new IllegalArgumentException("sparse vector of dimension " + x.dim + " does not match " + numElem(y) + " elements");
+		for(int k=0; k<x.nnz(); k++) {
+			int i = x.indices[k];
+			set_inp(y, i, a*x.values[k]+get(y, i));
+		}
+		return y;
+	}
+
+	/**
+	 * Sparse-dense inner product, only reads the non-zero entries of a.
+	 * @param a sparse vector
+	 * @param b vector (number of elements has to equal the dimension of a)
+	 * @return a'b
+	 */
+	 default double innerSparse(SparseVec a, M b) {
+		if(numElem(b) != a.dim)
+			throw new IllegalArgumentException("sparse vector of dimension " + a.dim + " does not match " + numElem(b) + " elements");
+		double sum = 0;
+		for(int k=0; k<a.nnz(); k++)
+			sum += a.values[k]*get(b, a.indices[k]);
+		return sum;
+	}
+
+	/**
+	 * Fused scaled addition, avoids the temporaries of {@code add(scale(x,a), scale(y,b))}.
+	 * @param a scalar
+	 * @param x matrix/vector
+	 * @param b scalar
+	 * @param y matrix/vector
+	 * @return y=a*x+b*y (in-place on y, need to be same size)
+	 */
+	 default M axpby_inp(double a, M x, double b, M y) {
+		return lincomb_inp(y, a, x, b, y);
+	}
+
+	/**
+	 * Linear combination of two matrices written to a target matrix.
+	 * The target may be the same object as x or y.
+	 * @param target matrix/vector to write the result to
+	 * @param a scalar
+	 * @param x matrix/vector
+	 * @param b scalar
+	 * @param y matrix/vector
+	 * @return target=a*x+b*y (in-place on target, need to be same size)
+	 */
+	 default M lincomb_inp(M target, double a, M x, double b, M y) {
+		for(int i=0; i<numElem(target); i++)
+			set_inp(target, i, a*get(x, i)+b*get(y, i));
+		return target;
+	}
+
+	/**
+	 * Fused element-wise product and scaled addition,
+	 * avoids the temporaries of {@code add(scale(elemmul(x1,x2),a), scale(y,b))}.
+	 * y may be the same object as x1 or x2.
+	 * @param a scalar
+	 * @param x1 matrix/vector
+	 * @param x2 matrix/vector
+	 * @param b scalar
+	 * @param y matrix/vector
+	 * @return y=a*(x1 .* x2)+b*y (in-place on y, need to be same size)
+	 */
+	 default M elemmulAxpby_inp(double a, M x1, M x2, double b, M y) {
+		for(int i=0; i<numElem(y); i++)
+			set_inp(y, i, a*get(x1, i)*get(x2, i)+b*get(y, i));
+		return y;
+	}
+
+	/**
+	 * Scaled (weighted) inner product, avoids the temporary of {@code inner(a, elemmul(w,b))}.
+	 * @param a vector
+	 * @param w vector of weights
+	 * @param b vector
+	 * @return ‹a,diag(w)*b› = sum_i a_i*w_i*b_i
+	 */
+	 default double innerWeighted(M a, M w, M b) {
+		double sum=0;
+		for(int i=0; i<numElem(a); i++)
+			sum += get(a, i)*get(w, i)*get(b, i);
+		return sum;
+	}
+
+	/**
+	 * @param m matrix/vector
+	 * @param v value
+	 * @return the same matrix/vector argument where all entries were set to v
+	 */
+	 default M fill_inp(M m, double v) {
+		for(int i=0; i<numElem(m); i++)
+			set_inp(m, i, v);
+		return m;
+	}
+
 	/**
 	 * @param m matrix/vector
 	 * @param idx index
@@ -430,12 +566,34 @@ import java.util.stream.IntStream;
 	 * @param m matrix/vector
 	 * @return values of the matrix/vector in row major order */
 	 double[] toArray(M m);
+
+	/**
+	 * Read-only access to the values without allocation, for hot paths such as hashing or logging.
+	 * Backends storing their values in a double array return that array (like {@link #toArray(Object)}),
+	 * other backends copy the values into the buffer.
+	 * @param m matrix/vector
+	 * @param buffer array of length at least {@link #numElem(Object)} that may be filled with the values
+	 * @return values of the matrix/vector in row major order (backing array of m or buffer, must not be modified),
+	 * may be longer than the number of elements
+	 */
+	 default double[] toArray(M m, double[] buffer) {
+		return toArray(m);
+	}
 	
 	/**
 	 * @param m matrix/vector
 	 * @return values of the matrix/vector {@code ( values[row][col] )} */
 	 double[][] toArray2D(M m);
-	
+
+	/**
+	 * Precision of the element type, used for precision dependent defaults such as the
+	 * finite difference step of {@link NumericGradient} or the smallest meaningful step of a descent.
+	 * @return distance from 1.0 to the next larger representable element value (2^-52 for double)
+	 */
+	 default double machineEpsilon() {
+		return Math.ulp(1.0);
+	}
+
 	/**
 	 * @param m vector
 	 * @param thresh norm threshold for when a vector is considered to be 0 (and thus not normalized)
@@ -1,64 +1,243 @@
 package hageldave.optisled.generic.numerics;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.problem.ScalarFN.BatchScalarFN;
 import hageldave.optisled.generic.problem.VectorFN;
 
 /**
  * Computed gradient using finite differences
+ * <p>
+ * By default the coordinates are perturbed one after another on the calling thread.
+ * When {@link #parallelism} is greater than 1, the coordinates are split into chunks
+ * that are evaluated concurrently on a {@link ForkJoinPool}, each chunk perturbing
+ * its own copy of the point. The objective function then needs to be safe for concurrent
+ * evaluation. Results are identical to the sequential evaluation.
+ * <p>
+ * When the function is a {@link BatchScalarFN}, the perturbed points are instead handed to
+ * {@link BatchScalarFN#evaluateBatch(Object, double[])} as columns of a matrix, 
+ * {@link #batchSize} points per call.
  * @param <M> matrix type
  */
 public class NumericGradient<M> implements VectorFN<M> {
 
 	final MatCalc<M> mc;
 	final ScalarFN<M> f;
-	public double h = 1e-8;
+	/** function used for the value at the unperturbed point of forward differences, usually f */
+	final ScalarFN<M> baseValue;
+	/** default finite difference step for double precision */
+	public static final double DEFAULT_H = 1e-8;
+
+	/** finite difference step, defaults to {@link #DEFAULT_H} scaled by the square root of the ratio of
+	 * the {@link MatCalc#machineEpsilon()} of the backend to that of double (about 2.3e-4 for float),
+	 * as the step balancing truncation and rounding error grows with the square root of the precision */
+	public double h;
+	/** number of concurrently evaluated chunks of coordinates, 1 for sequential evaluation */
+	public int parallelism = 1;
+	/** pool used for parallel evaluation, {@link ForkJoinPool#commonPool()} when null */
+	public ForkJoinPool pool = null;
+	/** number of points per batch evaluation (when function is a {@link BatchScalarFN}) */
+	public int batchSize = 64;
 	public final NumericCentralGradient central = new NumericCentralGradient();
-	
+
 	public NumericGradient(MatCalc<M> mc, ScalarFN<M> f) {
+		this(mc, f, f);
+	}
+
+	NumericGradient(MatCalc<M> mc, ScalarFN<M> f, ScalarFN<M> baseValue) {
 		this.f = f;
 		this.mc = mc;
+		this.baseValue = baseValue;
+		this.h = DEFAULT_H*Math.sqrt(mc.machineEpsilon()/Math.ulp(1.0));
+	}
+
+	/**
+	 * @return the function of which this is the gradient
+	 */
+	public ScalarFN<M> function() {
+		return f;
+	}
+
+	/**
+	 * Creates a copy of this gradient (with the same settings) that obtains the function value at the
+	 * unperturbed point of forward differences from the specified function instead,
+	 * e.g. from a cache that already knows this value from a line search.
+	 * @param baseValue function equal to {@link #function()}
+	 * @return new numeric gradient
+	 */
+	public NumericGradient<M> withBaseValue(ScalarFN<M> baseValue) {
+		NumericGradient<M> copy = new NumericGradient<>(mc, f, baseValue);
+		copy.h = h;
+		copy.parallelism = parallelism;
+		copy.pool = pool;
+		copy.batchSize = batchSize;
+		return copy;
 	}
 
 	@Override
 	public M evaluate(M vec) {
 		// calculating forward differences
 		final int dim = mc.numRows(vec);
+		final double fx = baseValue.evaluate(vec);
+		if(f instanceof BatchScalarFN)
+			return evaluateBatched(vec, fx, false);
+		if(parallelism > 1 && dim > 1)
+			return evaluateParallel(vec, fx, false);
+		M d = mc.zeros(dim);
+		for(int i=0; i<dim; i++){
+			mc.set_inp(d, i, forwardDiff(vec, i, fx));
+		}
+		return d;
+	}
+
+	/**
+	 * forward difference of coordinate i, vec is perturbed and restored in-place.
+	 * Divides by the perturbation as stored in vec, which differs from h by the rounding to the element precision.
+	 */
+	double forwardDiff(M vec, int i, double fx) {
+		final double eps = h;
+		double vec_i = mc.get(vec, i);
+		mc.set_inp(vec, i, vec_i+eps);
+		double step = mc.get(vec, i)-vec_i;
+		double diff = (f.evaluate(vec)-fx)/step;
+		mc.set_inp(vec, i, vec_i);
+		return diff;
+	}
+
+	/**
+	 * central difference of coordinate i, vec is perturbed and restored in-place
+	 * (dividing by the perturbations as stored in vec)
+	 */
+	double centralDiff(M vec, int i) {
 		final double eps = h;
-		final double divByEps = 1.0/eps;
-		final double fx = f.evaluate(vec);
+		double vec_i = mc.get(vec, i);
+		mc.set_inp(vec, i, vec_i+eps);
+		double plus = mc.get(vec, i);
+		double evalplus = f.evaluate(vec);
+		mc.set_inp(vec, i, vec_i-eps);
+		double minus = mc.get(vec, i);
+		double evalminus = f.evaluate(vec);
+		mc.set_inp(vec, i, vec_i);
+		return (evalplus-evalminus)/(plus-minus);
+	}
+
+	M evaluateParallel(M vec, double fx, boolean useCentral) {
+		final int dim = mc.numRows(vec);
+		final double[] diffs = new double[dim];
+		final int numChunks = Math.min(parallelism, dim);
+		ForkJoinPool p = pool != null ? pool : ForkJoinPool.commonPool();
+		p.invoke(new ChunkTask(vec, fx, useCentral, diffs, numChunks, 0, numChunks));
 		M d = mc.zeros(dim);
 		for(int i=0; i<dim; i++){
-			double vec_i = mc.get(vec, i);
-			mc.set_inp(vec, i, vec_i+eps);
-			double diff = (f.evaluate(vec)-fx)*divByEps;
-			mc.set_inp(vec, i, vec_i);
-			mc.set_inp(d, i, diff);
+			mc.set_inp(d, i, diffs[i]);
 		}
 		return d;
 	}
-	
-	
+
+	M evaluateBatched(M vec, double fx, boolean useCentral) {
+		final BatchScalarFN<M> bf = (BatchScalarFN<M>) f;
+		final int dim = mc.numRows(vec);
+		final double eps = h;
+		// number of coordinates per batch, central differences need 2 points per coordinate
+		final int coordsPerBatch = Math.max(1, Math.min(dim, useCentral ? batchSize/2 : batchSize));
+		final int pointsPerCoord = useCentral ? 2 : 1;
+		M points = mc.zeros(dim, coordsPerBatch*pointsPerCoord);
+		double[] values = new double[coordsPerBatch*pointsPerCoord];
+		// perturbations as stored in points
+		double[] steps = new double[coordsPerBatch];
+		M d = mc.zeros(dim);
+		for(int start=0; start<dim; start+=coordsPerBatch) {
+			int n = Math.min(coordsPerBatch, dim-start);
+			if(n < coordsPerBatch) {
+				points = mc.zeros(dim, n*pointsPerCoord);
+			}
+			// fill columns with copies of vec, then perturb the respective coordinate
+			for(int r=0; r<dim; r++) {
+				double v = mc.get(vec, r);
+				for(int c=0; c<n*pointsPerCoord; c++)
+					mc.set_inp(points, r, c, v);
+			}
+			for(int k=0; k<n; k++) {
+				int i = start+k;
+				double vec_i = mc.get(vec, i);
+				mc.set_inp(points, i, k*pointsPerCoord, vec_i+eps);
+				steps[k] = mc.get(points, i, k*pointsPerCoord)-vec_i;
+				if(useCentral) {
+					mc.set_inp(points, i, k*pointsPerCoord+1, vec_i-eps);
+					steps[k] -= mc.get(points, i, k*pointsPerCoord+1)-vec_i;
+				}
+			}
+			bf.evaluateBatch(points, values);
+			for(int k=0; k<n; k++) {
+				double diff = useCentral ? 
+						(values[2*k]-values[2*k+1])/steps[k] : 
+						(values[k]-fx)/steps[k];
+				mc.set_inp(d, start+k, diff);
+			}
+		}
+		return d;
+	}
+
+	/**
+	 * Task computing the differences for a range of chunks of coordinates.
+	 * Splits until a single chunk is left, which is then computed on a copy of the point.
+	 */
+	class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final M vec;
+		final double fx;
+		final boolean useCentral;
+		final double[] diffs;
+		final int numChunks, chunkStart, chunkEnd;
+
+		ChunkTask(M vec, double fx, boolean useCentral, double[] diffs, int numChunks, int chunkStart, int chunkEnd) {
+			this.vec = vec;
+			this.fx = fx;
+			this.useCentral = useCentral;
+			this.diffs = diffs;
+			this.numChunks = numChunks;
+			this.chunkStart = chunkStart;
+			this.chunkEnd = chunkEnd;
+		}
+
+		@Override
+		protected void compute() {
+			if(chunkEnd-chunkStart > 1) {
+				int mid = (chunkStart+chunkEnd)/2;
+				invokeAll(
+						new ChunkTask(vec, fx, useCentral, diffs, numChunks, chunkStart, mid),
+						new ChunkTask(vec, fx, useCentral, diffs, numChunks, mid, chunkEnd));
+				return;
+			}
+			final int from = (int)((long)chunkStart*diffs.length/numChunks);
+			final int to = (int)((long)chunkEnd*diffs.length/numChunks);
+			M copy = mc.copy(vec);
+			for(int i=from; i<to; i++) {
+				diffs[i] = useCentral ? centralDiff(copy, i) : forwardDiff(copy, i, fx);
+			}
+		}
+	}
+
+
 	public class NumericCentralGradient implements VectorFN<M> {
 
 		@Override
 		public M evaluate(M vec) {
 			// calculating central differences
 			final int dim = mc.numRows(vec);
-			final double eps = h;
-			final double divBy2Eps = 0.5/eps;
+			if(f instanceof BatchScalarFN)
+				return evaluateBatched(vec, Double.NaN, true);
+			if(parallelism > 1 && dim > 1)
+				return evaluateParallel(vec, Double.NaN, true);
 			M d = mc.zeros(dim);
 			for(int i=0; i<dim; i++){
-				double vec_i = mc.get(vec, i);
-				mc.set_inp(vec, i, vec_i+eps);
-				double evalplus = f.evaluate(vec);
-				mc.set_inp(vec, i, vec_i-eps);
-				double evalminus = f.evaluate(vec);
-				mc.set_inp(vec, i, vec_i);
-				double diff = (evalplus-evalminus)*divBy2Eps;
-				mc.set_inp(d, i, diff);
+				mc.set_inp(d, i, centralDiff(vec, i));
 			}
 			return d;
 		}
 	}
-	
+
 }
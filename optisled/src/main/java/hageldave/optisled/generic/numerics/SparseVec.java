@@ -0,0 +1,114 @@
+package hageldave.optisled.generic.numerics;
+
+import java.util.Arrays;
+
+/**
+ * Sparse vector in compressed format, i.e. the indices of the non-zero entries (strictly increasing)
+ * and their values. Used together with the sparse-dense kernels of {@link MatCalc}
+ * ({@link MatCalc#axpySparse_inp(double, SparseVec, Object)}, {@link MatCalc#innerSparse(SparseVec, Object)}),
+ * which only touch the non-zero entries of the dense operand.
+ * <p>
+ * Immutable, the arrays passed to {@link #of(int, int[], double[])} are copied.
+ */
+public final class SparseVec {
+
+	/** number of elements (dense length) */
+	public final int dim;
+	final int[] indices;
+	final double[] values;
+
+	SparseVec(int dim, int[] indices, double[] values) {
+		this.dim = dim;
+		this.indices = indices;
+		this.values = values;
+	}
+
+	/**
+	 * @param dim number of elements (dense length)
+	 * @param indices indices of the non-zero entries, strictly increasing
+	 * @param values values of the non-zero entries
+	 * @return sparse vector
+	 * @throws IllegalArgumentException when indices are out of range or not strictly increasing,
+	 * or the arrays have different lengths
+	 */
+	public static SparseVec of(int dim, int[] indices, double[] values) {
+		if(indices.length != values.length)
+			throw new IllegalArgumentException("number of indices " + indices.length + " does not match number of values " + values.length);
+		for(int k=0; k<indices.length; k++) {
+			if(indices[k] < 0 || indices[k] >= dim)
+				throw new IllegalArgumentException("index " + indices[k] + " out of range for dimension " + dim);
+			if(k > 0 && indices[k] <= indices[k-1])
+				throw new IllegalArgumentException("indices have to be strictly increasing, but got " + indices[k-1] + " before " + indices[k]);
+		}
+		return new SparseVec(dim, indices.clone(), values.clone());
+	}
+
+	/**
+	 * @param dim number of elements (dense length)
+	 * @param index index of the only non-zero entry
+	 * @param value value of the entry
+	 * @return sparse vector with a single non-zero entry, e.g. the gradient of a box constraint
+	 */
+	public static SparseVec unit(int dim, int index, double value) {
+		return of(dim, new int[] {index}, new double[] {value});
+	}
+
+	/**
+	 * @return number of (explicitly stored) non-zero entries
+	 */
+	public int nnz() {
+		return indices.length;
+	}
+
+	/**
+	 * @param k position in the non-zero entries
+	 * @return index of the k-th non-zero entry
+	 */
+	public int index(int k) {
+		return indices[k];
+	}
+
+	/**
+	 * @param k position in the non-zero entries
+	 * @return value of the k-th non-zero entry
+	 */
+	public double value(int k) {
+		return values[k];
+	}
+
+	/**
+	 * @param i index
+	 * @return entry at index i (0 when not stored)
+	 */
+	public double get(int i) {
+		int k = Arrays.binarySearch(indices, i);
+		return k < 0 ? 0.0 : values[k];
+	}
+
+	/**
+	 * @return euclidean norm
+	 */
+	public double norm() {
+		double sum = 0;
+		for(double v : values)
+			sum += v*v;
+		return Math.sqrt(sum);
+	}
+
+	/**
+	 * @param mc matrix calculator
+	 * @return dense column vector
+	 */
+	public <M> M toDense(MatCalc<M> mc) {
+		return mc.axpySparse_inp(1.0, this, mc.zeros(dim));
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("SparseVec(").append(dim).append(")[");
+		for(int k=0; k<indices.length; k++)
+			sb.append(k > 0 ? ", " : "").append(indices[k]).append(':').append(values[k]);
+		return sb.append(']').toString();
+	}
+
+}
@@ -0,0 +1,288 @@
+package hageldave.optisled.generic.problem;
+
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.numerics.NumericGradient;
+import hageldave.optisled.generic.problem.ScalarFN.BatchScalarFN;
+import hageldave.optisled.generic.problem.ScalarFN.ScalarFNWithValueAndGradient;
+
+/**
+ * Memoizing wrapper of a function and its gradient that remembers the values and gradients
+ * of the last N evaluated points, and counts the evaluations of the wrapped function and gradient.
+ * Points are compared by content (hash of {@link MatCalc#toArray(Object, double[])} first, then element-wise),
+ * so evaluating a copy of a previously evaluated point is a cache hit.
+ * <p>
+ * Value and gradient are cached independently, e.g. the value of a line search probe is cached when
+ * the probe is accepted and reused when the solver asks for value and gradient of that point
+ * through {@link #evaluateWithGradient(Object, Object)}, which then only evaluates the gradient.
+ * <p>
+ * When the gradient is a {@link NumericGradient} of f, the value at the unperturbed point of its forward
+ * differences is also taken from the cache, which saves one function evaluation per gradient
+ * at a point whose value is already known.
+ * <p>
+ * Use {@link #of(MatCalc, ScalarFN, VectorFN, int)} to keep the batch capability of a {@link BatchScalarFN}
+ * (batch evaluations are counted but not cached). With a capacity of 0 nothing is cached and
+ * the wrapper only counts evaluations.
+ * <p>
+ * Cached gradients are copies owned by the cache, returned gradients must not be modified.
+ * Only meant for deterministic functions, i.e. not for stochastic objectives that change between
+ * evaluations. Not thread-safe.
+ * @param <M> matrix type
+ */
+public class CachedFN<M> implements ScalarFNWithValueAndGradient<M> {
+
+	final MatCalc<M> mc;
+	final ScalarFN<M> f;
+	final VectorFN<M> df;
+	final VectorFN<M> grad = this::evaluateGradient;
+
+	final int capacity;
+	final double[][] keys;
+	final int[] keyHashes;
+	final int[] keyRows;
+	final double[] values;
+	final boolean[] hasValue;
+	final M[] gradients;
+	/** buffer for the values of looked up points (for backends that do not store doubles) */
+	double[] buffer = new double[0];
+	int size = 0;
+	int newest = -1;
+
+	/** number of lookups that were answered from the cache */
+	public int numHits = 0;
+	/** number of evaluations of the wrapped function (each point of a batch counts) */
+	public int numFunctionEvaluations = 0;
+	/** number of evaluations of the wrapped gradient */
+	public int numGradientEvaluations = 0;
+
+	/**
+	 * Batch capable variant of {@link CachedFN}
+	 * @param <M> matrix type
+	 */
+	public static class CachedBatchFN<M> extends CachedFN<M> implements BatchScalarFN<M> {
+
+		CachedBatchFN(MatCalc<M> mc, BatchScalarFN<M> f, VectorFN<M> df, int capacity) {
+			super(mc, f, df, capacity);
+		}
+
+		@Override
+		public void evaluateBatch(M points, double[] results) {
+			numFunctionEvaluations += mc.numCols(points);
+			((BatchScalarFN<M>)f).evaluateBatch(points, results);
+		}
+	}
+
+	/**
+	 * @param mc matrix calculator
+	 * @param f function to be cached
+	 * @param df gradient of f to be cached
+	 * @param capacity number of points to remember (0 for counting only)
+	 */
+	public CachedFN(MatCalc<M> mc, ScalarFN<M> f, VectorFN<M> df, int capacity) {
+		if(capacity < 0)
+			throw new IllegalArgumentException("capacity has to be non-negative, but was " + capacity);
+		this.mc = mc;
+		this.f = f;
+		if(df instanceof NumericGradient && ((NumericGradient<M>)df).function() == f)
+			df = ((NumericGradient<M>)df).withBaseValue(this::evaluate);
+		this.df = df;
+		this.capacity = capacity;
+		this.keys = new double[capacity][];
+		this.keyHashes = new int[capacity];
+		this.keyRows = new int[capacity];
+		this.values = new double[capacity];
+		this.hasValue = new boolean[capacity];
+		this.gradients = mc.matArray(capacity);
+	}
+
+	/**
+	 * Creates a cache for the specified function, which is a {@link BatchScalarFN} when f is one.
+	 * @param mc matrix calculator
+	 * @param f function to be cached
+	 * @param df gradient of f to be cached
+	 * @param capacity number of points to remember (0 for counting only)
+	 * @return cached function
+	 */
+	public static <M> CachedFN<M> of(MatCalc<M> mc, ScalarFN<M> f, VectorFN<M> df, int capacity) {
+		if(f instanceof BatchScalarFN)
+			return new CachedBatchFN<>(mc, (BatchScalarFN<M>)f, df, capacity);
+		return new CachedFN<>(mc, f, df, capacity);
+	}
+
+	@Override
+	public double evaluate(M x) {
+		double[] data = valuesOf(x);
+		int hash = hash(x, data);
+		int slot = slotOf(x, data, hash);
+		if(slot >= 0 && hasValue[slot]) {
+			numHits++;
+			return values[slot];
+		}
+		numFunctionEvaluations++;
+		double fx = f.evaluate(x);
+		slot = slotAfterEvaluation(x, hash);
+		if(slot >= 0) {
+			values[slot] = fx;
+			hasValue[slot] = true;
+		}
+		return fx;
+	}
+
+	M evaluateGradient(M x) {
+		double[] data = valuesOf(x);
+		int hash = hash(x, data);
+		int slot = slotOf(x, data, hash);
+		if(slot >= 0 && gradients[slot] != null) {
+			numHits++;
+			return gradients[slot];
+		}
+		numGradientEvaluations++;
+		M dfx = df.evaluate(x);
+		slot = slotAfterEvaluation(x, hash);
+		return slot >= 0 ? storeGradient(slot, dfx) : dfx;
+	}
+
+	@Override
+	public double evaluateWithGradient(M x, M gradOut) {
+		double[] data = valuesOf(x);
+		int hash = hash(x, data);
+		int slot = slotOf(x, data, hash);
+		if(slot >= 0 && hasValue[slot]) {
+			double fx = values[slot];
+			if(gradients[slot] != null) {
+				numHits++;
+				mc.copyValues(gradients[slot], gradOut);
+				return fx;
+			}
+			// only gradient is missing
+			numGradientEvaluations++;
+			M dfx = df.evaluate(x);
+			slot = slotAfterEvaluation(x, hash);
+			if(slot >= 0) {
+				values[slot] = fx;
+				hasValue[slot] = true;
+				dfx = storeGradient(slot, dfx);
+			}
+			mc.copyValues(dfx, gradOut);
+			return fx;
+		}
+		if(!(f instanceof ScalarFNWithValueAndGradient && ((ScalarFNWithValueAndGradient<M>)f).gradient() == df)) {
+			// separate evaluation through the cache, so that a numeric gradient finds the value
+			double fx = evaluate(x);
+			mc.copyValues(evaluateGradient(x), gradOut);
+			return fx;
+		}
+		numFunctionEvaluations++;
+		numGradientEvaluations++;
+		double fx = ((ScalarFNWithValueAndGradient<M>)f).evaluateWithGradient(x, gradOut);
+		slot = slotAfterEvaluation(x, hash);
+		if(slot >= 0) {
+			values[slot] = fx;
+			hasValue[slot] = true;
+			storeGradient(slot, gradOut);
+		}
+		return fx;
+	}
+
+	@Override
+	public VectorFN<M> gradient() {
+		return grad;
+	}
+
+	/**
+	 * forgets all cached points
+	 */
+	public void clear() {
+		for(int i=0; i<capacity; i++) {
+			hasValue[i] = false;
+			gradients[i] = null;
+		}
+		size = 0;
+		newest = -1;
+	}
+
+	M storeGradient(int slot, M dfx) {
+		// fresh copy, a previously returned gradient may still be in use by the caller
+		return gradients[slot] = mc.copy(dfx);
+	}
+
+	/**
+	 * @return values of x for hash and comparison (backing array of x or the reused buffer),
+	 * null if capacity is 0. Only valid until the next lookup, nested evaluations may overwrite the buffer.
+	 */
+	double[] valuesOf(M x) {
+		if(capacity == 0)
+			return null;
+		int n = mc.numElem(x);
+		if(buffer.length < n)
+			buffer = new double[n];
+		return mc.toArray(x, buffer);
+	}
+
+	int hash(M x, double[] data) {
+		if(capacity == 0)
+			return 0;
+		int n = mc.numElem(x);
+		int h = 1;
+		for(int i=0; i<n; i++) {
+			long bits = Double.doubleToLongBits(data[i]);
+			h = 31*h + (int)(bits ^ (bits >>> 32));
+		}
+		return h;
+	}
+
+	/** @return slot of the cached point equal to x, or -1 */
+	int slotOf(M x, double[] data, int hash) {
+		if(size == 0)
+			return -1;
+		int n = mc.numElem(x);
+		// search from newest to oldest, recently evaluated points are the most likely hits
+		for(int k=0; k<size; k++) {
+			int i = Math.floorMod(newest-k, capacity);
+			if(keyHashes[i] == hash && keyRows[i] == mc.numRows(x) && keys[i].length == n && equal(keys[i], data, n))
+				return i;
+		}
+		return -1;
+	}
+
+	static boolean equal(double[] a, double[] b, int n) {
+		for(int i=0; i<n; i++)
+			if(Double.doubleToLongBits(a[i]) != Double.doubleToLongBits(b[i]))
+				return false;
+		return true;
+	}
+
+	/** 
+	 * @return slot of x after evaluating at x, inserting x when it is not cached. 
+	 * Looked up again since the evaluation may have been nested, e.g. a numeric gradient evaluating 
+	 * the value through this cache, which inserts x itself (or evicts its slot).
+	 * Returns -1 if capacity is 0.
+	 */
+	int slotAfterEvaluation(M x, int hash) {
+		if(capacity == 0)
+			return -1;
+		int slot = slotOf(x, valuesOf(x), hash);
+		return slot >= 0 ? slot : insert(x, hash);
+	}
+
+	/** stores x as newest point (evicting the oldest), value and gradient are unset. Returns -1 if capacity is 0. */
+	int insert(M x, int hash) {
+		if(capacity == 0)
+			return -1;
+		int n = mc.numElem(x);
+		newest = (newest+1)%capacity;
+		size = Math.min(size+1, capacity);
+		double[] key = keys[newest];
+		if(key == null || key.length != n)
+			key = keys[newest] = new double[n];
+		// values are read again, the lookup buffer may have been overwritten by a nested evaluation
+		double[] data = mc.toArray(x, key);
+		if(data != key)
+			System.arraycopy(data, 0, key, 0, n);
+		keyHashes[newest] = hash;
+		keyRows[newest] = mc.numRows(x);
+		hasValue[newest] = false;
+		gradients[newest] = null;
+		return newest;
+	}
+
+}
@@ -0,0 +1,101 @@
+package hageldave.optisled.generic.problem;
+
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.ScalarFN.ScalarFNWithValueAndGradient;
+
+/**
+ * Objective that is a sum of terms {@code f(x) = sum_i f_i(x)}, e.g. the loss over the samples of a dataset,
+ * which can be evaluated on a subset of its terms (minibatch).
+ * <p>
+ * {@link hageldave.optisled.generic.solver.StochasticGradientDescent} and
+ * {@link hageldave.optisled.generic.solver.AdamGradientDescent} detect such an objective and evaluate
+ * only a minibatch of terms per iteration (see {@link hageldave.optisled.generic.solver.MinibatchScheduler}),
+ * so that the cost of an iteration scales with the batch size instead of the number of terms.
+ * Other solvers evaluate all terms through {@link #evaluate(Object)} and {@link #evaluateWithGradient(Object, Object)}.
+ * <p>
+ * Implementations only need to evaluate the requested terms and must not change between evaluations,
+ * i.e. they are stateless with respect to the solver.
+ * Use {@link #of(MatCalc, int, Term)} to create a minibatch objective from its individual terms.
+ * @param <M> matrix type
+ */
+public interface MinibatchFN<M> extends ScalarFNWithValueAndGradient<M> {
+
+	/**
+	 * @return number of terms of the sum
+	 */
+	public int numTerms();
+
+	/**
+	 * Evaluates the sum of the specified terms and its gradient.
+	 * @param x function argument (vector)
+	 * @param indices indices of the terms, the terms {@code indices[from]} to {@code indices[to-1]} are evaluated.
+	 * When null, the terms {@code from} to {@code to-1} are evaluated.
+	 * @param from first position in indices (inclusive)
+	 * @param to last position in indices (exclusive)
+	 * @param gradOut matrix to write the gradient of the sum of terms to (same size as x), null when only the value is needed
+	 * @return sum of the specified terms evaluated at x
+	 */
+	public double evaluateTerms(M x, int[] indices, int from, int to, M gradOut);
+
+	@Override
+	public default double evaluate(M x) {
+		return evaluateTerms(x, null, 0, numTerms(), null);
+	}
+
+	@Override
+	public default double evaluateWithGradient(M x, M gradOut) {
+		return evaluateTerms(x, null, 0, numTerms(), gradOut);
+	}
+
+	/**
+	 * Single term of a {@link MinibatchFN}
+	 * @param <M> matrix type
+	 */
+	public static interface Term<M> {
+		/**
+		 * @param i index of the term
+		 * @param x function argument (vector)
+		 * @param gradAccum matrix to add the gradient of the term at x to, null when only the value is needed
+		 * @return value of the term evaluated at x
+		 */
+		public double evaluate(int i, M x, M gradAccum);
+	}
+
+	/**
+	 * Creates a minibatch objective that is the sum of the specified terms.
+	 * @param mc matrix calculator
+	 * @param numTerms number of terms
+	 * @param term function evaluating the i-th term and accumulating its gradient
+	 * @return minibatch objective
+	 */
+	public static <M> MinibatchFN<M> of(MatCalc<M> mc, int numTerms, Term<M> term) {
+		return new MinibatchFN<M>() {
+			final VectorFN<M> gradient = x->{
+				M grad = mc.zeros(mc.numRows(x), mc.numCols(x));
+				evaluateTerms(x, null, 0, numTerms, grad);
+				return grad;
+			};
+
+			@Override
+			public int numTerms() {
+				return numTerms;
+			}
+
+			@Override
+			public double evaluateTerms(M x, int[] indices, int from, int to, M gradOut) {
+				if(gradOut != null)
+					mc.fill_inp(gradOut, 0.0);
+				double sum = 0;
+				for(int k=from; k<to; k++)
+					sum += term.evaluate(indices == null ? k : indices[k], x, gradOut);
+				return sum;
+			}
+
+			@Override
+			public VectorFN<M> gradient() {
+				return gradient;
+			}
+		};
+	}
+
+}
@@ -4,6 +4,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 
+import hageldave.optisled.generic.autodiff.DualFN;
+import hageldave.optisled.generic.autodiff.ForwardDiffFN;
 import hageldave.optisled.generic.numerics.MatCalc;
 import hageldave.optisled.generic.numerics.NumericGradient;
 import hageldave.optisled.generic.problem.ScalarFN.ScalarFNWithGradient;
@@ -99,6 +101,15 @@ public class OptimizationProblemBuilder<M> {
 		this.objective_deriv = Objects.requireNonNull(df);
 		return this;
 	}
+	
+	/**
+	 * sets objective function to minimize, with exact gradient through forward-mode automatic differentiation
+	 * @param f objective function expressed on dual numbers
+	 * @return this for chaining
+	 */
+	public OptimizationProblemBuilder<M> setObjective(DualFN f){
+		return setObjective(new ForwardDiffFN<>(mc, f), null);
+	}
 
 	/**
 	 * adds constraint g(x) LEQ 0
@@ -119,5 +130,14 @@ public class OptimizationProblemBuilder<M> {
 		return this;
 	}
 	
+	/**
+	 * adds constraint g(x) LEQ 0, with exact gradient through forward-mode automatic differentiation
+	 * @param g constraint function expressed on dual numbers
+	 * @return this for chaining
+	 */
+	public OptimizationProblemBuilder<M> addIneqConstraint(DualFN g){
+		return addIneqConstraint(new ForwardDiffFN<>(mc, g), null);
+	}
+	
 	
 }
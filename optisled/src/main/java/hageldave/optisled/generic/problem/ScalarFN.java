@@ -1,6 +1,7 @@
 package hageldave.optisled.generic.problem;
 
 import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.numerics.SparseVec;
 
 /**
  * Function taking vector input and giving scalar output.
@@ -23,7 +24,63 @@ public interface ScalarFN<M> {
 	public interface ScalarFNWithGradient<M> extends ScalarFN<M> {
 		public VectorFN<M> gradient();
 	}
-	
+
+	/**
+	 * Special {@link ScalarFNWithGradient} that can compute value and gradient in a single pass,
+	 * sharing intermediate results that both require (e.g. the forward pass of automatic differentiation,
+	 * or constraint values of penalty functions).
+	 * <p>
+	 * Solvers that need value and gradient at the same location call 
+	 * {@link ScalarFN#evaluateWithGradient(MatCalc, ScalarFN, VectorFN, Object, Object)}, which takes
+	 * the single pass when the gradient function they were given is the one returned by {@link #gradient()}.
+	 * Implementations should therefore return the same {@link VectorFN} instance on every call of {@link #gradient()}.
+	 * @param <M> matrix type
+	 */
+	public interface ScalarFNWithValueAndGradient<M> extends ScalarFNWithGradient<M> {
+		/**
+		 * @param x function argument (vector)
+		 * @param gradOut matrix to write the gradient at x to (same size as x)
+		 * @return value (scalar) of function evaluated at x
+		 */
+		public double evaluateWithGradient(M x, M gradOut);
+	}
+
+	/**
+	 * Special {@link ScalarFN} that can evaluate many points at once, e.g.
+	 * through a single matrix multiplication instead of one per point.
+	 * This is used by {@link hageldave.optisled.generic.numerics.NumericGradient} for the perturbed points
+	 * of finite differences and by the line search of
+	 * {@link hageldave.optisled.generic.solver.GradientDescent} for multiple step sizes.
+	 * @param <M> matrix type
+	 */
+	public interface BatchScalarFN<M> extends ScalarFN<M> {
+		/**
+		 * @param points function arguments, one point per column
+		 * @param results array to write the values to, {@code results[j]} = value of function evaluated at column j
+		 * (array may be longer than the number of points)
+		 */
+		public void evaluateBatch(M points, double[] results);
+	}
+
+	/**
+	 * Evaluates value and gradient of a function at the same location.
+	 * This is done in a single pass when f is a {@link ScalarFNWithValueAndGradient} and df is its gradient,
+	 * otherwise f and df are evaluated separately.
+	 * @param mc matrix calculator
+	 * @param f function
+	 * @param df gradient of f
+	 * @param x function argument (vector)
+	 * @param gradOut matrix to write the gradient at x to (same size as x)
+	 * @return value of f at x
+	 */
+	public static <M> double evaluateWithGradient(MatCalc<M> mc, ScalarFN<M> f, VectorFN<M> df, M x, M gradOut) {
+		if(f instanceof ScalarFNWithValueAndGradient && ((ScalarFNWithValueAndGradient<M>)f).gradient() == df)
+			return ((ScalarFNWithValueAndGradient<M>)f).evaluateWithGradient(x, gradOut);
+		double fx = f.evaluate(x);
+		mc.copyValues(df.evaluate(x), gradOut);
+		return fx;
+	}
+
 	public static <M> ScalarFNWithGradient<M> constant(MatCalc<M> mc, final double c) {
 		return new ScalarFNWithGradient<M>() {
 			@Override
@@ -50,6 +107,28 @@ public interface ScalarFN<M> {
 		};
 	}
 
+	/**
+	 * Linear function with sparse coefficients, e.g. a box constraint {@code x_j - u <= 0} is
+	 * {@code linear(mc, SparseVec.unit(dim, j, 1.0), -u)}. Its gradient is a {@link SparseVectorFN}.
+	 * @param mc matrix calculator
+	 * @param coefficients sparse coefficients
+	 * @param c constant offset
+	 * @return coefficients'x + c
+	 */
+	public static <M> ScalarFNWithGradient<M> linear(final MatCalc<M> mc, final SparseVec coefficients, final double c) {
+		final SparseVectorFN<M> gradient = SparseVectorFN.constant(mc, coefficients);
+		return new ScalarFNWithGradient<M>() {
+			@Override
+			public double evaluate(M x) {
+				return mc.innerSparse(coefficients, x) + c;
+			}
+			@Override
+			public VectorFN<M> gradient() {
+				return gradient;
+			}
+		};
+	}
+
 	public static <M> ScalarFNWithGradient<M> quadratic(MatCalc<M> mc, final M quad, final double c){
 		return quadratic(mc,quad,null,c);
 	}
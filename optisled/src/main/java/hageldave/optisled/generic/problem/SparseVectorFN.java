@@ -0,0 +1,67 @@
+package hageldave.optisled.generic.problem;
+
+import java.util.function.Function;
+
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.numerics.SparseVec;
+
+/**
+ * Special {@link VectorFN} with sparse output, e.g. the gradient of a constraint that only depends on few
+ * coordinates (such as a box constraint).
+ * The penalty functions of {@link hageldave.optisled.generic.solver.LogBarrier} and
+ * {@link hageldave.optisled.generic.solver.AugmentedLagrangian} accumulate such constraint gradients
+ * through {@link #evaluateSparse(Object)} without densifying them.
+ * @param <M> matrix (vector) type
+ */
+public interface SparseVectorFN<M> extends VectorFN<M> {
+
+	/**
+	 * @param x function argument (vector)
+	 * @return value (sparse vector) of function evaluated at x
+	 */
+	public SparseVec evaluateSparse(M x);
+
+	/**
+	 * @param mc matrix calculator
+	 * @param fn function with sparse output
+	 * @return sparse vector function whose dense evaluation converts the output of fn
+	 */
+	public static <M> SparseVectorFN<M> of(MatCalc<M> mc, Function<M, SparseVec> fn) {
+		return new SparseVectorFN<M>() {
+			@Override
+			public SparseVec evaluateSparse(M x) {
+				return fn.apply(x);
+			}
+
+			@Override
+			public M evaluate(M x) {
+				return fn.apply(x).toDense(mc);
+			}
+		};
+	}
+
+	/**
+	 * @param mc matrix calculator
+	 * @param c constant sparse vector
+	 * @return sparse vector function with constant output (dense output is created once and shared)
+	 */
+	public static <M> SparseVectorFN<M> constant(MatCalc<M> mc, SparseVec c) {
+		return new SparseVectorFN<M>() {
+			M dense;
+
+			@Override
+			public SparseVec evaluateSparse(M x) {
+				return c;
+			}
+
+			@Override
+			public M evaluate(M x) {
+				M d = dense;
+				if(d == null)
+					dense = d = c.toDense(mc);
+				return d;
+			}
+		};
+	}
+
+}
@@ -1,17 +1,29 @@
 package hageldave.optisled.generic.solver;
 
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.CachedFN;
+import hageldave.optisled.generic.problem.MinibatchFN;
 import hageldave.optisled.generic.problem.ScalarFN;
 import hageldave.optisled.generic.problem.VectorFN;
+import hageldave.optisled.generic.solver.DescentResult.Termination;
+import hageldave.optisled.generic.solver.Hyperparams.DoubleKey;
+import hageldave.optisled.generic.solver.Hyperparams.IntKey;
 import hageldave.optisled.history.DescentLog;
 import hageldave.utils.Ref;
 
 /**
  * Stochastic Gradient descent implementation with Adam.
  * <p>
- * Stochasticity has to be realized through the {@link #randRef} object which holds a random number which is 
+ * When the objective is a {@link MinibatchFN} (sum of terms), each iteration evaluates only a minibatch of
+ * {@link #PARAM_BATCH_SIZE} terms, sampled in shuffled epochs by a {@link MinibatchScheduler}.
+ * The gradient passed along with the objective is not used in this case (may be null).
+ * With {@link #parallelism} greater than 1, each minibatch is evaluated data-parallel and reduced deterministically,
+ * so that a descent with a seeded {@link #rand} stays reproducible.
+ * <p>
+ * Otherwise (deprecated), stochasticity has to be realized through the {@link #randRef} object which holds a random number which is 
  * changing in each iteration (change events are fired and can be listened to).
  * When the random number changes, the objective function and gradient, that were passed to 
  * {@link #arg_min(ScalarFN, VectorFN, Object, DescentLog)}, need to change behavior to only correspond to a subset of
@@ -24,11 +36,11 @@ public class AdamGradientDescent<M> implements DescentAlgorithm<M> {
 	
 	public static class HyperparamsAdam extends Hyperparams {
 		{
-			set(PARAM_BETA1, 0.9);
-			set(PARAM_BETA2, 0.999);
-			set(PARAM_STEP_SCALING, 1.0);
-			set(PARAM_TERMINATION_STEPSIZE, 1e-8);
-			set(PARAM_MAX_ITERATIONS, 100);
+			set(KEY_BETA1, 0.9);
+			set(KEY_BETA2, 0.999);
+			set(KEY_STEP_SCALING, 1.0);
+			set(KEY_TERMINATION_STEPSIZE, 1e-8);
+			set(KEY_MAX_ITERATIONS, 100);
 		}
 	}
 	
@@ -54,6 +66,46 @@ public class AdamGradientDescent<M> implements DescentAlgorithm<M> {
 	 * (preventing infinite loops in ill conditioned problems) 
 	 */
 	public static final String PARAM_MAX_ITERATIONS = "MAX_ITERATIONS";
+	/**
+	 * number of terms of a {@link MinibatchFN} objective that are evaluated per iteration
+	 */
+	public static final String PARAM_BATCH_SIZE = StochasticGradientDescent.PARAM_BATCH_SIZE;
+	
+	/** typed key of {@link #PARAM_BETA1} */
+	public static final DoubleKey KEY_BETA1 = new DoubleKey(PARAM_BETA1, 0.9, 0.0, Math.nextDown(1.0));
+	/** typed key of {@link #PARAM_BETA2} */
+	public static final DoubleKey KEY_BETA2 = new DoubleKey(PARAM_BETA2, 0.999, 0.0, Math.nextDown(1.0));
+	/** typed key of {@link #PARAM_STEP_SCALING} */
+	public static final DoubleKey KEY_STEP_SCALING = new DoubleKey(PARAM_STEP_SCALING, 1.0, Double.MIN_VALUE, Double.POSITIVE_INFINITY);
+	/** typed key of {@link #PARAM_TERMINATION_STEPSIZE} */
+	public static final DoubleKey KEY_TERMINATION_STEPSIZE = GradientDescent.KEY_TERMINATION_STEPSIZE;
+	/** typed key of {@link #PARAM_MAX_ITERATIONS} */
+	public static final IntKey KEY_MAX_ITERATIONS = GradientDescent.KEY_MAX_ITERATIONS;
+	/** typed key of {@link #PARAM_BATCH_SIZE} */
+	public static final IntKey KEY_BATCH_SIZE = StochasticGradientDescent.KEY_BATCH_SIZE;
+	
+	/**
+	 * Hyperparameters resolved into primitive fields, created once per frozen {@link Hyperparams} snapshot
+	 */
+	static final class Config {
+		final Hyperparams source;
+		final double stepScaling;
+		final double beta1;
+		final double beta2;
+		final double terminationStepSize;
+		final int maxIterations;
+		final int batchSize;
+		
+		Config(Hyperparams hyperparams) {
+			this.source = hyperparams;
+			this.stepScaling = hyperparams.get(KEY_STEP_SCALING);
+			this.beta1 = hyperparams.get(KEY_BETA1);
+			this.beta2 = hyperparams.get(KEY_BETA2);
+			this.terminationStepSize = hyperparams.get(KEY_TERMINATION_STEPSIZE);
+			this.maxIterations = hyperparams.get(KEY_MAX_ITERATIONS);
+			this.batchSize = hyperparams.get(KEY_BATCH_SIZE);
+		}
+	}
 	
 	//
 	
@@ -69,15 +121,32 @@ public class AdamGradientDescent<M> implements DescentAlgorithm<M> {
 	/** the loss when arg_min terminates */
 	public double lossOnTermination;
 
-	/** RNG, used to generate a new number on each iteration  */
+	/** RNG, used to shuffle minibatches (or generate a new number on each iteration for {@link #randRef}) */
 	public Random rand;
 	/** 
 	 * Reference to the random number of the current iteration.
 	 * Should be used to alter which part of the loss and respective gradient 
 	 * is returned by {@code f} and {@code df} in {@link #arg_min(ScalarFN, VectorFN, Object, DescentLog)}.
 	 * This way stochastic gradient descent can be realized.
+	 * Not used for {@link MinibatchFN} objectives.
+	 * @deprecated makes the objective stateful and fires synchronized change events each iteration,
+	 * use a {@link MinibatchFN} objective instead
 	 */
+	@Deprecated
 	public Ref<Integer> randRef = new Ref<>();
+	/** 
+	 * number of concurrently evaluated chunks of a {@link MinibatchFN} minibatch, 1 for sequential evaluation
+	 * (see {@link MinibatchScheduler#parallelism})
+	 */
+	public int parallelism = 1;
+	/** pool used for parallel minibatch evaluation, {@link ForkJoinPool#commonPool()} when null */
+	public ForkJoinPool pool = null;
+
+	/** instrumentation listener, {@link SolverListener#NOOP} (disabled) by default */
+	public SolverListener listener = SolverListener.NOOP;
+	
+	/** configuration resolved from the current hyperparameters */
+	volatile Config config;
 
 	/**
 	 * Creates a new GD instance for matrices of type M using
@@ -99,58 +168,118 @@ public class AdamGradientDescent<M> implements DescentAlgorithm<M> {
 		this.hyperparams = hyperparams;
 	}
 
+	/**
+	 * @return configuration of the current hyperparameters, only resolved again when these have changed
+	 */
+	Config config() {
+		Hyperparams frozen = hyperparams.frozen();
+		Config c = this.config;
+		if(c == null || c.source != frozen)
+			this.config = c = new Config(frozen);
+		return c;
+	}
+
 	@Override
 	public M arg_min(ScalarFN<M> f, VectorFN<M> df, M initialGuess, DescentLog log){
+		DescentResult<M> result = minimize(f, df, initialGuess, log);
+		this.stepSizeOnTermination = result.stepSize;
+		this.lossOnTermination = result.loss;
+		return result.argmin;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Note that {@link #rand} and {@link #randRef} are shared state of this solver, so concurrent
+	 * descents using the same instance interfere with each other.
+	 * For a {@link MinibatchFN} objective, the returned loss is that of the full objective (all terms), which
+	 * is not included in the evaluation counts (these count minibatch evaluations).
+	 */
+	@Override
+	public DescentResult<M> minimize(ScalarFN<M> f, VectorFN<M> df, M initialGuess, DescentLog log){
+		// snapshot of the configuration
+		final Config config = config();
+		final SolverListener listener = this.listener;
+		final boolean instrumented = listener != SolverListener.NOOP;
+		final long startTime = instrumented ? System.nanoTime() : 0;
 		// get hyperparams
-		double a = hyperparams.getOrDefault(PARAM_STEP_SCALING, 1.0);
-		double beta1 = hyperparams.getOrDefault(PARAM_BETA1, 0.9);
-		double beta2 = hyperparams.getOrDefault(PARAM_BETA2, 0.999);
-		double terminationStepSize = hyperparams.getOrDefault(PARAM_TERMINATION_STEPSIZE, 1e-8);
-		int maxIter = hyperparams.getOrDefault(PARAM_MAX_ITERATIONS, 100);
+		double a = config.stepScaling;
+		double beta1 = config.beta1;
+		double beta2 = config.beta2;
+		double terminationStepSize = config.terminationStepSize;
+		int maxIter = config.maxIterations;
 		
+		// minibatches of a sum of terms, or legacy random number protocol
+		final ScalarFN<M> objective = f;
+		MinibatchScheduler<M> batches = null;
+		if(f instanceof MinibatchFN) {
+			batches = new MinibatchScheduler<>(mc, (MinibatchFN<M>)f, config.batchSize, rand);
+			batches.parallelism = parallelism;
+			batches.pool = pool;
+			f = batches;
+			df = batches.gradient();
+		}
+		// count evaluations only, objective changes between iterations
+		CachedFN<M> counted = CachedFN.of(mc, f, df, 0);
+		f = counted;
+		df = counted.gradient();
 		
 		M x = mc.copy(initialGuess);
 		int numSteps = 0;
 		//
 		double fx;
-		M dfx;
-		M step;
+		M dfx = mc.zeros(mc.numRows(x), mc.numCols(x));
+		M step = mc.zeros(mc.numRows(x), mc.numCols(x));
 		// adam things
-		M m = mc.scale(x, 0.0);
-		M v = mc.scale(x, 0.0);
+		M m = mc.zeros(mc.numRows(x), mc.numCols(x));
+		M v = mc.zeros(mc.numRows(x), mc.numCols(x));
+		double stepSize;
 		do {
-			int r = rand.nextInt(Integer.MAX_VALUE);
-			if(randRef != null) 
-				randRef.set(r);
-			fx = f.evaluate(x);
-			dfx = df.evaluate(x);
+			if(batches != null) {
+				batches.next();
+			} else {
+				int r = rand.nextInt(Integer.MAX_VALUE);
+				if(randRef != null) 
+					randRef.set(r);
+			}
+			fx = ScalarFN.evaluateWithGradient(mc, f, df, x, dfx);
 			
-			m = mc.add(mc.scale(m, beta1) , mc.scale(dfx, 1.0-beta1));
-			v = mc.add(mc.scale(v, beta2) , mc.scale(mc.elemmul(dfx,dfx), 1.0-beta2));
+			// m = beta1*m + (1-beta1)*dfx,  v = beta2*v + (1-beta2)*dfx.*dfx
+			mc.axpby_inp(1.0-beta1, dfx, beta1, m);
+			mc.elemmulAxpby_inp(1.0-beta2, dfx, dfx, beta2, v);
 			
 			double alpha = a * (Math.sqrt(1-Math.pow(beta2, numSteps+1)) / (1-Math.pow(beta1, numSteps+1)));
-			step = mc.elemwise_inp(v, AdamGradientDescent::divBySqrtSanitized);
-			step = mc.scale(mc.elemmul(m, step), -alpha);
+			// step = -alpha * m ./ sqrt(v)
+			mc.copyValues(v, step);
+			mc.elemwise_inp(step, AdamGradientDescent::divBySqrtSanitized);
+			mc.elemmulAxpby_inp(-alpha, m, step, 0.0, step);
 			
 			if(log != null) {
-				log.position(mc.toArray(x));
+				log.position(mc, x);
 				log.loss(fx);
-				log.direction(mc.toArray(dfx));
+				log.direction(mc, dfx);
 				log.stepSize(alpha);
 			}
 			
 			// update location
-			x = mc.add(x,step);
-			stepSizeOnTermination = mc.norm(step);
-		} while( ++numSteps < maxIter &&  stepSizeOnTermination > terminationStepSize );
+			mc.add_inp(x,step);
+			stepSize = mc.norm(step);
+		} while( ++numSteps < maxIter &&  stepSize > terminationStepSize && !DescentLog.isStopRequested(log) );
 
-		this.lossOnTermination = f.evaluate(x);
+		// loss of the full objective
+		fx = batches != null ? objective.evaluate(x) : f.evaluate(x);
 		if(log != null) {
-			log.position(mc.toArray(x));
-			log.loss(lossOnTermination);
+			log.position(mc, x);
+			log.loss(fx);
 		}
 		
-		return x;
+		DescentResult<M> result = new DescentResult<>(x, fx, stepSize, numSteps, 
+				stepSize <= terminationStepSize ? Termination.STEP_SIZE :
+				numSteps < maxIter ? Termination.STOPPED : Termination.MAX_ITERATIONS,
+				counted.numFunctionEvaluations, counted.numGradientEvaluations);
+		if(instrumented)
+			listener.descentFinished(result, System.nanoTime()-startTime);
+		return result;
 	}
 	
 	@Override
@@ -6,7 +6,10 @@ import java.util.Objects;
 
 import hageldave.optisled.generic.numerics.MatCalc;
 import hageldave.optisled.generic.problem.OptimizationProblem;
+import hageldave.optisled.generic.problem.ScalarFN;
 import hageldave.optisled.generic.problem.ScalarFN.ScalarFNWithGradient;
+import hageldave.optisled.generic.problem.ScalarFN.ScalarFNWithValueAndGradient;
+import hageldave.optisled.generic.problem.SparseVectorFN;
 import hageldave.optisled.generic.problem.VectorFN;
 import hageldave.optisled.history.DescentLog;
 
@@ -19,6 +22,44 @@ public class AugmentedLagrangian<M> {
 	public int maxNumIterations = 300;
 	public double muIncr = 1.01;
 	public double initialStepsize = 1.0;
+	/** 
+	 * outer iterations can only stop when the maximum constraint violation max(0,gi(x)) 
+	 * is below this tolerance 
+	 */
+	public double constraintTolerance = 1e-6;
+	/** 
+	 * outer iterations stop when the KKT residual, i.e. the maximum of the (relative) norm of 
+	 * the Lagrangian's gradient df(x) + sum_i lambda_i dgi(x) and the complementarity |lambda_i gi(x)|,
+	 * falls below this tolerance (for feasible x), 0 disables the test
+	 */
+	public double kktTolerance = 1e-6;
+	/** 
+	 * outer iterations stop when the relative change of x falls below this tolerance 
+	 * (together with the change of the objective, see {@link #fTolerance}, for feasible x), 0 disables the test.
+	 * Should not be smaller than the accuracy of the inner solves (the termination step size 1e-8 of 
+	 * the default gradient descent), changes below it are noise of the inner solver and the test never fires.
+	 */
+	public double xTolerance = 1e-8;
+	/** 
+	 * outer iterations stop when the relative change of the objective falls below this tolerance 
+	 * (together with the change of x, see {@link #xTolerance}, for feasible x), 0 disables the test
+	 */
+	public double fTolerance = 1e-8;
+	/** number of outer iterations performed when arg_min terminated */
+	public int numIterationsOnTermination;
+	/** instrumentation listener (also passed to the default inner gradient descent), {@link SolverListener#NOOP} (disabled) by default */
+	public SolverListener listener = SolverListener.NOOP;
+	/** 
+	 * solver of the augmented Lagrangian problems, null for gradient descent with {@link #initialStepsize}.
+	 * A specified solver is used as is, i.e. its listener is not set.
+	 */
+	public DescentAlgorithm<M> innerSolver = null;
+	/** 
+	 * whether each augmented Lagrangian problem is solved starting from the state of the previous solve
+	 * (step size of gradient descent, curvature history of {@link LBFGS}), see {@link WarmStartedSolver}.
+	 * Saves inner iterations and evaluations when consecutive problems are similar, enabled by default.
+	 */
+	public boolean warmStart = true;
 	
 	public final MatCalc<M> mc;
 	
@@ -32,11 +73,26 @@ public class AugmentedLagrangian<M> {
 	}
 	
 	public M arg_min(OptimizationProblem<M> p, M initialGuess, List<TrajectoryInfo> trace) {
+		final SolverListener listener = this.listener;
+		final boolean instrumented = listener != SolverListener.NOOP;
+		final long startTime = instrumented ? System.nanoTime() : 0;
 		double[] lambda = new double[p.numConstraints()];
 		double mu = 1;
 		M x = mc.copy(initialGuess);
+		M xPrev = mc.copy(x);
+		double fPrev = Double.NaN;
+		boolean converged;
 		int numIterations = 0;
+		DescentAlgorithm<M> solver = innerSolver;
+		if(solver == null) {
+			GradientDescent<M> gd = new GradientDescent<>(mc);
+			gd.hyperparams.set(GradientDescent.KEY_INIT_STEPSIZE, initialStepsize);
+			gd.listener = listener;
+			solver = gd;
+		}
+		WarmStartedSolver<M> inner = new WarmStartedSolver<>(mc, solver, warmStart);
 		do {
+			long iterationStart = instrumented ? System.nanoTime() : 0;
 			TrajectoryInfo info = new TrajectoryInfo();
 			if(Objects.nonNull(trace)){
 				info = new TrajectoryInfo();
@@ -50,10 +106,9 @@ public class AugmentedLagrangian<M> {
 			}
 			
 			ScalarFNWithGradient<M> f = augLagrangian(p, lambda, mu, mc);
-			GradientDescent<M> gd = new GradientDescent<>(mc);
-			gd.hyperparams.set(GradientDescent.PARAM_INIT_STEPSIZE, initialStepsize);
 			DescentLog descentLog = null; // TODO: conditionally create a descent log
-			x = gd.arg_min(f, f.gradient(), x, descentLog);
+			DescentResult<M> result = inner.minimize(f, f.gradient(), x, descentLog);
+			x = result.argmin;
 			
 			if(Objects.nonNull(trace)){	
 				info = new TrajectoryInfo();
@@ -68,17 +123,66 @@ public class AugmentedLagrangian<M> {
 			}
 			
 			
+			double violation = 0;
+			double complementarity = 0;
 			for(int i=0; i<p.numConstraints(); i++){
-				lambda[i] = Math.max(0, lambda[i] + p.g()[i].evaluate(x)*2*mu);
+				double gx = p.g()[i].evaluate(x);
+				lambda[i] = Math.max(0, lambda[i] + gx*2*mu);
+				violation = Math.max(violation, gx);
+				complementarity = Math.max(complementarity, Math.abs(lambda[i]*gx));
 			}
+			// convergence tests
+			double fx = p.f().evaluate(x);
+			converged = violation < constraintTolerance && (
+					(mc.dist(x, xPrev) < xTolerance*Math.max(1.0, mc.norm(x))
+					&& Math.abs(fx-fPrev) < fTolerance*Math.max(1.0, Math.abs(fx)))
+					|| (complementarity < kktTolerance && kktResidual(p, lambda, x) < kktTolerance));
+			mc.copyValues(x, xPrev);
+			fPrev = fx;
 			mu *= muIncr;
-		} while(++numIterations < maxNumIterations);
+			if(instrumented)
+				listener.outerIterationFinished(numIterations, result, System.nanoTime()-iterationStart);
+		} while(++numIterations < maxNumIterations && !converged);
+		this.numIterationsOnTermination = numIterations;
+		if(instrumented)
+			listener.constrainedSolveFinished(numIterations, System.nanoTime()-startTime);
 		return x;
 	}
 	
 	
-	public static <M> ScalarFNWithGradient<M> augLagrangian(OptimizationProblem<M> p, double[] lambda, double mu, MatCalc<M> mc){
-		return new ScalarFNWithGradient<M>() {
+	/**
+	 * @return norm of the gradient of the Lagrangian df(x) + sum_i lambda_i dgi(x), relative to the norm of df(x) (if greater than 1)
+	 */
+	double kktResidual(OptimizationProblem<M> p, double[] lambda, M x) {
+		M dfx = p.df().evaluate(x);
+		double scale = Math.max(1.0, mc.norm(dfx));
+		M residual = mc.copy(dfx);
+		for(int i=0; i<p.numConstraints(); i++){
+			if(lambda[i] != 0)
+				addConstraintGradient(mc, p.dg()[i], x, lambda[i], residual);
+		}
+		return mc.norm(residual)/scale;
+	}
+	
+	/** result += a * dg(x), without densifying a sparse constraint gradient */
+	static <M> void addConstraintGradient(MatCalc<M> mc, VectorFN<M> dg, M x, double a, M result) {
+		if(dg instanceof SparseVectorFN)
+			mc.axpySparse_inp(a, ((SparseVectorFN<M>)dg).evaluateSparse(x), result);
+		else
+			mc.axpy_inp(a, dg.evaluate(x), result);
+	}
+	
+	/**
+	 * Augmented Lagrangian f(x) + sum_i lambda_i gi(x) + [gi(x) &gt; 0] mu gi(x)^2 of the problem.
+	 * When evaluating value and gradient in a single pass, each constraint is evaluated once.
+	 * @param p problem
+	 * @param lambda Lagrange multipliers
+	 * @param mu penalty weight
+	 * @param mc matrix calculator
+	 * @return augmented Lagrangian
+	 */
+	public static <M> ScalarFNWithValueAndGradient<M> augLagrangian(OptimizationProblem<M> p, double[] lambda, double mu, MatCalc<M> mc){
+		return new ScalarFNWithValueAndGradient<M>() {
 			
 			@Override
 			public double evaluate(M x) {
@@ -92,19 +196,41 @@ public class AugmentedLagrangian<M> {
 				return result;
 			}
 			
+			@Override
+			public double evaluateWithGradient(M x, M gradOut) {
+				double result = ScalarFN.evaluateWithGradient(mc, p.f(), p.df(), x, gradOut);
+				M dgx = p.numConstraints() > 0 ? mc.zeros(mc.numRows(x), mc.numCols(x)) : null;
+				for(int i=0; i<p.numConstraints(); i++){
+					double gx;
+					if(p.dg()[i] instanceof SparseVectorFN) {
+						// accumulate sparse constraint gradient without densifying
+						gx = p.g()[i].evaluate(x);
+						mc.axpySparse_inp(penaltyGradientScale(i, gx), ((SparseVectorFN<M>)p.dg()[i]).evaluateSparse(x), gradOut);
+					} else {
+						gx = ScalarFN.evaluateWithGradient(mc, p.g()[i], p.dg()[i], x, dgx);
+						mc.axpy_inp(penaltyGradientScale(i, gx), dgx, gradOut);
+					}
+					// += lambda_i * g(x) + [g(x) > 0] mu * g(x)^2
+					result += lambda[i]*gx;
+					result += Math.max(0, gx)*gx*mu;
+				}
+				return result;
+			}
+			
+			double penaltyGradientScale(int i, double gx) {
+				// lambda_i * dg(x) + [g(x) > 0] * 2mu * g(x) * dg(x)
+				return gx > 0 ? lambda[i]+mu*2*gx : lambda[i];
+			}
+			
 			VectorFN<M> grad = new VectorFN<M>() {
 				
 				@Override
 				public M evaluate(M x) {
-					M result = p.df().evaluate(x);
+					// copy since the objective's gradient may hand out a shared matrix
+					M result = mc.copy(p.df().evaluate(x));
 					for(int i=0; i<p.numConstraints(); i++){
 						double gx = p.g()[i].evaluate(x);
-						M dgx = p.dg()[i].evaluate(x);
-						// += lambda_i * dg(x) + [g(x) > 0] * 2mu * dg(x)
-						result = mc.add(result, mc.scale(dgx,lambda[i]));
-						if(gx > 0){
-							result = mc.add(result, mc.scale(dgx,mu*2));
-						}
+						addConstraintGradient(mc, p.dg()[i], x, penaltyGradientScale(i, gx), result);
 					}
 					return result;
 				}
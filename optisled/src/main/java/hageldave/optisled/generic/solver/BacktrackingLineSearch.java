@@ -0,0 +1,144 @@
+package hageldave.optisled.generic.solver;
+
+import static hageldave.optisled.generic.solver.GradientDescent.*;
+
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.problem.ScalarFN.BatchScalarFN;
+import hageldave.optisled.generic.problem.VectorFN;
+import hageldave.optisled.history.DescentLog;
+
+/**
+ * Backtracking line search, decreasing the step size by a constant factor until
+ * the 1st Wolfe condition (sufficient decrease) is satisfied.
+ * Only function values are evaluated, the gradient at the accepted probe is not.
+ * <p>
+ * When the objective function is a {@link BatchScalarFN}, several step sizes are evaluated at once.
+ * <p>
+ * Reads {@link GradientDescent#PARAM_STEP_DECR}, {@link GradientDescent#PARAM_LINESEARCH_FACTOR},
+ * {@link GradientDescent#PARAM_MAX_LINESEARCH_ITER} and {@link GradientDescent#PARAM_LINESEARCH_BATCH_SIZE}
+ * from the solver's hyperparameters.
+ * @param <M> matrix type
+ */
+public class BacktrackingLineSearch<M> implements LineSearch<M> {
+
+	/** the matrix calculation object for the matrix type M */
+	public final MatCalc<M> mc;
+
+	double stepDecr;
+	double lineSearchFactor;
+	int maxLineSearchIter;
+	boolean batched;
+	M batchPoints;
+	double[] batchValues;
+	double probeValue;
+	int numProbes;
+
+	/**
+	 * @param mc matrix calculator to perform linear algebra calculations
+	 */
+	public BacktrackingLineSearch(MatCalc<M> mc) {
+		this.mc = mc;
+	}
+
+	@Override
+	public void init(Hyperparams hyperparams, ScalarFN<M> f, M x) {
+		stepDecr = hyperparams.get(KEY_STEP_DECR);
+		lineSearchFactor = hyperparams.get(KEY_LINESEARCH_FACTOR);
+		maxLineSearchIter = hyperparams.get(KEY_MAX_LINESEARCH_ITER);
+		int lineSearchBatchSize = hyperparams.get(KEY_LINESEARCH_BATCH_SIZE);
+		batched = f instanceof BatchScalarFN && lineSearchBatchSize > 1;
+		if(batched && (batchPoints == null || mc.numRows(batchPoints) != mc.numRows(x) || mc.numCols(batchPoints) != lineSearchBatchSize)) {
+			batchPoints = mc.zeros(mc.numRows(x), lineSearchBatchSize);
+			batchValues = new double[lineSearchBatchSize];
+		}
+	}
+
+	@Override
+	public double search(ScalarFN<M> f, VectorFN<M> df, M x, double fx, M d, double dfxd, double a, M probe, DescentLog log) {
+		if(batched) {
+			a = searchBatched((BatchScalarFN<M>)f, x, fx, d, dfxd, a, log);
+			mc.lincomb_inp(probe, 1.0, x, a, d);
+			return a;
+		}
+		int numLinsrchIter = 0;
+		numProbes = 1;
+		// while( f(x+a*d) > f(x) + df(x)'a*d*l ) 1st wolfe condition
+		while(
+				(probeValue = f.evaluate(mc.lincomb_inp(probe, 1.0, x, a, d))) > fx + a*dfxd*lineSearchFactor
+				&& numLinsrchIter++ < maxLineSearchIter
+		){
+			a *= stepDecr;
+			numProbes++;
+			if(log != null)
+				log.stepSize(a);
+		}
+		return a;
+	}
+
+	/**
+	 * Backtracking line search that evaluates several step sizes at once through
+	 * {@link BatchScalarFN#evaluateBatch(Object, double[])}.
+	 * The same sequence of step sizes {@code a, a*stepDecr, a*stepDecr^2, ...} is probed as in the
+	 * sequential line search, and the first satisfying the 1st Wolfe condition is accepted
+	 * (or the last one when the maximum number of iterations is reached).
+	 * @param f function to be minimized
+	 * @param x current location
+	 * @param fx function value at x
+	 * @param d descent direction
+	 * @param dfxd directional derivative at x along d
+	 * @param a initial step size
+	 * @param log (optional, can be null) log object
+	 * @return accepted step size
+	 */
+	protected double searchBatched(BatchScalarFN<M> f, M x, double fx, M d, double dfxd, double a, DescentLog log) {
+		final int dim = mc.numRows(x);
+		final int maxProbes = maxLineSearchIter+1;
+		numProbes = 0;
+		while(true) {
+			int n = Math.min(mc.numCols(batchPoints), maxProbes-numProbes);
+			M pts = n == mc.numCols(batchPoints) ? batchPoints : mc.zeros(dim, n);
+			// column j = x + a*stepDecr^j * d
+			for(int r=0; r<dim; r++) {
+				double xr = mc.get(x, r);
+				double dr = mc.get(d, r);
+				double aj = a;
+				for(int j=0; j<n; j++) {
+					mc.set_inp(pts, r, j, xr + aj*dr);
+					aj *= stepDecr;
+				}
+			}
+			f.evaluateBatch(pts, batchValues);
+			for(int j=0; j<n; j++) {
+				numProbes++;
+				probeValue = batchValues[j];
+				if(!(batchValues[j] > fx + a*dfxd*lineSearchFactor) || numProbes >= maxProbes)
+					return a;
+				a *= stepDecr;
+				if(log != null)
+					log.stepSize(a);
+			}
+		}
+	}
+
+	@Override
+	public double probeValue() {
+		return probeValue;
+	}
+
+	@Override
+	public M probeGradient() {
+		return null;
+	}
+
+	@Override
+	public int numProbes() {
+		return numProbes;
+	}
+
+	@Override
+	public LineSearch<M> copy() {
+		return new BacktrackingLineSearch<>(mc);
+	}
+
+}
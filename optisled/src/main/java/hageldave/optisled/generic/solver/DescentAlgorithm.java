@@ -27,6 +27,38 @@ public interface DescentAlgorithm<M> {
 		return this.arg_min(f,df,initialGuess,null);
 	}
 	
+	/**
+	 * finds argmin of a function by performing gradient descent, without modifying the state of this solver
+	 * (e.g. {@link #getLoss()} is not updated). A solver can thus be used by several threads concurrently 
+	 * as long as its configuration is not changed, i.e. its hyperparameters are {@link Hyperparams#frozen()}.
+	 * <p>
+	 * The default implementation is for solvers that only implement {@link #arg_min(ScalarFN, VectorFN, Object, DescentLog)}.
+	 * It delegates to arg_min and thus modifies the state of the solver and is not safe for concurrent use.
+	 * The result holds the loss of {@link #getLoss()}, its statistics are unknown 
+	 * (step size NaN, counts -1, termination {@link DescentResult.Termination#UNKNOWN}).
+	 * @param f function to be minimized
+	 * @param df gradient of the function
+	 * @param initialGuess initialization (guess of minimum location)
+	 * @param log (optional, can be null) log object for recording the optimization trajectory
+	 * @return result containing location of minimum, loss and statistics of the descent
+	 */
+	public default DescentResult<M> minimize(ScalarFN<M> f, VectorFN<M> df, M initialGuess, DescentLog log){
+		M argmin = this.arg_min(f,df,initialGuess,log);
+		return new DescentResult<>(argmin, getLoss(), Double.NaN, -1, DescentResult.Termination.UNKNOWN, -1, -1);
+	}
+	
+	/**
+	 * finds argmin of a function by performing gradient descent, without modifying the state of this solver
+	 * (see {@link #minimize(ScalarFN, VectorFN, Object, DescentLog)})
+	 * @param f function to be minimized
+	 * @param df gradient of the function
+	 * @param initialGuess initialization (guess of minimum location)
+	 * @return result containing location of minimum, loss and statistics of the descent
+	 */
+	public default DescentResult<M> minimize(ScalarFN<M> f, VectorFN<M> df, M initialGuess){
+		return this.minimize(f,df,initialGuess,null);
+	}
+	
 	/**
 	 * @return the hyperparameters used by this gradient descent implementation
 	 */
@@ -0,0 +1,62 @@
+package hageldave.optisled.generic.solver;
+
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.problem.VectorFN;
+import hageldave.optisled.history.DescentLog;
+
+/**
+ * Immutable result of a descent, as returned by {@link DescentAlgorithm#minimize(ScalarFN, VectorFN, Object, DescentLog)}.
+ * @param <M> matrix type
+ */
+public final class DescentResult<M> {
+
+	/**
+	 * Reason for the termination of a descent
+	 */
+	public static enum Termination {
+		/** step size fell below the termination threshold */
+		STEP_SIZE,
+		/** gradient norm fell below the termination threshold */
+		GRADIENT_NORM,
+		/** maximum number of iterations was reached */
+		MAX_ITERATIONS,
+		/** descent was stopped through {@link DescentLog#requestStop()} */
+		STOPPED,
+		/** solver does not report the reason, see {@link DescentAlgorithm#minimize(ScalarFN, VectorFN, Object, DescentLog)} */
+		UNKNOWN,
+	}
+
+	/** location of minimum (owned by this result, not referenced by the solver) */
+	public final M argmin;
+	/** loss (value of objective function) at argmin */
+	public final double loss;
+	/** size of the last step */
+	public final double stepSize;
+	/** number of descent steps taken */
+	public final int numIterations;
+	/** reason for termination */
+	public final Termination termination;
+	/** number of evaluations of the objective function (points of batch evaluations count individually) */
+	public final int numFunctionEvaluations;
+	/** number of evaluations of the gradient */
+	public final int numGradientEvaluations;
+
+	public DescentResult(M argmin, double loss, double stepSize, int numIterations, Termination termination,
+			int numFunctionEvaluations, int numGradientEvaluations)
+	{
+		this.argmin = argmin;
+		this.loss = loss;
+		this.stepSize = stepSize;
+		this.numIterations = numIterations;
+		this.termination = termination;
+		this.numFunctionEvaluations = numFunctionEvaluations;
+		this.numGradientEvaluations = numGradientEvaluations;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("DescentResult[loss=%g, iterations=%d, termination=%s, evaluations f=%d df=%d]",
+				loss, numIterations, termination, numFunctionEvaluations, numGradientEvaluations);
+	}
+
+}
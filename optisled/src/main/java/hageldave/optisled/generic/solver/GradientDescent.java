@@ -1,26 +1,40 @@
 package hageldave.optisled.generic.solver;
 
 import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.CachedFN;
 import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.problem.ScalarFN.BatchScalarFN;
 import hageldave.optisled.generic.problem.VectorFN;
+import hageldave.optisled.generic.solver.DescentResult.Termination;
+import hageldave.optisled.generic.solver.Hyperparams.DoubleKey;
+import hageldave.optisled.generic.solver.Hyperparams.IntKey;
 import hageldave.optisled.history.DescentLog;
 
 /**
  * Gradient descent implementation with line search (satisfying 1st Wolfe condition in each step).
+ * The line search strategy can be exchanged through {@link #lineSearch}.
  * Descent is run by calling {@link #arg_min(ScalarFN, VectorFN, Object, DescentLog)}.
+ * <p>
+ * The location, direction and line search probe are kept in a workspace that is allocated once
+ * per call and updated through the in-place operations of {@link MatCalc}, so that descent iterations
+ * do not allocate matrices (apart from what the objective and gradient functions allocate).
+ * Objective and gradient are wrapped in a {@link CachedFN} so that points are not evaluated twice
+ * (see {@link #PARAM_EVALUATION_CACHE_SIZE}).
  * @param <M> matrix type
  */
 public class GradientDescent<M> implements DescentAlgorithm<M> {
 	
 	public static class HyperparamsGD extends Hyperparams {
 		{
-			set(PARAM_STEP_DECR, 0.5);
-			set(PARAM_STEP_INCR, 1.2);
-			set(PARAM_INIT_STEPSIZE, 1.0);
-			set(PARAM_TERMINATION_STEPSIZE, 1e-8);
-			set(PARAM_LINESEARCH_FACTOR, 0.01);
-			set(PARAM_MAX_ITERATIONS, 100);
-			set(PARAM_MAX_LINESEARCH_ITER, 20);
+			set(KEY_STEP_DECR, 0.5);
+			set(KEY_STEP_INCR, 1.2);
+			set(KEY_INIT_STEPSIZE, 1.0);
+			set(KEY_TERMINATION_STEPSIZE, 1e-8);
+			set(KEY_LINESEARCH_FACTOR, 0.01);
+			set(KEY_MAX_ITERATIONS, 100);
+			set(KEY_MAX_LINESEARCH_ITER, 20);
+			set(KEY_LINESEARCH_BATCH_SIZE, 4);
+			set(KEY_EVALUATION_CACHE_SIZE, 4);
 		}
 	}
 	
@@ -59,6 +73,57 @@ public class GradientDescent<M> implements DescentAlgorithm<M> {
 	 * (see 1st wolfe condition), in [0.01,0.1] typically 
 	 */
 	public static final String PARAM_LINESEARCH_FACTOR = "LINESEARCH_FACTOR";
+	/**
+	 * number of step sizes that are evaluated at once during line search when the
+	 * objective function is a {@link BatchScalarFN}, 1 disables batched line search
+	 */
+	public static final String PARAM_LINESEARCH_BATCH_SIZE = "LINESEARCH_BATCH_SIZE";
+	/**
+	 * number of most recently evaluated points for which function values and gradients are remembered
+	 * (see {@link CachedFN}), 0 disables caching
+	 */
+	public static final String PARAM_EVALUATION_CACHE_SIZE = "EVALUATION_CACHE_SIZE";
+	
+	/** typed key of {@link #PARAM_INIT_STEPSIZE} */
+	public static final DoubleKey KEY_INIT_STEPSIZE = new DoubleKey(PARAM_INIT_STEPSIZE, 1.0, Double.MIN_VALUE, Double.POSITIVE_INFINITY);
+	/** typed key of {@link #PARAM_TERMINATION_STEPSIZE} */
+	public static final DoubleKey KEY_TERMINATION_STEPSIZE = new DoubleKey(PARAM_TERMINATION_STEPSIZE, 1e-8, 0.0, Double.POSITIVE_INFINITY);
+	/** typed key of {@link #PARAM_MAX_ITERATIONS} */
+	public static final IntKey KEY_MAX_ITERATIONS = new IntKey(PARAM_MAX_ITERATIONS, 100, 1, Integer.MAX_VALUE);
+	/** typed key of {@link #PARAM_MAX_LINESEARCH_ITER} */
+	public static final IntKey KEY_MAX_LINESEARCH_ITER = new IntKey(PARAM_MAX_LINESEARCH_ITER, 20, 0, Integer.MAX_VALUE);
+	/** typed key of {@link #PARAM_STEP_DECR} */
+	public static final DoubleKey KEY_STEP_DECR = new DoubleKey(PARAM_STEP_DECR, 0.5, Double.MIN_VALUE, Math.nextDown(1.0));
+	/** typed key of {@link #PARAM_STEP_INCR} */
+	public static final DoubleKey KEY_STEP_INCR = new DoubleKey(PARAM_STEP_INCR, 1.2, Double.MIN_VALUE, Double.POSITIVE_INFINITY);
+	/** typed key of {@link #PARAM_LINESEARCH_FACTOR} */
+	public static final DoubleKey KEY_LINESEARCH_FACTOR = new DoubleKey(PARAM_LINESEARCH_FACTOR, 0.01, Double.MIN_VALUE, Math.nextDown(1.0));
+	/** typed key of {@link #PARAM_LINESEARCH_BATCH_SIZE} */
+	public static final IntKey KEY_LINESEARCH_BATCH_SIZE = new IntKey(PARAM_LINESEARCH_BATCH_SIZE, 4, 1, Integer.MAX_VALUE);
+	/** typed key of {@link #PARAM_EVALUATION_CACHE_SIZE} */
+	public static final IntKey KEY_EVALUATION_CACHE_SIZE = new IntKey(PARAM_EVALUATION_CACHE_SIZE, 4, 0, Integer.MAX_VALUE);
+	
+	/**
+	 * Hyperparameters resolved into primitive fields, created once per frozen {@link Hyperparams} snapshot
+	 * (extended by subclasses with parameters of their own, see {@link #createConfig(Hyperparams)})
+	 */
+	static class Config {
+		final Hyperparams source;
+		final double initStepSize;
+		final double stepIncr;
+		final double terminationStepSize;
+		final int maxIterations;
+		final int cacheSize;
+		
+		Config(Hyperparams hyperparams) {
+			this.source = hyperparams;
+			this.initStepSize = hyperparams.get(KEY_INIT_STEPSIZE);
+			this.stepIncr = hyperparams.get(KEY_STEP_INCR);
+			this.terminationStepSize = hyperparams.get(KEY_TERMINATION_STEPSIZE);
+			this.maxIterations = hyperparams.get(KEY_MAX_ITERATIONS);
+			this.cacheSize = hyperparams.get(KEY_EVALUATION_CACHE_SIZE);
+		}
+	}
 	
 	// 
 
@@ -68,11 +133,20 @@ public class GradientDescent<M> implements DescentAlgorithm<M> {
 	/** the matrix calculation object for the matrix type M */
 	public final MatCalc<M> mc;
 	
+	/** the line search strategy determining the step size of each descent step, {@link BacktrackingLineSearch} by default */
+	public LineSearch<M> lineSearch;
+
+	/** instrumentation listener, {@link SolverListener#NOOP} (disabled) by default */
+	public SolverListener listener = SolverListener.NOOP;
+	
 	/** the step size of gd when argmin terminated */
 	public double stepSizeOnTermination;
 
 	/** the loss when arg_min terminates */
 	public double lossOnTermination;
+	
+	/** configuration resolved from the current hyperparameters */
+	volatile Config config;
 
 	/**
 	 * Creates a new GD instance for matrices of type M using
@@ -81,6 +155,7 @@ public class GradientDescent<M> implements DescentAlgorithm<M> {
 	 */
 	public GradientDescent(MatCalc<M> mc) {
 		this.mc = mc;
+		this.lineSearch = new BacktrackingLineSearch<>(mc);
 	}
 	
 	@Override
@@ -93,59 +168,125 @@ public class GradientDescent<M> implements DescentAlgorithm<M> {
 		this.hyperparams = hyperparams;
 	}
 
+	/**
+	 * @return configuration of the current hyperparameters, only resolved again when these have changed
+	 */
+	Config config() {
+		Hyperparams frozen = hyperparams.frozen();
+		Config c = this.config;
+		if(c == null || c.source != frozen)
+			this.config = c = createConfig(frozen);
+		return c;
+	}
+
+	/**
+	 * @param frozen hyperparameter snapshot
+	 * @return configuration resolved from the snapshot
+	 */
+	Config createConfig(Hyperparams frozen) {
+		return new Config(frozen);
+	}
+
 	@Override
 	public M arg_min(ScalarFN<M> f, VectorFN<M> df, M initialGuess, DescentLog log){
+		DescentResult<M> result = minimize(f, df, initialGuess, log);
+		this.stepSizeOnTermination = result.stepSize;
+		this.lossOnTermination = result.loss;
+		return result.argmin;
+	}
+
+	@Override
+	public DescentResult<M> minimize(ScalarFN<M> f, VectorFN<M> df, M initialGuess, DescentLog log){
+		return minimize(f, df, initialGuess, log, config().initStepSize);
+	}
+
+	/**
+	 * Same as {@link #minimize(ScalarFN, VectorFN, Object, DescentLog)} but starting with the specified step size
+	 * instead of {@link #PARAM_INIT_STEPSIZE}, e.g. the step size of a previous descent on a similar problem.
+	 * @param f function to be minimized
+	 * @param df gradient of the function
+	 * @param initialGuess initialization (guess of minimum location)
+	 * @param log (optional, can be null) log object for recording the optimization trajectory
+	 * @param initialStepSize step size of the first line search
+	 * @return result containing location of minimum, loss and statistics of the descent
+	 */
+	public DescentResult<M> minimize(ScalarFN<M> f, VectorFN<M> df, M initialGuess, DescentLog log, double initialStepSize){
+		// snapshots of the configuration, this solver's state is not modified
+		final Config config = config();
+		final LineSearch<M> lineSearch = this.lineSearch.copy();
+		final SolverListener listener = this.listener;
+		final boolean instrumented = listener != SolverListener.NOOP;
+		final long startTime = instrumented ? System.nanoTime() : 0;
 		// hyperparameters
-		double a = hyperparams.getOrDefault(PARAM_INIT_STEPSIZE, 1.0);
-		double stepDecr = hyperparams.getOrDefault(PARAM_STEP_DECR, 0.5);
-		double stepIncr = hyperparams.getOrDefault(PARAM_STEP_INCR, 1.2);
-		double terminationStepSize = hyperparams.getOrDefault(PARAM_TERMINATION_STEPSIZE, 1e-8);
-		double lineSearchFactor = hyperparams.getOrDefault(PARAM_LINESEARCH_FACTOR, 0.01);
-		int maxDescentSteps = hyperparams.getOrDefault(PARAM_MAX_ITERATIONS, 100);
-		int maxLineSearchIter = hyperparams.getOrDefault(PARAM_MAX_LINESEARCH_ITER, 20);
+		double a = initialStepSize;
+		double stepIncr = config.stepIncr;
+		double terminationStepSize = config.terminationStepSize;
+		int maxDescentSteps = config.maxIterations;
+		int cacheSize = config.cacheSize;
 		
+		// remember recent evaluations and count evaluations
+		CachedFN<M> cached = CachedFN.of(mc, f, df, cacheSize);
+		f = cached;
+		df = cached.gradient();
 		
+		// workspace, allocated once and updated in-place during descent
 		M x = mc.copy(initialGuess);
+		M d = mc.zeros(mc.numRows(x), mc.numCols(x));
+		M probe = mc.zeros(mc.numRows(x), mc.numCols(x));
+		M dfx = mc.zeros(mc.numRows(x), mc.numCols(x));
+		lineSearch.init(config.source, f, x);
 		int numSteps = 0;
 		//
-		double fx;
-		M dfx;
-		M d;
-		M step;
+		double fx = ScalarFN.evaluateWithGradient(mc, f, df, x, dfx);
+		boolean gradientKnown = true;
+		double stepNorm;
+		double stepSize;
 		do {
-			fx = f.evaluate(x);
-			dfx = df.evaluate(x);
-			d = mc.normalize_inp(mc.scale(dfx, -1.0));
+			// gradient may be known from line search
+			if(!gradientKnown)
+				mc.copyValues(df.evaluate(x), dfx);
+			// d = normalize(-dfx)
+			mc.copyValues(dfx, d);
+			mc.normalize_inp(mc.scale_inp(d, -1.0));
+			// directional derivative df(x)'d
+			double dfxd = mc.inner(dfx, d);
 			if(log != null) {
-				log.position(mc.toArray(x));
+				log.position(mc, x);
 				log.loss(fx);
-				log.direction(mc.toArray(d));
+				log.direction(mc, d);
 				log.stepSize(a);
 			}
 			// perform line search
-			int numLinsrchIter = 0;
-			// while( f(x+a*d) > f(x) + df(x)'a*d*l ) 1st wolfe condition
-			while( 
-					f.evaluate(mc.add(x, step=mc.scale(d,a))) > fx + mc.inner(dfx,step)*lineSearchFactor
-					&& numLinsrchIter++ < maxLineSearchIter
-			){
-				a *= stepDecr;
-				if(log != null)
-					log.stepSize(a);
-			}
-			// update location
-			x = mc.add(x,step);
-			stepSizeOnTermination = a;
+			long lineSearchStart = instrumented ? System.nanoTime() : 0;
+			a = lineSearch.search(f, df, x, fx, d, dfxd, a, probe, log);
+			if(instrumented)
+				listener.lineSearchFinished(lineSearch.numProbes(), a, System.nanoTime()-lineSearchStart);
+			// update location, probe already holds x+a*d
+			M prev = x;
+			x = probe;
+			probe = prev;
+			fx = lineSearch.probeValue();
+			M dfprobe = lineSearch.probeGradient();
+			gradientKnown = dfprobe != null;
+			if(gradientKnown)
+				mc.copyValues(dfprobe, dfx);
+			stepNorm = a*mc.norm(d);
+			stepSize = a;
 			a *= stepIncr;
-		} while( ++numSteps < maxDescentSteps && mc.norm(step) > terminationStepSize );
+		} while( ++numSteps < maxDescentSteps && stepNorm > terminationStepSize && !DescentLog.isStopRequested(log) );
 
-		this.lossOnTermination = f.evaluate(x);
 		if(log != null) {
-			log.position(mc.toArray(x));
-			log.loss(lossOnTermination);
+			log.position(mc, x);
+			log.loss(fx);
 		}
 		
-		return x;
+		DescentResult<M> result = new DescentResult<>(x, fx, stepSize, numSteps, 
+				stepNorm <= terminationStepSize ? Termination.STEP_SIZE :
+				numSteps < maxDescentSteps ? Termination.STOPPED : Termination.MAX_ITERATIONS,
+				cached.numFunctionEvaluations, cached.numGradientEvaluations);
+		if(instrumented)
+			listener.descentFinished(result, System.nanoTime()-startTime);
+		return result;
 	}
 	
 	@Override
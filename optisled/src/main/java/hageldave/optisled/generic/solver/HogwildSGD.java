@@ -0,0 +1,278 @@
+package hageldave.optisled.generic.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+import hageldave.optisled.history.DescentLog;
+
+/**
+ * Asynchronous lock-free stochastic gradient descent (Hogwild!) for sparse objectives
+ * that are a sum of terms {@code f(x) = sum_i f_i(x)}, where each term only depends on few coordinates of x.
+ * <p>
+ * {@link #parallelism} workers run concurrently on a {@link ForkJoinPool}, each repeatedly sampling a term, evaluating its sparse
+ * gradient and applying the update to the shared parameter array without any synchronization.
+ * Updates of different workers can overwrite each other, which is rare (and harmless for convergence) when
+ * the terms are sparse, while avoiding all contention. Each worker performs {@code numTerms/parallelism} updates
+ * per epoch, after which it decays its step size by {@link #stepDecay}.
+ * <p>
+ * The calling thread acts as convergence monitor: every {@link #monitorIntervalMillis} in which each of the workers
+ * completed another epoch, it evaluates the full objective on a snapshot of the parameters (optionally recording it in a
+ * {@link DescentLog}) and stops the workers when the loss changed by less than {@link #lossTolerance} (relative)
+ * since the previous check.
+ * <p>
+ * Workers are long-running, so each needs a thread of its own: by default a pool with {@link #parallelism} threads
+ * is created for each descent (and shut down afterwards). A {@link #pool} specified instead needs
+ * at least {@link #parallelism} threads (one more when the descent is started from one of its threads,
+ * which then runs the monitor), and should not be busy with other tasks.
+ * <p>
+ * Since updates race, results are not reproducible, even with a seeded {@link #rand}.
+ * The objective has to be safe for concurrent evaluation (reading a concurrently updated x).
+ * <pre>
+ * HogwildSGD sgd = new HogwildSGD();
+ * HogwildSGD.Result r = sgd.arg_min(f, new double[dim], null);
+ * </pre>
+ */
+public class HogwildSGD {
+
+	/**
+	 * Sparse objective, sum of terms that only depend on few coordinates each
+	 */
+	public static interface SparseTermFN {
+		/**
+		 * @return number of terms of the sum
+		 */
+		public int numTerms();
+
+		/**
+		 * @param i index of the term
+		 * @param x function argument (may be concurrently updated)
+		 * @param grad sparse gradient to add the non-zero partial derivatives of the term at x to,
+		 * null when only the value is needed
+		 * @return value of the term evaluated at x
+		 */
+		public double evaluate(int i, double[] x, SparseGradient grad);
+	}
+
+	/**
+	 * Sparse gradient of a term, list of (index, partial derivative) entries.
+	 * Owned by a worker and reused for every term.
+	 */
+	public static final class SparseGradient {
+		int[] indices = new int[8];
+		double[] values = new double[8];
+		int size = 0;
+
+		/**
+		 * Adds an entry, entries with the same index are summed up by the update.
+		 * @param index coordinate
+		 * @param value partial derivative w.r.t. the coordinate
+		 */
+		public void add(int index, double value) {
+			if(size == indices.length) {
+				indices = Arrays.copyOf(indices, size*2);
+				values = Arrays.copyOf(values, size*2);
+			}
+			indices[size] = index;
+			values[size] = value;
+			size++;
+		}
+
+		/**
+		 * @return number of entries
+		 */
+		public int size() {
+			return size;
+		}
+
+		/** removes all entries */
+		public void clear() {
+			size = 0;
+		}
+	}
+
+	/**
+	 * Result of an asynchronous descent
+	 */
+	public static class Result {
+		/** location of minimum */
+		public double[] argmin;
+		/** loss at argmin */
+		public double loss;
+		/** number of epochs completed by the slowest worker */
+		public int numEpochs;
+		/** total number of updates applied (by all workers) */
+		public long numUpdates;
+		/** whether the monitor detected convergence, otherwise the workers completed {@link HogwildSGD#maxEpochs} */
+		public boolean converged;
+	}
+
+	/** step size of the first epoch */
+	public double stepSize = 0.01;
+	/** factor by which the step size is decreased after each epoch, in ]0,1] */
+	public double stepDecay = 0.9;
+	/** maximum number of epochs per worker */
+	public int maxEpochs = 20;
+	/** number of workers */
+	public int parallelism = Runtime.getRuntime().availableProcessors();
+	/** pool used for running the workers, a pool of {@link #parallelism} threads is created per descent when null */
+	public ForkJoinPool pool = null;
+	/** interval in milliseconds in which the monitor evaluates the loss */
+	public long monitorIntervalMillis = 10;
+	/** workers are stopped when the relative change of the loss between two checks of the monitor is below this tolerance, 0 disables the test */
+	public double lossTolerance = 1e-6;
+	/** RNG, used for seeding the workers */
+	public Random rand = new Random();
+
+	/**
+	 * Runs the asynchronous descent.
+	 * @param f objective (evaluated concurrently)
+	 * @param initialGuess initialization (not modified)
+	 * @param log (optional, can be null) log object for recording the losses observed by the monitor
+	 * @return location of minimum and statistics of the descent
+	 * @throws IllegalArgumentException when parallelism is not positive or exceeds the threads available in the specified pool
+	 */
+	public Result arg_min(SparseTermFN f, double[] initialGuess, DescentLog log) {
+		if(parallelism < 1)
+			throw new IllegalArgumentException("parallelism has to be positive, but was " + parallelism);
+		final int numWorkers = parallelism;
+		final ForkJoinPool p = pool != null ? pool : new ForkJoinPool(numWorkers);
+		if(pool != null) {
+			// calling thread is occupied by the monitor when it belongs to the pool
+			int available = p.getParallelism() - (ForkJoinTask.getPool() == p ? 1 : 0);
+			if(numWorkers > available)
+				throw new IllegalArgumentException("parallelism " + numWorkers + " exceeds the " + available + " threads available in the pool, workers would not run concurrently");
+		}
+		try {
+			return descend(f, initialGuess, log, p, numWorkers);
+		} finally {
+			if(pool == null)
+				p.shutdown();
+		}
+	}
+
+	/** runs the workers on p and monitors them on the calling thread */
+	Result descend(SparseTermFN f, double[] initialGuess, DescentLog log, ForkJoinPool p, int numWorkers) {
+		final double[] x = initialGuess.clone();
+		final int updatesPerEpoch = Math.max(1, (f.numTerms() + numWorkers-1) / numWorkers);
+		final Worker[] workers = new Worker[numWorkers];
+		final CountDownLatch done = new CountDownLatch(numWorkers);
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(numWorkers);
+		for(int w=0; w<numWorkers; w++) {
+			Worker worker = workers[w] = new Worker(f, x, rand.nextLong(), updatesPerEpoch);
+			tasks.add(p.submit(()->{
+				try {
+					worker.run();
+				} finally {
+					done.countDown();
+				}
+			}));
+		}
+
+		// monitor convergence on calling thread
+		boolean converged = false;
+		double prevLoss = loss(f, x.clone(), log);
+		int prevEpochs = 0;
+		try {
+			while(!done.await(monitorIntervalMillis, TimeUnit.MILLISECONDS)) {
+				// only check when every worker finished another epoch since the last check,
+				// a single fast worker would otherwise trigger checks that barely see any change
+				int epochs = Integer.MAX_VALUE;
+				for(Worker worker : workers)
+					epochs = Math.min(epochs, worker.numEpochs);
+				if(epochs <= prevEpochs)
+					continue;
+				prevEpochs = epochs;
+				double loss = loss(f, x.clone(), log);
+				if(lossTolerance > 0 && Math.abs(prevLoss-loss) <= lossTolerance*Math.abs(prevLoss)) {
+					converged = true;
+					break;
+				}
+				prevLoss = loss;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			for(Worker worker : workers)
+				worker.stop = true;
+		}
+		for(ForkJoinTask<?> task : tasks)
+			task.join();
+
+		Result result = new Result();
+		result.argmin = x;
+		result.loss = loss(f, x, log);
+		result.converged = converged;
+		result.numEpochs = Integer.MAX_VALUE;
+		for(Worker worker : workers) {
+			result.numEpochs = Math.min(result.numEpochs, worker.numEpochs);
+			result.numUpdates += worker.numUpdates;
+		}
+		return result;
+	}
+
+	static double loss(SparseTermFN f, double[] x, DescentLog log) {
+		double loss = 0;
+		for(int i=0; i<f.numTerms(); i++)
+			loss += f.evaluate(i, x, null);
+		if(log != null) {
+			log.position(x);
+			log.loss(loss);
+		}
+		return loss;
+	}
+
+	/**
+	 * Sampling and updating loop of a single worker
+	 */
+	class Worker {
+		final SparseTermFN f;
+		final double[] x;
+		final Random rand;
+		final int updatesPerEpoch;
+		final SparseGradient grad = new SparseGradient();
+		volatile boolean stop = false;
+		/** written once per epoch, read by the monitor */
+		volatile int numEpochs = 0;
+		long numUpdates = 0;
+
+		Worker(SparseTermFN f, double[] x, long seed, int updatesPerEpoch) {
+			this.f = f;
+			this.x = x;
+			this.rand = new Random(seed);
+			this.updatesPerEpoch = updatesPerEpoch;
+		}
+
+		void run() {
+			final double[] x = this.x;
+			final SparseGradient grad = this.grad;
+			final int numTerms = f.numTerms();
+			final int maxEpochs = HogwildSGD.this.maxEpochs;
+			final double stepDecay = HogwildSGD.this.stepDecay;
+			double a = stepSize;
+			while(numEpochs < maxEpochs && !stop) {
+				for(int k=0; k<updatesPerEpoch; k++) {
+					// stop flag is checked periodically to not wait for long epochs
+					if((k & 0xff) == 0xff && stop) {
+						numUpdates += k;
+						return;
+					}
+					grad.clear();
+					f.evaluate(rand.nextInt(numTerms), x, grad);
+					// racy by design, no synchronization
+					for(int j=0; j<grad.size; j++)
+						x[grad.indices[j]] -= a*grad.values[j];
+				}
+				numUpdates += updatesPerEpoch;
+				numEpochs++;
+				a *= stepDecay;
+			}
+		}
+	}
+
+}
@@ -1,26 +1,436 @@
 package hageldave.optisled.generic.solver;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
+/**
+ * Named hyperparameters of a solver.
+ * <p>
+ * Numeric parameters of the solvers are declared as typed keys ({@link DoubleKey}, {@link IntKey}) with a default value
+ * and a valid range. Their values are stored in primitive arrays indexed by the key, so reading them through
+ * {@link #get(DoubleKey)} or {@link #get(IntKey)} involves neither string hashing nor unboxing.
+ * Values are validated when they are set, also when set by name through {@link #set(String, Object)}
+ * (e.g. an {@code int} parameter set to {@code 2.5} or a step size set to a negative value throws an
+ * {@link IllegalArgumentException}). Parameters without a declared key are stored as objects by name.
+ * Keys are declared when the class declaring them (e.g. the solver) is initialized. A parameter that was set by name
+ * before its key was declared is validated once the key is known, at the latest when it is read through its key
+ * or when the hyperparameters are {@link #frozen()} (which solvers do before they start).
+ * <p>
+ * A mutable instance must not be modified while a solver uses it. For sharing a configured solver
+ * between threads, use an immutable snapshot obtained from {@link #frozen()}, which can be published
+ * to other threads without synchronization.
+ */
 public class Hyperparams {
 	protected HashMap<String, Object> paramMap = new HashMap<>();
-	
+
+	/** values of typed parameters, indexed by {@link Key#slot} */
+	double[] values = new double[0];
+	/** whether a typed parameter is set, indexed by {@link Key#slot} */
+	boolean[] isSet = new boolean[0];
+	/** snapshot returned by {@link #frozen()}, invalidated when a parameter is set */
+	volatile Hyperparams frozenSnapshot;
+
 	@SuppressWarnings("unchecked")
 	public <T> T get(String paramName) {
-		return (T) this.paramMap.get(paramName);
+		Key key = Key.lookup(paramName);
+		if(key != null && has(key))
+			return (T) key.box(typedValue(key), null);
+		return (T) object(paramName);
 	}
-	
+
 	@SuppressWarnings("unchecked")
 	public <T> T getOrDefault(String paramName, T defaultVal) {
-		return has(paramName) ? (T) this.paramMap.get(paramName) : defaultVal;
+		Key key = Key.lookup(paramName);
+		if(key != null && has(key))
+			return (T) key.box(typedValue(key), defaultVal);
+		return has(paramName) ? (T) object(paramName) : defaultVal;
 	}
-	
+
+	/**
+	 * Sets a parameter by name. When a typed key with this name is declared, the value
+	 * is converted and validated like in {@link #set(DoubleKey, double)} or {@link #set(IntKey, int)}.
+	 * @param paramName name of the parameter
+	 * @param value value of the parameter
+	 * @throws IllegalArgumentException when the value is not valid for the declared key
+	 */
 	public <T> void set(String paramName, T value) {
-		this.paramMap.put(paramName, value);
+		Key key = Key.lookup(paramName);
+		if(key != null) {
+			store(key, key.convert(value));
+			this.paramMap.remove(paramName);
+		} else {
+			this.paramMap.put(paramName, value);
+			this.frozenSnapshot = null;
+		}
 	}
-	
+
 	public boolean has(String paramName) {
-		return this.paramMap.containsKey(paramName);
+		Key key = Key.lookup(paramName);
+		return (key != null && isSet(key)) || hasObject(paramName);
+	}
+
+	/**
+	 * @param key parameter key
+	 * @return value of the parameter, or the key's default value when not set
+	 */
+	public double get(DoubleKey key) {
+		if(isSet(key))
+			return value(key);
+		return hasObjects() ? pendingValue(key, key.defaultValue) : key.defaultValue;
+	}
+
+	/**
+	 * @param key parameter key
+	 * @return value of the parameter, or the key's default value when not set
+	 */
+	public int get(IntKey key) {
+		if(isSet(key))
+			return (int) value(key);
+		return hasObjects() ? (int) pendingValue(key, key.defaultValue) : key.defaultValue;
+	}
+
+	/**
+	 * @param key parameter key
+	 * @param value value of the parameter
+	 * @throws IllegalArgumentException when the value is outside of the key's valid range
+	 */
+	public void set(DoubleKey key, double value) {
+		store(key, key.validate(value));
+	}
+
+	/**
+	 * @param key parameter key
+	 * @param value value of the parameter
+	 * @throws IllegalArgumentException when the value is outside of the key's valid range
+	 */
+	public void set(IntKey key, int value) {
+		store(key, key.validate(value));
+	}
+
+	/**
+	 * @param key parameter key
+	 * @return whether the parameter is set
+	 */
+	public boolean has(Key key) {
+		return isSet(key) || hasObject(key.name);
+	}
+
+	/* state accessors, overridden by the immutable snapshot */
+
+	boolean isSet(Key key) {
+		return key.slot < isSet.length && isSet[key.slot];
+	}
+
+	/** value of a typed parameter that {@link #isSet(Key)} */
+	double value(Key key) {
+		return values[key.slot];
+	}
+
+	/** parameter stored by name */
+	Object object(String paramName) {
+		return paramMap.get(paramName);
+	}
+
+	boolean hasObject(String paramName) {
+		return paramMap.containsKey(paramName);
 	}
-	
+
+	boolean hasObjects() {
+		return !paramMap.isEmpty();
+	}
+
+	void store(Key key, double value) {
+		int s = key.slot;
+		if(s >= values.length) {
+			int n = Math.max(s+1, Key.numSlots());
+			values = Arrays.copyOf(values, n);
+			isSet = Arrays.copyOf(isSet, n);
+		}
+		values[s] = value;
+		isSet[s] = true;
+		this.frozenSnapshot = null;
+	}
+
+	/** value of a typed parameter that {@link #has(Key)}, a value set by name before the key was declared is converted */
+	double typedValue(Key key) {
+		return isSet(key) ? value(key) : key.convert(object(key.name));
+	}
+
+	/**
+	 * Value that was set by name before its key was declared.
+	 * It is validated and moved to the typed values, so that it is validated only once.
+	 * @throws IllegalArgumentException when the value is not valid for the key
+	 */
+	double pendingValue(Key key, double defaultValue) {
+		Object value = object(key.name);
+		if(value == null)
+			return defaultValue;
+		double v = key.convert(value);
+		store(key, v);
+		this.paramMap.remove(key.name);
+		return v;
+	}
+
+	/**
+	 * @return whether this instance is immutable
+	 */
+	public boolean isFrozen() {
+		return false;
+	}
+
+	/**
+	 * Creates an immutable snapshot of these hyperparameters, which is safe to be read
+	 * concurrently. Calling {@link #set(String, Object)} on it throws an {@link UnsupportedOperationException}.
+	 * The snapshot is reused until a parameter of this instance is set.
+	 * Parameters that were set by name before their keys were declared are validated in the snapshot,
+	 * this instance is not modified.
+	 * @return immutable copy, or this if already frozen
+	 * @throws IllegalArgumentException when a parameter that was set by name before its key was declared
+	 * is not valid for the key
+	 */
+	public Hyperparams frozen() {
+		Hyperparams snapshot = this.frozenSnapshot;
+		if(snapshot == null)
+			this.frozenSnapshot = snapshot = new FrozenHyperparams(this);
+		return snapshot;
+	}
+
+	/**
+	 * Immutable hyperparameters, see {@link Hyperparams#frozen()}.
+	 * The state is held in final fields (the inherited mutable fields stay empty),
+	 * so that an instance is safe to be read by any thread that obtains a reference to it.
+	 */
+	static final class FrozenHyperparams extends Hyperparams {
+		final HashMap<String, Object> frozenMap;
+		final double[] frozenValues;
+		final boolean[] frozenIsSet;
+
+		FrozenHyperparams(Hyperparams params) {
+			HashMap<String, Object> map = new HashMap<>(params.paramMap);
+			double[] values = params.values.clone();
+			boolean[] isSet = params.isSet.clone();
+			// move parameters that were set by name before their keys were declared to the typed values
+			for(Iterator<Map.Entry<String, Object>> it = map.entrySet().iterator(); it.hasNext();) {
+				Map.Entry<String, Object> entry = it.next();
+				Key key = Key.lookup(entry.getKey());
+				if(key == null)
+					continue;
+				if(key.slot >= values.length) {
+					int n = Math.max(key.slot+1, Key.numSlots());
+					values = Arrays.copyOf(values, n);
+					isSet = Arrays.copyOf(isSet, n);
+				}
+				values[key.slot] = key.convert(entry.getValue());
+				isSet[key.slot] = true;
+				it.remove();
+			}
+			this.frozenMap = map;
+			this.frozenValues = values;
+			this.frozenIsSet = isSet;
+		}
+
+		@Override
+		boolean isSet(Key key) {
+			return key.slot < frozenIsSet.length && frozenIsSet[key.slot];
+		}
+
+		@Override
+		double value(Key key) {
+			return frozenValues[key.slot];
+		}
+
+		@Override
+		Object object(String paramName) {
+			return frozenMap.get(paramName);
+		}
+
+		@Override
+		boolean hasObject(String paramName) {
+			return frozenMap.containsKey(paramName);
+		}
+
+		@Override
+		boolean hasObjects() {
+			return !frozenMap.isEmpty();
+		}
+
+		@Override
+		double pendingValue(Key key, double defaultValue) {
+			// key declared after freezing, validated on every read
+			Object value = object(key.name);
+			return value == null ? defaultValue : key.convert(value);
+		}
+
+		@Override
+		public <T> void set(String paramName, T value) {
+			throw new UnsupportedOperationException("hyperparameters are frozen, cannot set " + paramName);
+		}
+
+		@Override
+		void store(Key key, double value) {
+			throw new UnsupportedOperationException("hyperparameters are frozen, cannot set " + key.name);
+		}
+
+		@Override
+		public boolean isFrozen() {
+			return true;
+		}
+
+		@Override
+		public Hyperparams frozen() {
+			return this;
+		}
+	}
+
+	/**
+	 * Declaration of a typed numeric parameter with a valid range.
+	 * Keys of the same name (e.g. declared by different solvers with different defaults)
+	 * refer to the same parameter and have to agree in type and range.
+	 */
+	public static abstract class Key {
+
+		private static final HashMap<String, Key> registry = new HashMap<>();
+
+		/** name of the parameter, as used by {@link Hyperparams#set(String, Object)} */
+		public final String name;
+		/** smallest valid value (inclusive) */
+		public final double min;
+		/** largest valid value (inclusive) */
+		public final double max;
+		/** index into the value arrays of {@link Hyperparams} */
+		final int slot;
+
+		Key(String name, double min, double max) {
+			this.name = name;
+			this.min = min;
+			this.max = max;
+			this.slot = register(this);
+		}
+
+		private static synchronized int register(Key key) {
+			Key existing = registry.get(key.name);
+			if(existing == null) {
+				registry.put(key.name, key);
+				return registry.size()-1;
+			}
+			if(existing.getClass() != key.getClass() || existing.min != key.min || existing.max != key.max)
+				throw new IllegalArgumentException("parameter " + key.name + " is already declared as " + existing);
+			return existing.slot;
+		}
+
+		static synchronized Key lookup(String name) {
+			return registry.get(name);
+		}
+
+		static synchronized int numSlots() {
+			return registry.size();
+		}
+
+		/** converts a value that was set by name, and validates it */
+		abstract double convert(Object value);
+
+		/** boxes a value for the untyped getters, preferring the type of the specified default */
+		abstract Object box(double value, Object defaultVal);
+
+		double validate(double value) {
+			if(!(value >= min && value <= max))
+				throw new IllegalArgumentException(String.format("value %s for parameter %s not in [%s,%s]", value, name, min, max));
+			return value;
+		}
+
+		double toNumber(Object value) {
+			if(!(value instanceof Number))
+				throw new IllegalArgumentException("parameter " + name + " requires a number, but got " + value);
+			return ((Number) value).doubleValue();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s %s in [%s,%s]", getClass().getSimpleName(), name, min, max);
+		}
+	}
+
+	/**
+	 * Key of a floating point parameter
+	 */
+	public static final class DoubleKey extends Key {
+		/** value used when the parameter is not set */
+		public final double defaultValue;
+
+		/**
+		 * @param name name of the parameter
+		 * @param defaultValue value used when the parameter is not set
+		 * @param min smallest valid value (inclusive)
+		 * @param max largest valid value (inclusive)
+		 */
+		public DoubleKey(String name, double defaultValue, double min, double max) {
+			super(name, min, max);
+			this.defaultValue = validate(defaultValue);
+		}
+
+		/**
+		 * @param defaultValue value used when the parameter is not set
+		 * @return key of the same parameter with a different default value
+		 */
+		public DoubleKey withDefault(double defaultValue) {
+			return new DoubleKey(name, defaultValue, min, max);
+		}
+
+		@Override
+		double convert(Object value) {
+			return validate(toNumber(value));
+		}
+
+		@Override
+		Object box(double value, Object defaultVal) {
+			if(defaultVal instanceof Integer && value == (int) value)
+				return (int) value;
+			return value;
+		}
+	}
+
+	/**
+	 * Key of an integer parameter
+	 */
+	public static final class IntKey extends Key {
+		/** value used when the parameter is not set */
+		public final int defaultValue;
+
+		/**
+		 * @param name name of the parameter
+		 * @param defaultValue value used when the parameter is not set
+		 * @param min smallest valid value (inclusive)
+		 * @param max largest valid value (inclusive)
+		 */
+		public IntKey(String name, int defaultValue, int min, int max) {
+			super(name, min, max);
+			this.defaultValue = (int) validate(defaultValue);
+		}
+
+		/**
+		 * @param defaultValue value used when the parameter is not set
+		 * @return key of the same parameter with a different default value
+		 */
+		public IntKey withDefault(int defaultValue) {
+			return new IntKey(name, defaultValue, (int) min, (int) max);
+		}
+
+		@Override
+		double convert(Object value) {
+			double v = toNumber(value);
+			if(v != Math.rint(v))
+				throw new IllegalArgumentException("parameter " + name + " requires an integer, but got " + value);
+			return validate(v);
+		}
+
+		@Override
+		Object box(double value, Object defaultVal) {
+			if(defaultVal instanceof Double)
+				return value;
+			return (int) value;
+		}
+	}
+
 }
@@ -0,0 +1,387 @@
+package hageldave.optisled.generic.solver;
+
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.CachedFN;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.problem.VectorFN;
+import hageldave.optisled.generic.solver.DescentResult.Termination;
+import hageldave.optisled.generic.solver.Hyperparams.DoubleKey;
+import hageldave.optisled.generic.solver.Hyperparams.IntKey;
+import hageldave.optisled.history.DescentLog;
+
+/**
+ * Limited memory BFGS (L-BFGS) quasi-Newton descent with line search
+ * (satisfying the strong Wolfe conditions in each step by default, see {@link #lineSearch}).
+ * The inverse Hessian is approximated from the last {@code HISTORY_SIZE} position and gradient differences,
+ * which are kept in ring buffers that are allocated once per call.
+ * Compared to {@link GradientDescent} this typically needs far fewer iterations on ill conditioned problems.
+ * Descent is run by calling {@link #arg_min(ScalarFN, VectorFN, Object, DescentLog)}.
+ * @param <M> matrix type
+ */
+public class LBFGS<M> implements DescentAlgorithm<M> {
+
+	public static class HyperparamsLBFGS extends Hyperparams {
+		{
+			set(KEY_HISTORY_SIZE, 8);
+			set(KEY_STEP_DECR, 0.5);
+			set(KEY_TERMINATION_STEPSIZE, 1e-8);
+			set(KEY_TERMINATION_GRADIENT_NORM, 1e-10);
+			set(KEY_LINESEARCH_FACTOR, 1e-4);
+			set(KEY_LINESEARCH_CURVATURE_FACTOR, 0.9);
+			set(KEY_MAX_ITERATIONS, 100);
+			set(KEY_MAX_LINESEARCH_ITER, 20);
+			set(KEY_EVALUATION_CACHE_SIZE, 4);
+		}
+	}
+
+	/**
+	 * number of most recent position and gradient differences used to approximate the inverse Hessian
+	 */
+	public static final String PARAM_HISTORY_SIZE = "HISTORY_SIZE";
+	/**
+	 * when the algorithm's steps have decreased below this step size threshold
+	 * it terminates, thinking it has reached the minimum
+	 */
+	public static final String PARAM_TERMINATION_STEPSIZE = "TERMINATION_STEPSIZE";
+	/**
+	 * when the norm of the gradient has decreased below this threshold
+	 * the algorithm terminates, thinking it has reached the minimum
+	 */
+	public static final String PARAM_TERMINATION_GRADIENT_NORM = "TERMINATION_GRADIENT_NORM";
+	/**
+	 * maximum number of descent steps to take
+	 * (preventing infinite loops in ill conditioned problems)
+	 */
+	public static final String PARAM_MAX_ITERATIONS = "MAX_ITERATIONS";
+	/**
+	 * maximum number of line search iterations.
+	 * Determines max decrease of stepsize per iteration, = STEP_DECR ^ MAX_LINESEARCH_ITER
+	 * (preventing infinite loops in ill conditioned problems)
+	 */
+	public static final String PARAM_MAX_LINESEARCH_ITER = "MAX_LINESEARCH_ITER";
+	/**
+	 * factor by which the step size is decreased during line search,
+	 * in ]0,1[
+	 */
+	public static final String PARAM_STEP_DECR = "STEP_DECR";
+	/**
+	 * factor for determining 'sufficient decrease' during line search
+	 * (see 1st wolfe condition), typically 1e-4
+	 */
+	public static final String PARAM_LINESEARCH_FACTOR = "LINESEARCH_FACTOR";
+	/**
+	 * factor for the curvature condition (2nd Wolfe condition) of {@link StrongWolfeLineSearch},
+	 * in ]LINESEARCH_FACTOR,1[, typically 0.9
+	 */
+	public static final String PARAM_LINESEARCH_CURVATURE_FACTOR = StrongWolfeLineSearch.PARAM_LINESEARCH_CURVATURE_FACTOR;
+	/**
+	 * number of most recently evaluated points for which function values and gradients are remembered
+	 * (see {@link CachedFN}), 0 disables caching
+	 */
+	public static final String PARAM_EVALUATION_CACHE_SIZE = "EVALUATION_CACHE_SIZE";
+
+	/** typed key of {@link #PARAM_HISTORY_SIZE} */
+	public static final IntKey KEY_HISTORY_SIZE = new IntKey(PARAM_HISTORY_SIZE, 8, 1, Integer.MAX_VALUE);
+	/** typed key of {@link #PARAM_TERMINATION_STEPSIZE} */
+	public static final DoubleKey KEY_TERMINATION_STEPSIZE = GradientDescent.KEY_TERMINATION_STEPSIZE;
+	/** typed key of {@link #PARAM_TERMINATION_GRADIENT_NORM} */
+	public static final DoubleKey KEY_TERMINATION_GRADIENT_NORM = new DoubleKey(PARAM_TERMINATION_GRADIENT_NORM, 1e-10, 0.0, Double.POSITIVE_INFINITY);
+	/** typed key of {@link #PARAM_MAX_ITERATIONS} */
+	public static final IntKey KEY_MAX_ITERATIONS = GradientDescent.KEY_MAX_ITERATIONS;
+	/** typed key of {@link #PARAM_MAX_LINESEARCH_ITER} */
+	public static final IntKey KEY_MAX_LINESEARCH_ITER = GradientDescent.KEY_MAX_LINESEARCH_ITER;
+	/** typed key of {@link #PARAM_STEP_DECR} */
+	public static final DoubleKey KEY_STEP_DECR = GradientDescent.KEY_STEP_DECR;
+	/** typed key of {@link #PARAM_LINESEARCH_FACTOR} */
+	public static final DoubleKey KEY_LINESEARCH_FACTOR = StrongWolfeLineSearch.KEY_LINESEARCH_FACTOR;
+	/** typed key of {@link #PARAM_LINESEARCH_CURVATURE_FACTOR} */
+	public static final DoubleKey KEY_LINESEARCH_CURVATURE_FACTOR = StrongWolfeLineSearch.KEY_LINESEARCH_CURVATURE_FACTOR;
+	/** typed key of {@link #PARAM_EVALUATION_CACHE_SIZE} */
+	public static final IntKey KEY_EVALUATION_CACHE_SIZE = GradientDescent.KEY_EVALUATION_CACHE_SIZE;
+
+	/**
+	 * Hyperparameters resolved into primitive fields, created once per frozen {@link Hyperparams} snapshot
+	 */
+	static final class Config {
+		final Hyperparams source;
+		final int historySize;
+		final double terminationStepSize;
+		final double terminationGradNorm;
+		final int maxIterations;
+		final int cacheSize;
+
+		Config(Hyperparams hyperparams) {
+			this.source = hyperparams;
+			this.historySize = hyperparams.get(KEY_HISTORY_SIZE);
+			this.terminationStepSize = hyperparams.get(KEY_TERMINATION_STEPSIZE);
+			this.terminationGradNorm = hyperparams.get(KEY_TERMINATION_GRADIENT_NORM);
+			this.maxIterations = hyperparams.get(KEY_MAX_ITERATIONS);
+			this.cacheSize = hyperparams.get(KEY_EVALUATION_CACHE_SIZE);
+		}
+	}
+
+	//
+
+	/** the hyperparameters for L-BFGS */
+	public Hyperparams hyperparams = new HyperparamsLBFGS();
+
+	/** the matrix calculation object for the matrix type M */
+	public final MatCalc<M> mc;
+
+	/** the line search strategy determining the step size of each descent step, {@link StrongWolfeLineSearch} by default */
+	public LineSearch<M> lineSearch;
+
+	/** instrumentation listener, {@link SolverListener#NOOP} (disabled) by default */
+	public SolverListener listener = SolverListener.NOOP;
+
+	/** the step size of the last step when argmin terminated */
+	public double stepSizeOnTermination;
+
+	/** the loss when arg_min terminates */
+	public double lossOnTermination;
+
+	/** configuration resolved from the current hyperparameters */
+	volatile Config config;
+
+	/**
+	 * Creates a new L-BFGS instance for matrices of type M using
+	 * specified matrix calculator.
+	 * @param mc matrix calculator to perform linear algebra calculations
+	 */
+	public LBFGS(MatCalc<M> mc) {
+		this.mc = mc;
+		this.lineSearch = new StrongWolfeLineSearch<>(mc);
+	}
+
+	@Override
+	public Hyperparams getHyperparams() {
+		return this.hyperparams;
+	}
+
+	@Override
+	public void setHyperparams(Hyperparams hyperparams) {
+		this.hyperparams = hyperparams;
+	}
+
+	/**
+	 * @return configuration of the current hyperparameters, only resolved again when these have changed
+	 */
+	Config config() {
+		Hyperparams frozen = hyperparams.frozen();
+		Config c = this.config;
+		if(c == null || c.source != frozen)
+			this.config = c = new Config(frozen);
+		return c;
+	}
+
+	@Override
+	public M arg_min(ScalarFN<M> f, VectorFN<M> df, M initialGuess, DescentLog log) {
+		DescentResult<M> result = minimize(f, df, initialGuess, log);
+		this.stepSizeOnTermination = result.stepSize;
+		this.lossOnTermination = result.loss;
+		return result.argmin;
+	}
+
+	/**
+	 * Curvature history of L-BFGS, i.e. the ring buffers of the last position and gradient differences.
+	 * Passing the same history to consecutive calls of 
+	 * {@link LBFGS#minimize(ScalarFN, VectorFN, Object, DescentLog, History)} warm-starts each descent with the 
+	 * curvature information of the previous one, which is useful for sequences of similar problems 
+	 * (e.g. the inner problems of penalty methods).
+	 * The buffers are (re)allocated and cleared when the history size or dimensions change.
+	 * @param <M> matrix type
+	 */
+	public static final class History<M> {
+		M[] s;
+		M[] y;
+		double[] rho;
+		double[] alpha;
+		int count = 0;
+		int newest = -1;
+
+		void ensure(MatCalc<M> mc, int historySize, int rows, int cols) {
+			if(s != null && s.length == historySize && mc.numRows(s[0]) == rows && mc.numCols(s[0]) == cols)
+				return;
+			s = mc.matArray(historySize);
+			y = mc.matArray(historySize);
+			for(int i=0; i<historySize; i++) {
+				s[i] = mc.zeros(rows, cols);
+				y[i] = mc.zeros(rows, cols);
+			}
+			rho = new double[historySize];
+			alpha = new double[historySize];
+			clear();
+		}
+
+		/**
+		 * @return number of curvature pairs held
+		 */
+		public int size() {
+			return count;
+		}
+
+		/**
+		 * Forgets the curvature information, keeping the allocated buffers.
+		 */
+		public void clear() {
+			count = 0;
+			newest = -1;
+		}
+	}
+
+	@Override
+	public DescentResult<M> minimize(ScalarFN<M> f, VectorFN<M> df, M initialGuess, DescentLog log) {
+		return minimize(f, df, initialGuess, log, new History<>());
+	}
+
+	/**
+	 * Same as {@link #minimize(ScalarFN, VectorFN, Object, DescentLog)} but starting from the curvature 
+	 * information of the specified history, which is updated during descent.
+	 * @param f function to be minimized
+	 * @param df gradient of the function
+	 * @param initialGuess initialization (guess of minimum location)
+	 * @param log (optional, can be null) log object for recording the optimization trajectory
+	 * @param history curvature history, e.g. of a previous descent on a similar problem (modified)
+	 * @return result containing location of minimum, loss and statistics of the descent
+	 */
+	public DescentResult<M> minimize(ScalarFN<M> f, VectorFN<M> df, M initialGuess, DescentLog log, History<M> history) {
+		// snapshots of the configuration, this solver's state is not modified
+		final Config config = config();
+		final LineSearch<M> lineSearch = this.lineSearch.copy();
+		final SolverListener listener = this.listener;
+		final boolean instrumented = listener != SolverListener.NOOP;
+		final long startTime = instrumented ? System.nanoTime() : 0;
+		// hyperparameters
+		int historySize = config.historySize;
+		double terminationStepSize = config.terminationStepSize;
+		double terminationGradNorm = config.terminationGradNorm;
+		int maxDescentSteps = config.maxIterations;
+		int cacheSize = config.cacheSize;
+
+		// remember recent evaluations and count evaluations
+		CachedFN<M> cached = CachedFN.of(mc, f, df, cacheSize);
+		f = cached;
+		df = cached.gradient();
+
+		// workspace, allocated once and updated in-place during descent
+		final int rows = mc.numRows(initialGuess), cols = mc.numCols(initialGuess);
+		M x = mc.copy(initialGuess);
+		M g = mc.zeros(rows, cols);
+		M d = mc.zeros(rows, cols);
+		M probe = mc.zeros(rows, cols);
+		// candidate curvature pair of the current step
+		M sNew = mc.zeros(rows, cols);
+		M yNew = mc.zeros(rows, cols);
+		// ring buffers of position differences s_k = x_k+1 - x_k and gradient differences y_k = g_k+1 - g_k
+		history.ensure(mc, historySize, rows, cols);
+		final M[] s = history.s;
+		final M[] y = history.y;
+		final double[] rho = history.rho;
+		final double[] alpha = history.alpha;
+		int historyCount = history.count;
+		int newest = history.newest;
+		lineSearch.init(config.source, f, x);
+
+		double fx = ScalarFN.evaluateWithGradient(mc, f, df, x, g);
+		double a;
+		double stepNorm;
+		int numSteps = 0;
+		do {
+			// two-loop recursion, d = -H*g
+			mc.copyValues(g, d);
+			for(int k=0; k<historyCount; k++) {
+				int i = Math.floorMod(newest-k, historySize);
+				alpha[i] = rho[i]*mc.inner(s[i], d);
+				mc.axpy_inp(-alpha[i], y[i], d);
+			}
+			if(historyCount > 0) {
+				// initial Hessian approximation gamma*I, gamma = s'y/y'y
+				mc.scale_inp(d, 1.0/(rho[newest]*mc.norm2(y[newest])));
+			} else {
+				// no curvature information yet, normalized steepest descent
+				double gNorm = mc.norm(g);
+				mc.scale_inp(d, gNorm < 1e-7 ? 1.0 : 1.0/gNorm);
+			}
+			for(int k=historyCount-1; k>=0; k--) {
+				int i = Math.floorMod(newest-k, historySize);
+				double beta = rho[i]*mc.inner(y[i], d);
+				mc.axpy_inp(alpha[i]-beta, s[i], d);
+			}
+			mc.scale_inp(d, -1.0);
+			// directional derivative g'd
+			double dfxd = mc.inner(g, d);
+			if(!(dfxd < 0)) {
+				// not a descent direction, reset curvature history and use steepest descent
+				historyCount = 0;
+				mc.copyValues(g, d);
+				mc.normalize_inp(mc.scale_inp(d, -1.0));
+				dfxd = mc.inner(g, d);
+			}
+			if(log != null) {
+				log.position(mc, x);
+				log.loss(fx);
+				log.direction(mc, d);
+				log.stepSize(1.0);
+			}
+			// perform line search, reusing the gradient at the accepted probe if it was evaluated
+			long lineSearchStart = instrumented ? System.nanoTime() : 0;
+			a = lineSearch.search(f, df, x, fx, d, dfxd, 1.0, probe, log);
+			if(instrumented)
+				listener.lineSearchFinished(lineSearch.numProbes(), a, System.nanoTime()-lineSearchStart);
+			double fprobe = lineSearch.probeValue();
+			M dfprobe = lineSearch.probeGradient();
+			if(dfprobe == null)
+				dfprobe = df.evaluate(probe);
+			// update curvature history
+			mc.lincomb_inp(sNew, 1.0, probe, -1.0, x);
+			mc.lincomb_inp(yNew, 1.0, dfprobe, -1.0, g);
+			double sy = mc.inner(sNew, yNew);
+			if(sy > 1e-10*mc.norm2(yNew)) {
+				// only keep pairs satisfying the curvature condition (keeps H positive definite),
+				// the candidate is swapped into the ring buffer so a rejected one never overwrites the oldest pair
+				int next = (newest+1)%historySize;
+				M swap = s[next];
+				s[next] = sNew;
+				sNew = swap;
+				swap = y[next];
+				y[next] = yNew;
+				yNew = swap;
+				rho[next] = 1.0/sy;
+				newest = next;
+				historyCount = Math.min(historyCount+1, historySize);
+			}
+			// update location, probe already holds x+a*d
+			M prev = x;
+			x = probe;
+			probe = prev;
+			fx = fprobe;
+			mc.copyValues(dfprobe, g);
+			stepNorm = a*mc.norm(d);
+		} while( ++numSteps < maxDescentSteps && stepNorm > terminationStepSize && mc.norm(g) > terminationGradNorm
+				&& !DescentLog.isStopRequested(log) );
+		history.count = historyCount;
+		history.newest = newest;
+
+		if(log != null) {
+			log.position(mc, x);
+			log.loss(fx);
+		}
+
+		Termination termination = 
+				stepNorm <= terminationStepSize ? Termination.STEP_SIZE :
+				mc.norm(g) <= terminationGradNorm ? Termination.GRADIENT_NORM : 
+				numSteps < maxDescentSteps ? Termination.STOPPED :
+				Termination.MAX_ITERATIONS;
+		DescentResult<M> result = new DescentResult<>(x, fx, stepNorm, numSteps, termination, 
+				cached.numFunctionEvaluations, cached.numGradientEvaluations);
+		if(instrumented)
+			listener.descentFinished(result, System.nanoTime()-startTime);
+		return result;
+	}
+
+	@Override
+	public double getLoss() {
+		return this.lossOnTermination;
+	}
+
+}
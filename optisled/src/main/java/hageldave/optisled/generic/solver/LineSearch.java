@@ -0,0 +1,64 @@
+package hageldave.optisled.generic.solver;
+
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.problem.VectorFN;
+import hageldave.optisled.history.DescentLog;
+
+/**
+ * Strategy for determining the step size along a descent direction,
+ * used by {@link GradientDescent}, {@link StochasticGradientDescent} and {@link LBFGS}.
+ * <p>
+ * A line search instance holds a workspace and the results of its last search, so it must not
+ * be shared between solvers that run concurrently.
+ * @param <M> matrix type
+ */
+public interface LineSearch<M> {
+
+	/**
+	 * Prepares the line search for a descent run. Called once at the start of
+	 * {@link DescentAlgorithm#minimize(ScalarFN, VectorFN, Object, DescentLog)}.
+	 * @param hyperparams hyperparameters of the calling solver, line search parameters are read from these
+	 * @param f function to be minimized
+	 * @param x initial location (for determining workspace dimensions)
+	 */
+	public void init(Hyperparams hyperparams, ScalarFN<M> f, M x);
+
+	/**
+	 * Searches for a step size along the descent direction.
+	 * @param f function to be minimized
+	 * @param df gradient of the function
+	 * @param x current location
+	 * @param fx function value at x
+	 * @param d descent direction
+	 * @param dfxd directional derivative at x along d (negative)
+	 * @param a initial step size
+	 * @param probe workspace, holds x+a*d for the accepted step size a on return
+	 * @param log (optional, can be null) log object
+	 * @return accepted step size
+	 */
+	public double search(ScalarFN<M> f, VectorFN<M> df, M x, double fx, M d, double dfxd, double a, M probe, DescentLog log);
+
+	/**
+	 * @return function value at the probe of the accepted step size of the last search
+	 */
+	public double probeValue();
+
+	/**
+	 * @return gradient at the probe of the accepted step size of the last search,
+	 * or null if the search did not evaluate it. The returned object may be owned by the
+	 * gradient function and is only valid until the next evaluation.
+	 */
+	public M probeGradient();
+
+	/**
+	 * @return number of step sizes evaluated in the last search (for backtracking, the number of backtracks + 1)
+	 */
+	public int numProbes();
+
+	/**
+	 * @return new line search of the same kind and configuration with its own workspace,
+	 * used by solvers to run concurrent descents
+	 */
+	public LineSearch<M> copy();
+
+}
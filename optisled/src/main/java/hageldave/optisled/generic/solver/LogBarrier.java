@@ -5,8 +5,12 @@ import java.util.List;
 import java.util.Objects;
 
 import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.numerics.SparseVec;
 import hageldave.optisled.generic.problem.OptimizationProblem;
+import hageldave.optisled.generic.problem.ScalarFN;
 import hageldave.optisled.generic.problem.ScalarFN.ScalarFNWithGradient;
+import hageldave.optisled.generic.problem.ScalarFN.ScalarFNWithValueAndGradient;
+import hageldave.optisled.generic.problem.SparseVectorFN;
 import hageldave.optisled.generic.problem.VectorFN;
 
 /**
@@ -19,8 +23,48 @@ import hageldave.optisled.generic.problem.VectorFN;
 public class LogBarrier<M> {
 
 	public double initialMu = 8.0;
-	public double muDecr = 0.95;
+	/** 
+	 * factor by which mu decreases after each outer iteration. Smaller factors reach a small duality gap 
+	 * in fewer outer iterations but move the barrier minimizer further per iteration, i.e. make each inner 
+	 * problem harder to solve from the previous solution.
+	 */
+	public double muDecr = 0.5;
 	public int maxNumIterations = 300;
+	/** 
+	 * outer iterations stop when the duality gap bound mu*m (m constraints) of the current 
+	 * barrier problem falls below this tolerance, 0 disables the test.
+	 * The barrier minimizer keeps a distance of about mu to active constraints, so this tolerance 
+	 * also bounds the accuracy of the solution. With the default mu schedule the test stops after 
+	 * 24 iterations for a single constraint, tightening it by a factor of 10 costs about 3.3 iterations more.
+	 */
+	public double dualityGapTolerance = 1e-6;
+	/** 
+	 * outer iterations stop when the relative change of x falls below this tolerance 
+	 * (together with the change of the objective, see {@link #fTolerance}), 0 disables the test.
+	 * Should not be smaller than the accuracy of the inner solves (the termination step size 1e-8 of 
+	 * the default gradient descent), changes below it are noise of the inner solver and the test never fires.
+	 */
+	public double xTolerance = 1e-8;
+	/** 
+	 * outer iterations stop when the relative change of the objective falls below this tolerance 
+	 * (together with the change of x, see {@link #xTolerance}), 0 disables the test
+	 */
+	public double fTolerance = 1e-8;
+	/** number of outer iterations performed when arg_min terminated */
+	public int numIterationsOnTermination;
+	/** instrumentation listener (also passed to the default inner gradient descent), {@link SolverListener#NOOP} (disabled) by default */
+	public SolverListener listener = SolverListener.NOOP;
+	/** 
+	 * solver of the barrier problems, null for gradient descent with at most 100 iterations per barrier problem.
+	 * A specified solver is used as is, i.e. its listener is not set.
+	 */
+	public DescentAlgorithm<M> innerSolver = null;
+	/** 
+	 * whether each barrier problem is solved starting from the state of the previous solve
+	 * (step size of gradient descent, curvature history of {@link LBFGS}), see {@link WarmStartedSolver}.
+	 * Saves inner iterations and evaluations when consecutive problems are similar, enabled by default.
+	 */
+	public boolean warmStart = true;
 	
 	public final MatCalc<M> mc;
 	
@@ -33,6 +77,9 @@ public class LogBarrier<M> {
 	}
 	
 	public M arg_min(OptimizationProblem<M> p, M initialGuess, List<TrajectoryInfo> trace) {
+		final SolverListener listener = this.listener;
+		final boolean instrumented = listener != SolverListener.NOOP;
+		final long startTime = instrumented ? System.nanoTime() : 0;
 		double mu = initialMu;
 		M x = mc.copy(initialGuess);
 		if(Objects.nonNull(trace)){
@@ -47,12 +94,23 @@ public class LogBarrier<M> {
 			info.mu = mu;
 			trace.add(info);
 		}
+		M xPrev = mc.copy(x);
+		double fPrev = Double.NaN;
+		boolean converged;
 		int numIterations = 0;
+		DescentAlgorithm<M> solver = innerSolver;
+		if(solver == null) {
+			GradientDescent<M> gd = new GradientDescent<>(mc);
+			gd.hyperparams.set(GradientDescent.KEY_MAX_ITERATIONS, 100);
+			gd.listener = listener;
+			solver = gd;
+		}
+		WarmStartedSolver<M> inner = new WarmStartedSolver<>(mc, solver, warmStart);
 		do {
+			long iterationStart = instrumented ? System.nanoTime() : 0;
 			ScalarFNWithGradient<M> f = logBarrFN(p, mu, mc);
-			GradientDescent<M> gd = new GradientDescent<>(mc);
-			gd.hyperparams.set(GradientDescent.PARAM_MAX_ITERATIONS, 100);
-			x = gd.arg_min(f, f.gradient(), x, null);
+			DescentResult<M> result = inner.minimize(f, f.gradient(), x, null);
+			x = result.argmin;
 			if(Objects.nonNull(trace)){
 				TrajectoryInfo info = new TrajectoryInfo();
 				info.x = mc.toArray(x);
@@ -65,13 +123,34 @@ public class LogBarrier<M> {
 				info.mu = mu;
 				trace.add(info);
 			}
+			// convergence tests
+			double fx = p.f().evaluate(x);
+			converged = mu*p.numConstraints() < dualityGapTolerance
+					|| (mc.dist(x, xPrev) < xTolerance*Math.max(1.0, mc.norm(x))
+					&& Math.abs(fx-fPrev) < fTolerance*Math.max(1.0, Math.abs(fx)));
+			mc.copyValues(x, xPrev);
+			fPrev = fx;
 			mu *= muDecr;
-		} while(++numIterations < maxNumIterations);
+			if(instrumented)
+				listener.outerIterationFinished(numIterations, result, System.nanoTime()-iterationStart);
+		} while(++numIterations < maxNumIterations && !converged);
+		this.numIterationsOnTermination = numIterations;
+		if(instrumented)
+			listener.constrainedSolveFinished(numIterations, System.nanoTime()-startTime);
 		return x;
 	}
 	
-	public static <M> ScalarFNWithGradient<M> logBarrFN(OptimizationProblem<M> p, double mu, MatCalc<M> mc){
-		return new ScalarFNWithGradient<M>() {
+	/**
+	 * Log barrier function f(x) - mu * sum_i log(-gi(x)) of the problem, with the (normalized)
+	 * objective gradient and the barrier gradients.
+	 * When evaluating value and gradient in a single pass, each constraint is evaluated once.
+	 * @param p problem
+	 * @param mu barrier weight
+	 * @param mc matrix calculator
+	 * @return log barrier function
+	 */
+	public static <M> ScalarFNWithValueAndGradient<M> logBarrFN(OptimizationProblem<M> p, double mu, MatCalc<M> mc){
+		return new ScalarFNWithValueAndGradient<M>() {
 			
 			@Override
 			public double evaluate(M x) {
@@ -83,20 +162,56 @@ public class LogBarrier<M> {
 				return result;
 			}
 			
+			@Override
+			public double evaluateWithGradient(M x, M gradOut) {
+				double result = ScalarFN.evaluateWithGradient(mc, p.f(), p.df(), x, gradOut);
+				mc.normalize_inp(gradOut);
+				M dgx = p.numConstraints() > 0 ? mc.zeros(mc.numRows(x), mc.numCols(x)) : null;
+				for(int i=0; i<p.numConstraints(); i++){
+					double gx;
+					if(p.dg()[i] instanceof SparseVectorFN) {
+						// accumulate sparse constraint gradient without densifying
+						gx = p.g()[i].evaluate(x);
+						addBarrierGradient(gx, ((SparseVectorFN<M>)p.dg()[i]).evaluateSparse(x), gradOut);
+					} else {
+						gx = ScalarFN.evaluateWithGradient(mc, p.g()[i], p.dg()[i], x, dgx);
+						addBarrierGradient(gx, dgx, gradOut);
+					}
+					result -= mu*Math.log( Math.max(0, -gx) );
+				}
+				return result;
+			}
+			
+			void addBarrierGradient(double gx, M dgx, M result) {
+				mc.axpy_inp(barrierGradientScale(gx, mc.norm(dgx)), dgx, result);
+			}
+			
+			void addBarrierGradient(double gx, SparseVec dgx, M result) {
+				mc.axpySparse_inp(barrierGradientScale(gx, dgx.norm()), dgx, result);
+			}
+			
+			double barrierGradientScale(double gx, double norm) {
+				// normalization of dgx is folded into the scaling (same threshold as normalize)
+				double divByNorm = norm < 1e-7 ? 1.0 : 1.0/norm;
+				if(gx < 0){
+					// result -= (mu/gx) * dgx
+					return -(mu/gx)*divByNorm;
+				} else {
+					// handling of gradient for nondefined negative logarithms in infeasible regions
+					return (1+gx)*divByNorm;
+				}
+			}
+			
 			VectorFN<M> grad = new VectorFN<M>() {
 				@Override
 				public M evaluate(M x) {
 					M result = mc.normalize(p.df().evaluate(x));
 					for(int i=0; i<p.numConstraints(); i++){
 						double gx = p.g()[i].evaluate(x);
-						M dgx = mc.normalize(p.dg()[i].evaluate(x));
-						if(gx < 0){
-							// result -= (mu/gx) * dgx
-							result = mc.sub(result, mc.scale(dgx, mu/gx));
-						} else {
-							// handling of gradient for nondefined negative logarithms in infeasible regions
-							result = mc.add(result,mc.scale(dgx,1+gx));
-						}
+						if(p.dg()[i] instanceof SparseVectorFN)
+							addBarrierGradient(gx, ((SparseVectorFN<M>)p.dg()[i]).evaluateSparse(x), result);
+						else
+							addBarrierGradient(gx, p.dg()[i].evaluate(x), result);
 					}
 					return result;
 				}
@@ -0,0 +1,211 @@
+package hageldave.optisled.generic.solver;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.MinibatchFN;
+import hageldave.optisled.generic.problem.ScalarFN.ScalarFNWithValueAndGradient;
+import hageldave.optisled.generic.problem.VectorFN;
+
+/**
+ * Samples minibatches of the terms of a {@link MinibatchFN} in shuffled epochs:
+ * the term indices are shuffled at the beginning of each epoch and then consumed in chunks of the batch size,
+ * so that every term is visited exactly once per epoch (the last batch of an epoch may be smaller).
+ * <p>
+ * The scheduler is itself the objective restricted to the current minibatch, scaled by
+ * {@code numTerms/batchSize} so that it is an unbiased estimate of the full objective.
+ * It stays fixed until {@link #next()} is called, so a line search within an iteration
+ * compares values of the same minibatch.
+ * <p>
+ * When {@link #parallelism} is greater than 1, a minibatch is split into that many chunks of terms
+ * that are evaluated concurrently on a {@link ForkJoinPool}, each chunk accumulating its partial gradient
+ * in its own buffer (allocated once). The partial results are summed in a fixed binary tree over the chunks,
+ * so the result only depends on the parallelism, not on the scheduling of the threads, and a descent with
+ * a seeded {@link Random} is reproducible. The objective then needs to be safe for concurrent evaluation.
+ * <p>
+ * Not thread-safe, one scheduler per descent.
+ * @param <M> matrix type
+ */
+public class MinibatchScheduler<M> implements ScalarFNWithValueAndGradient<M> {
+
+	final MatCalc<M> mc;
+	final MinibatchFN<M> f;
+	final Random rand;
+	final int batchSize;
+	final int[] order;
+	final VectorFN<M> gradient = this::evaluateGradient;
+	
+	/** number of concurrently evaluated chunks of a minibatch, 1 for sequential evaluation */
+	public int parallelism = 1;
+	/** pool used for parallel evaluation, {@link ForkJoinPool#commonPool()} when null */
+	public ForkJoinPool pool = null;
+	/** per chunk partial values and gradients of parallel evaluation */
+	double[] partialValues;
+	M[] partialGradients;
+
+	int from = 0;
+	int to = 0;
+	double scale = 1.0;
+	int numEpochs = 0;
+
+	/**
+	 * @param mc matrix calculator
+	 * @param f objective
+	 * @param batchSize number of terms per minibatch (all terms when larger than their number)
+	 * @param rand random number generator used for shuffling
+	 */
+	public MinibatchScheduler(MatCalc<M> mc, MinibatchFN<M> f, int batchSize, Random rand) {
+		if(batchSize < 1)
+			throw new IllegalArgumentException("batch size has to be positive, but was " + batchSize);
+		this.mc = mc;
+		this.f = f;
+		this.rand = rand;
+		this.order = new int[f.numTerms()];
+		this.batchSize = Math.min(batchSize, order.length);
+		for(int i=0; i<order.length; i++)
+			order[i] = i;
+		// all terms until the first call of next()
+		this.to = order.length;
+	}
+
+	/**
+	 * Advances to the next minibatch, starting a new (reshuffled) epoch when all terms of the current one have been visited.
+	 */
+	public void next() {
+		if(to >= order.length) {
+			shuffle();
+			from = 0;
+			numEpochs++;
+		} else {
+			from = to;
+		}
+		to = Math.min(from + batchSize, order.length);
+		scale = to > from ? order.length / (double)(to - from) : 1.0;
+	}
+
+	/** Fisher-Yates shuffle of the term indices */
+	void shuffle() {
+		for(int i=order.length-1; i>0; i--) {
+			int j = rand.nextInt(i+1);
+			int tmp = order[i];
+			order[i] = order[j];
+			order[j] = tmp;
+		}
+	}
+
+	/**
+	 * @return number of epochs started so far
+	 */
+	public int numEpochs() {
+		return numEpochs;
+	}
+
+	/**
+	 * @return term indices of the current epoch, the current minibatch is {@code [from(), to())}
+	 */
+	public int[] indices() {
+		return order;
+	}
+
+	/**
+	 * @return position of the first term of the current minibatch in {@link #indices()}
+	 */
+	public int from() {
+		return from;
+	}
+
+	/**
+	 * @return position after the last term of the current minibatch in {@link #indices()}
+	 */
+	public int to() {
+		return to;
+	}
+
+	@Override
+	public double evaluate(M x) {
+		return scale * evaluateTerms(x, null);
+	}
+
+	@Override
+	public double evaluateWithGradient(M x, M gradOut) {
+		double fx = evaluateTerms(x, gradOut);
+		mc.scale_inp(gradOut, scale);
+		return scale * fx;
+	}
+
+	double evaluateTerms(M x, M gradOut) {
+		int numChunks = Math.min(parallelism, to-from);
+		if(numChunks < 2)
+			return f.evaluateTerms(x, order, from, to, gradOut);
+		if(partialValues == null || partialValues.length < numChunks) {
+			partialValues = new double[numChunks];
+			partialGradients = mc.matArray(numChunks);
+		}
+		if(gradOut != null) {
+			for(int c=0; c<numChunks; c++) {
+				M g = partialGradients[c];
+				if(g == null || mc.numRows(g) != mc.numRows(x) || mc.numCols(g) != mc.numCols(x))
+					partialGradients[c] = mc.zeros(mc.numRows(x), mc.numCols(x));
+			}
+		}
+		ForkJoinPool p = pool != null ? pool : ForkJoinPool.commonPool();
+		p.invoke(new ChunkTask(x, gradOut != null, numChunks, 0, numChunks));
+		if(gradOut != null)
+			mc.copyValues(partialGradients[0], gradOut);
+		return partialValues[0];
+	}
+
+	/**
+	 * Task evaluating a range of chunks of the current minibatch.
+	 * Splits until a single chunk is left, which is evaluated into its own buffers.
+	 * The result of the range ends up in the buffers of its first chunk, ranges are split and
+	 * summed in the same way for every evaluation (fixed reduction tree).
+	 */
+	class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final M x;
+		final boolean withGradient;
+		final int numChunks, chunkStart, chunkEnd;
+
+		ChunkTask(M x, boolean withGradient, int numChunks, int chunkStart, int chunkEnd) {
+			this.x = x;
+			this.withGradient = withGradient;
+			this.numChunks = numChunks;
+			this.chunkStart = chunkStart;
+			this.chunkEnd = chunkEnd;
+		}
+
+		@Override
+		protected void compute() {
+			if(chunkEnd-chunkStart > 1) {
+				int mid = (chunkStart+chunkEnd)/2;
+				invokeAll(
+						new ChunkTask(x, withGradient, numChunks, chunkStart, mid),
+						new ChunkTask(x, withGradient, numChunks, mid, chunkEnd));
+				partialValues[chunkStart] += partialValues[mid];
+				if(withGradient)
+					mc.add_inp(partialGradients[chunkStart], partialGradients[mid]);
+				return;
+			}
+			final int n = to-from;
+			final int start = from + (int)((long)chunkStart*n/numChunks);
+			final int end = from + (int)((long)chunkEnd*n/numChunks);
+			partialValues[chunkStart] = f.evaluateTerms(x, order, start, end, withGradient ? partialGradients[chunkStart] : null);
+		}
+	}
+
+	M evaluateGradient(M x) {
+		M grad = mc.zeros(mc.numRows(x), mc.numCols(x));
+		evaluateWithGradient(x, grad);
+		return grad;
+	}
+
+	@Override
+	public VectorFN<M> gradient() {
+		return gradient;
+	}
+
+}
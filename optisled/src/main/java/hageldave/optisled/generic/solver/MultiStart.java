@@ -0,0 +1,222 @@
+package hageldave.optisled.generic.solver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.problem.VectorFN;
+import hageldave.optisled.history.DescentLog;
+
+/**
+ * Multi-start driver for non-convex problems, running independent descents from several
+ * initial guesses concurrently on a {@link ForkJoinPool} and returning the best result.
+ * <p>
+ * Each start gets its own solver instance from the {@link #solverFactory}, since solvers keep
+ * state of their last run (e.g. {@link DescentAlgorithm#getLoss()}). The objective and gradient
+ * are shared between the starts and have to be safe for concurrent evaluation.
+ * <p>
+ * Runs that are clearly dominated are cancelled early: after {@link #cancellationGraceIterations}
+ * iterations, a run whose current loss exceeds the best loss seen so far (in any other run) by more than
+ * {@link #cancellationMargin} (relative to the magnitude of the best loss, at least 1) is stopped
+ * through {@link DescentLog#requestStop()}. The runs observe their losses through a non-recording log,
+ * so the solvers do not copy positions for it.
+ * The run that reported the best loss is never cancelled, so there is always a completed run to return.
+ * Which runs get cancelled depends on timing, the results of completed runs do not.
+ * <pre>
+ * MultiStart&lt;M&gt; ms = new MultiStart&lt;&gt;(mc, ()-&gt;new GradientDescent&lt;&gt;(mc));
+ * MultiStart.Result&lt;M&gt; r = ms.arg_min(f, df, MultiStart.randomStarts(mc, 16, dim, -1, 1, seed));
+ * </pre>
+ * @param <M> matrix type
+ */
+public class MultiStart<M> {
+
+	/** the matrix calculation object for the matrix type M */
+	public final MatCalc<M> mc;
+	/** creates a new solver instance for each start */
+	public final Supplier<? extends DescentAlgorithm<M>> solverFactory;
+	/** pool used for running the starts, {@link ForkJoinPool#commonPool()} when null */
+	public ForkJoinPool pool = null;
+	/** relative margin by which a run's loss has to exceed the best loss to be cancelled, infinity disables cancellation */
+	public double cancellationMargin = 1.0;
+	/** number of iterations a run is not cancelled at the beginning */
+	public int cancellationGraceIterations = 20;
+
+	/**
+	 * Immutable result of a single start
+	 */
+	public static final class Run<M> {
+		/** index of the start (in the list of initial guesses) */
+		public final int start;
+		/** initialization of this run */
+		public final M initialGuess;
+		/** location of minimum, or location reached when cancelled */
+		public final M argmin;
+		/** loss at argmin */
+		public final double loss;
+		/** number of descent steps taken, see {@link DescentResult#numIterations} */
+		public final int numIterations;
+		/** whether the run was cancelled because it was dominated */
+		public final boolean cancelled;
+
+		public Run(int start, M initialGuess, M argmin, double loss, int numIterations, boolean cancelled) {
+			this.start = start;
+			this.initialGuess = initialGuess;
+			this.argmin = argmin;
+			this.loss = loss;
+			this.numIterations = numIterations;
+			this.cancelled = cancelled;
+		}
+	}
+
+	/**
+	 * Immutable result of the multi-start optimization
+	 */
+	public static final class Result<M> {
+		/** best location of minimum of all completed (not cancelled) runs */
+		public final M argmin;
+		/** loss at argmin */
+		public final double loss;
+		/** index of the start that yielded argmin, there is at least one completed run */
+		public final int bestStart;
+		/** results of all starts, in order of the initial guesses (unmodifiable) */
+		public final List<Run<M>> runs;
+
+		public Result(M argmin, double loss, int bestStart, List<Run<M>> runs) {
+			this.argmin = argmin;
+			this.loss = loss;
+			this.bestStart = bestStart;
+			this.runs = runs;
+		}
+	}
+
+	/**
+	 * @param mc matrix calculator to perform linear algebra calculations
+	 * @param solverFactory creates a new solver instance for each start (e.g. {@code ()->new GradientDescent<>(mc)})
+	 */
+	public MultiStart(MatCalc<M> mc, Supplier<? extends DescentAlgorithm<M>> solverFactory) {
+		this.mc = mc;
+		this.solverFactory = solverFactory;
+	}
+
+	/**
+	 * Runs a descent from each of the initial guesses.
+	 * @param f function to be minimized (evaluated concurrently)
+	 * @param df gradient of the function (evaluated concurrently)
+	 * @param initialGuesses initializations, one run per initialization
+	 * @return best result and results of all runs
+	 * @throws RuntimeException when a run fails, the exception of the first failed run (in order of the initial guesses)
+	 * is rethrown after the runs before it have finished
+	 */
+	public Result<M> arg_min(ScalarFN<M> f, VectorFN<M> df, List<M> initialGuesses) {
+		if(initialGuesses.isEmpty())
+			throw new IllegalArgumentException("no initial guesses specified");
+		AtomicReference<Best> bestLoss = new AtomicReference<>(new Best(Double.POSITIVE_INFINITY, -1));
+		ForkJoinPool p = pool != null ? pool : ForkJoinPool.commonPool();
+		List<ForkJoinTask<Run<M>>> tasks = new ArrayList<>(initialGuesses.size());
+		for(int i=0; i<initialGuesses.size(); i++) {
+			final int start = i;
+			tasks.add(p.submit(()->run(f, df, initialGuesses.get(start), start, bestLoss)));
+		}
+		List<Run<M>> runs = new ArrayList<>(tasks.size());
+		Run<M> best = null;
+		for(ForkJoinTask<Run<M>> task : tasks) {
+			Run<M> run = task.join();
+			runs.add(run);
+			if(!run.cancelled && (best == null || run.loss < best.loss))
+				best = run;
+		}
+		return new Result<>(best.argmin, best.loss, best.start, Collections.unmodifiableList(runs));
+	}
+
+	Run<M> run(ScalarFN<M> f, VectorFN<M> df, M initialGuess, int start, AtomicReference<Best> bestLoss) {
+		Monitor log = new Monitor(bestLoss, start);
+		DescentAlgorithm<M> solver = solverFactory.get();
+		DescentResult<M> result = solver.minimize(f, df, initialGuess, log);
+		boolean cancelled = result.termination == DescentResult.Termination.STOPPED;
+		if(!cancelled)
+			updateBest(bestLoss, result.loss, start);
+		return new Run<>(start, initialGuess, result.argmin, result.loss, result.numIterations, cancelled);
+	}
+
+	/**
+	 * @return best after the update, the previous best if loss is not smaller
+	 */
+	static Best updateBest(AtomicReference<Best> best, double loss, int start) {
+		Best current;
+		Best updated;
+		do {
+			current = best.get();
+			if(!(loss < current.loss))
+				return current;
+			updated = new Best(loss, start);
+		} while(!best.compareAndSet(current, updated));
+		return updated;
+	}
+
+	/** best loss seen so far and the start that reported it */
+	static final class Best {
+		final double loss;
+		final int start;
+
+		Best(double loss, int start) {
+			this.loss = loss;
+			this.start = start;
+		}
+	}
+
+	/** observes the losses of a run, and requests it to stop when dominated */
+	class Monitor extends DescentLog {
+		final AtomicReference<Best> bestLoss;
+		final int start;
+		int numIterations = 0;
+
+		Monitor(AtomicReference<Best> bestLoss, int start) {
+			// nothing recorded, only losses are observed
+			super(0, 1);
+			this.bestLoss = bestLoss;
+			this.start = start;
+		}
+
+		@Override
+		public void loss(double fx) {
+			numIterations++;
+			// a stopped run does not become the best, which is never stopped
+			if(isStopRequested())
+				return;
+			Best best = updateBest(bestLoss, fx, start);
+			if(best.start != start && numIterations > cancellationGraceIterations
+					&& fx > best.loss + cancellationMargin*Math.max(1.0, Math.abs(best.loss)))
+			{
+				requestStop();
+			}
+		}
+	}
+
+	/**
+	 * Generates uniformly distributed initial guesses within a box.
+	 * @param mc matrix calculator
+	 * @param numStarts number of initial guesses
+	 * @param dim dimensionality
+	 * @param lower lower bound of each coordinate
+	 * @param upper upper bound of each coordinate
+	 * @param seed random seed
+	 * @return list of initial guesses (column vectors)
+	 */
+	public static <M> List<M> randomStarts(MatCalc<M> mc, int numStarts, int dim, double lower, double upper, long seed) {
+		Random rnd = new Random(seed);
+		List<M> starts = new ArrayList<>(numStarts);
+		for(int i=0; i<numStarts; i++) {
+			M x = mc.rand(dim, 1, rnd);
+			starts.add(mc.add_inp(mc.scale_inp(x, upper-lower), lower));
+		}
+		return starts;
+	}
+
+}
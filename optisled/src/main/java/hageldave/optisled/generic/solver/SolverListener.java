@@ -0,0 +1,50 @@
+package hageldave.optisled.generic.solver;
+
+/**
+ * Opt-in instrumentation of the solvers, e.g. for exporting metrics to a monitoring system.
+ * All methods have empty default implementations, so a listener only overrides what it is interested in.
+ * <p>
+ * Solvers only take timings and report to their listener when it is not {@link #NOOP} (the default),
+ * so uninstrumented solves do not pay for {@link System#nanoTime()} calls.
+ * Listeners are called from the thread running the solve, a listener shared between concurrent solves
+ * has to be thread-safe.
+ */
+public interface SolverListener {
+
+	/** listener that does nothing, disables instrumentation */
+	public static final SolverListener NOOP = new SolverListener() {};
+
+	/**
+	 * Called after each line search of a descent.
+	 * @param numProbes number of step sizes evaluated, i.e. number of backtracks + 1 for backtracking line search
+	 * @param stepSize accepted step size
+	 * @param nanos duration of the line search in nanoseconds
+	 */
+	public default void lineSearchFinished(int numProbes, double stepSize, long nanos) {}
+
+	/**
+	 * Called when a descent of a {@link DescentAlgorithm} terminates.
+	 * @param result result of the descent, containing evaluation counts and termination reason
+	 * @param nanos duration of the descent in nanoseconds
+	 */
+	public default void descentFinished(DescentResult<?> result, long nanos) {}
+
+	/**
+	 * Called after each outer iteration of {@link LogBarrier} or {@link AugmentedLagrangian},
+	 * after the inner descent has been reported through {@link #descentFinished(DescentResult, long)}.
+	 * Each evaluation of the penalty function counted by the inner result evaluates
+	 * the objective and all constraints (their gradients respectively).
+	 * @param iteration index of the outer iteration
+	 * @param inner result of the inner descent
+	 * @param nanos duration of the outer iteration (including inner descent and multiplier update) in nanoseconds
+	 */
+	public default void outerIterationFinished(int iteration, DescentResult<?> inner, long nanos) {}
+
+	/**
+	 * Called when a {@link LogBarrier} or {@link AugmentedLagrangian} solve terminates.
+	 * @param numOuterIterations number of outer iterations
+	 * @param nanos duration of the solve in nanoseconds
+	 */
+	public default void constrainedSolveFinished(int numOuterIterations, long nanos) {}
+
+}
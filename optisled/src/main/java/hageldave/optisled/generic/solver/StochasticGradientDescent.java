@@ -1,36 +1,81 @@
 package hageldave.optisled.generic.solver;
 
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.CachedFN;
+import hageldave.optisled.generic.problem.MinibatchFN;
 import hageldave.optisled.generic.problem.ScalarFN;
 import hageldave.optisled.generic.problem.VectorFN;
+import hageldave.optisled.generic.solver.DescentResult.Termination;
+import hageldave.optisled.generic.solver.Hyperparams.IntKey;
 import hageldave.optisled.history.DescentLog;
 import hageldave.utils.Ref;
 
 /**
  * Stochastic Gradient descent implementation with line search (satisfying 1st Wolfe condition in each step).
  * <p>
- * Stochasticity has to be realized through the {@link #randRef} object which holds a random number which is 
+ * When the objective is a {@link MinibatchFN} (sum of terms), each iteration evaluates only a minibatch of
+ * {@link #PARAM_BATCH_SIZE} terms, sampled in shuffled epochs by a {@link MinibatchScheduler}.
+ * The gradient passed along with the objective is not used in this case (may be null).
+ * With {@link #parallelism} greater than 1, each minibatch is evaluated data-parallel and reduced deterministically,
+ * so that a descent with a seeded {@link #rand} stays reproducible.
+ * The line search of an iteration uses the same minibatch.
+ * <p>
+ * Otherwise (deprecated), stochasticity has to be realized through the {@link #randRef} object which holds a random number which is 
  * changing in each iteration (change events are fired and can be listened to).
  * When the random number changes, the objective function and gradient, that were passed to 
  * {@link #arg_min(ScalarFN, VectorFN, Object, DescentLog)}, need to change behavior to only correspond to a subset of
  * the dimensions (based on the random number).
  * <p>
+ * Since the objective changes between iterations, evaluations are not cached 
+ * ({@link #PARAM_EVALUATION_CACHE_SIZE} is ignored).
+ * <p>
  * Descent is run by calling {@link #arg_min(ScalarFN, VectorFN, Object, DescentLog)}.
  * @param <M> matrix type
  */
 public class StochasticGradientDescent<M> extends GradientDescent<M> {
 	
-	/** RNG, used to generate a new number on each iteration  */
+	/**
+	 * number of terms of a {@link MinibatchFN} objective that are evaluated per iteration
+	 */
+	public static final String PARAM_BATCH_SIZE = "BATCH_SIZE";
+	/** typed key of {@link #PARAM_BATCH_SIZE} */
+	public static final IntKey KEY_BATCH_SIZE = new IntKey(PARAM_BATCH_SIZE, 32, 1, Integer.MAX_VALUE);
+	
+	/** RNG, used to shuffle minibatches (or generate a new number on each iteration for {@link #randRef}) */
 	public Random rand;
 	/** 
 	 * Reference to the random number of the current iteration.
 	 * Should be used to alter which part of the loss and respective gradient 
 	 * is returned by {@code f} and {@code df} in {@link #arg_min(ScalarFN, VectorFN, Object, DescentLog)}.
 	 * This way stochastic gradient descent can be realized.
+	 * Not used for {@link MinibatchFN} objectives.
+	 * @deprecated makes the objective stateful and fires synchronized change events each iteration,
+	 * use a {@link MinibatchFN} objective instead
 	 */
+	@Deprecated
 	public Ref<Integer> randRef = new Ref<>();
+	/** 
+	 * number of concurrently evaluated chunks of a {@link MinibatchFN} minibatch, 1 for sequential evaluation
+	 * (see {@link MinibatchScheduler#parallelism})
+	 */
+	public int parallelism = 1;
+	/** pool used for parallel minibatch evaluation, {@link ForkJoinPool#commonPool()} when null */
+	public ForkJoinPool pool = null;
+
+	/**
+	 * Hyperparameters resolved into primitive fields, including those of stochastic gradient descent
+	 */
+	static final class ConfigSGD extends Config {
+		final int batchSize;
+
+		ConfigSGD(Hyperparams hyperparams) {
+			super(hyperparams);
+			this.batchSize = hyperparams.get(KEY_BATCH_SIZE);
+		}
+	}
 
 	/**
 	 * Creates a new GD instance for matrices of type M using
@@ -43,61 +88,106 @@ public class StochasticGradientDescent<M> extends GradientDescent<M> {
 	}
 
 	@Override
-	public M arg_min(ScalarFN<M> f, VectorFN<M> df, M initialGuess, DescentLog log){
+	Config createConfig(Hyperparams frozen) {
+		return new ConfigSGD(frozen);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Note that {@link #rand} and {@link #randRef} are shared state of this solver, so concurrent
+	 * descents using the same instance interfere with each other.
+	 * For a {@link MinibatchFN} objective, the returned loss is that of the full objective (all terms), which
+	 * is not included in the evaluation counts (these count minibatch evaluations).
+	 */
+	@Override
+	public DescentResult<M> minimize(ScalarFN<M> f, VectorFN<M> df, M initialGuess, DescentLog log, double initialStepSize){
+		// snapshots of the configuration
+		final ConfigSGD config = (ConfigSGD) config();
+		final LineSearch<M> lineSearch = this.lineSearch.copy();
+		final SolverListener listener = this.listener;
+		final boolean instrumented = listener != SolverListener.NOOP;
+		final long startTime = instrumented ? System.nanoTime() : 0;
 		// hyperparameters
-		double a = hyperparams.getOrDefault(PARAM_INIT_STEPSIZE, 1.0);
-		double stepDecr = hyperparams.getOrDefault(PARAM_STEP_DECR, 0.5);
-		double stepIncr = hyperparams.getOrDefault(PARAM_STEP_INCR, 1.2);
-		double terminationStepSize = hyperparams.getOrDefault(PARAM_TERMINATION_STEPSIZE, 1e-8);
-		double lineSearchFactor = hyperparams.getOrDefault(PARAM_LINESEARCH_FACTOR, 0.01);
-		int maxDescentSteps = hyperparams.getOrDefault(PARAM_MAX_ITERATIONS, 100);
-		int maxLineSearchIter = hyperparams.getOrDefault(PARAM_MAX_LINESEARCH_ITER, 20);
+		double a = initialStepSize;
+		double stepIncr = config.stepIncr;
+		double terminationStepSize = config.terminationStepSize;
+		int maxDescentSteps = config.maxIterations;
 
+		// minibatches of a sum of terms, or legacy random number protocol
+		final ScalarFN<M> objective = f;
+		MinibatchScheduler<M> batches = null;
+		if(f instanceof MinibatchFN) {
+			batches = new MinibatchScheduler<>(mc, (MinibatchFN<M>)f, config.batchSize, rand);
+			batches.parallelism = parallelism;
+			batches.pool = pool;
+			f = batches;
+			df = batches.gradient();
+		}
+		// count evaluations only, objective changes between iterations
+		CachedFN<M> counted = CachedFN.of(mc, f, df, 0);
+		f = counted;
+		df = counted.gradient();
 		
+		// workspace, allocated once and updated in-place during descent
 		M x = mc.copy(initialGuess);
+		M d = mc.zeros(mc.numRows(x), mc.numCols(x));
+		M probe = mc.zeros(mc.numRows(x), mc.numCols(x));
+		M dfx = mc.zeros(mc.numRows(x), mc.numCols(x));
+		lineSearch.init(config.source, f, x);
 		int numSteps = 0;
 		//
 		double fx;
-		M dfx;
-		M d;
-		M step;
+		double stepNorm;
+		double stepSize;
 		do {
-			int r = rand.nextInt(Integer.MAX_VALUE);
-			if(randRef != null) 
-				randRef.set(r);
-			fx = f.evaluate(x);
-			dfx = df.evaluate(x);
-			d = mc.normalize_inp(mc.scale(dfx, -1.0));
+			if(batches != null) {
+				batches.next();
+			} else {
+				int r = rand.nextInt(Integer.MAX_VALUE);
+				if(randRef != null) 
+					randRef.set(r);
+			}
+			fx = ScalarFN.evaluateWithGradient(mc, f, df, x, dfx);
+			// d = normalize(-dfx)
+			mc.copyValues(dfx, d);
+			mc.normalize_inp(mc.scale_inp(d, -1.0));
+			// directional derivative df(x)'d
+			double dfxd = mc.inner(dfx, d);
 			if(log != null) {
-				log.position(mc.toArray(x));
+				log.position(mc, x);
 				log.loss(fx);
-				log.direction(mc.toArray(d));
+				log.direction(mc, d);
 				log.stepSize(a);
 			}
 			// perform line search
-			int numLinsrchIter = 0;
-			// while( f(x+a*d) > f(x) + df(x)'a*d*l ) 1st wolfe condition
-			while( 
-					f.evaluate(mc.add(x, step=mc.scale(d,a))) > fx + mc.inner(dfx,step)*lineSearchFactor
-					&& numLinsrchIter++ < maxLineSearchIter
-			){
-				a *= stepDecr;
-				if(log != null)
-					log.stepSize(a);
-			}
-			// update location
-			x = mc.add(x,step);
-			stepSizeOnTermination = a;
+			long lineSearchStart = instrumented ? System.nanoTime() : 0;
+			a = lineSearch.search(f, df, x, fx, d, dfxd, a, probe, log);
+			if(instrumented)
+				listener.lineSearchFinished(lineSearch.numProbes(), a, System.nanoTime()-lineSearchStart);
+			// update location, probe already holds x+a*d
+			M prev = x;
+			x = probe;
+			probe = prev;
+			stepNorm = a*mc.norm(d);
+			stepSize = a;
 			a *= stepIncr;
-		} while( ++numSteps < maxDescentSteps && mc.norm(step) > terminationStepSize );
+		} while( ++numSteps < maxDescentSteps && stepNorm > terminationStepSize && !DescentLog.isStopRequested(log) );
 
-		this.lossOnTermination = f.evaluate(x);
+		// loss of the full objective
+		fx = batches != null ? objective.evaluate(x) : f.evaluate(x);
 		if(log != null) {
-			log.position(mc.toArray(x));
-			log.loss(lossOnTermination);
+			log.position(mc, x);
+			log.loss(fx);
 		}
 		
-		return x;
+		DescentResult<M> result = new DescentResult<>(x, fx, stepSize, numSteps, 
+				stepNorm <= terminationStepSize ? Termination.STEP_SIZE :
+				numSteps < maxDescentSteps ? Termination.STOPPED : Termination.MAX_ITERATIONS,
+				counted.numFunctionEvaluations, counted.numGradientEvaluations);
+		if(instrumented)
+			listener.descentFinished(result, System.nanoTime()-startTime);
+		return result;
 	}
 	
 }
@@ -0,0 +1,189 @@
+package hageldave.optisled.generic.solver;
+
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.problem.ScalarFN.ScalarFNWithValueAndGradient;
+import hageldave.optisled.generic.problem.VectorFN;
+import hageldave.optisled.generic.solver.Hyperparams.DoubleKey;
+import hageldave.optisled.generic.solver.Hyperparams.IntKey;
+import hageldave.optisled.history.DescentLog;
+
+/**
+ * Line search satisfying the strong Wolfe conditions
+ * <pre>
+ * f(x+a*d) &lt;= f(x) + c1*a*df(x)'d     (sufficient decrease)
+ * |df(x+a*d)'d| &lt;= c2*|df(x)'d|       (curvature)
+ * </pre>
+ * following Nocedal &amp; Wright (Numerical Optimization, Algorithms 3.5 and 3.6).
+ * The step size is extrapolated until an interval containing acceptable step sizes is bracketed,
+ * which is then narrowed down using cubic interpolation (quadratic when the derivative at one end
+ * of the interval is not known). For smooth functions an acceptable step is typically found
+ * within 1-3 evaluations.
+ * <p>
+ * The gradient at the accepted probe is retained and can be reused by the solver through {@link #probeGradient()}.
+ * For a {@link ScalarFNWithValueAndGradient} (with matching gradient function) value and gradient of each probe
+ * are evaluated in a single pass.
+ * <p>
+ * Reads {@link GradientDescent#PARAM_LINESEARCH_FACTOR} (c1), {@link #PARAM_LINESEARCH_CURVATURE_FACTOR} (c2)
+ * and {@link GradientDescent#PARAM_MAX_LINESEARCH_ITER} (max number of evaluations) from the solver's hyperparameters.
+ * @param <M> matrix type
+ */
+public class StrongWolfeLineSearch<M> implements LineSearch<M> {
+
+	/**
+	 * factor for the curvature condition (2nd Wolfe condition), in ]LINESEARCH_FACTOR,1[,
+	 * typically 0.9 for quasi-Newton methods and 0.1 for gradient descent
+	 */
+	public static final String PARAM_LINESEARCH_CURVATURE_FACTOR = "LINESEARCH_CURVATURE_FACTOR";
+	/** typed key of {@link #PARAM_LINESEARCH_CURVATURE_FACTOR} */
+	public static final DoubleKey KEY_LINESEARCH_CURVATURE_FACTOR = new DoubleKey(PARAM_LINESEARCH_CURVATURE_FACTOR, 0.9, Double.MIN_VALUE, Math.nextDown(1.0));
+
+	/** sufficient decrease factor, with a default suited for quasi-Newton methods */
+	static final DoubleKey KEY_LINESEARCH_FACTOR = GradientDescent.KEY_LINESEARCH_FACTOR.withDefault(1e-4);
+	static final IntKey KEY_MAX_LINESEARCH_ITER = GradientDescent.KEY_MAX_LINESEARCH_ITER;
+
+	/** factor by which the step size is at most increased per iteration while bracketing */
+	static final double MAX_EXTRAPOLATION = 4.0;
+
+	/** the matrix calculation object for the matrix type M */
+	public final MatCalc<M> mc;
+
+	double lineSearchFactor;
+	double curvatureFactor;
+	int maxLineSearchIter;
+	double probeValue;
+	M probeGradient;
+	M gradBuffer;
+	int numProbes;
+
+	/**
+	 * @param mc matrix calculator to perform linear algebra calculations
+	 */
+	public StrongWolfeLineSearch(MatCalc<M> mc) {
+		this.mc = mc;
+	}
+
+	@Override
+	public void init(Hyperparams hyperparams, ScalarFN<M> f, M x) {
+		lineSearchFactor = hyperparams.get(KEY_LINESEARCH_FACTOR);
+		curvatureFactor = hyperparams.get(KEY_LINESEARCH_CURVATURE_FACTOR);
+		maxLineSearchIter = hyperparams.get(KEY_MAX_LINESEARCH_ITER);
+		if(f instanceof ScalarFNWithValueAndGradient && (gradBuffer == null || mc.numElem(gradBuffer) != mc.numElem(x)))
+			gradBuffer = mc.zeros(mc.numRows(x), mc.numCols(x));
+	}
+
+	@Override
+	public double search(ScalarFN<M> f, VectorFN<M> df, M x, double fx, M d, double dfxd, double a, M probe, DescentLog log) {
+		final double decrease = lineSearchFactor*dfxd;
+		final double curvature = -curvatureFactor*dfxd;
+		// lo: best step size so far satisfying sufficient decrease (derivative known)
+		double aLo=0, fLo=fx, gLo=dfxd;
+		// hi: other end of the bracketing interval
+		double aHi=0, fHi=0, gHi=0;
+		boolean hiHasDerivative = false;
+		boolean bracketed = false;
+		final boolean fused = f instanceof ScalarFNWithValueAndGradient && ((ScalarFNWithValueAndGradient<M>)f).gradient() == df;
+		numProbes = 0;
+		for(int i=0; i<=maxLineSearchIter; i++) {
+			if(i > 0 && log != null)
+				log.stepSize(a);
+			double aPrev=aLo, fPrev=fLo, gPrev=gLo;
+			mc.lincomb_inp(probe, 1.0, x, a, d);
+			double fa = probeValue = fused ? 
+					((ScalarFNWithValueAndGradient<M>)f).evaluateWithGradient(probe, gradBuffer) : f.evaluate(probe);
+			probeGradient = null;
+			numProbes++;
+			if(!(fa <= fx + a*decrease) || fa >= fLo) {
+				// no sufficient decrease, a is an upper bound
+				aHi=a; fHi=fa; hiHasDerivative=false;
+				bracketed = true;
+			} else {
+				M g = fused ? gradBuffer : df.evaluate(probe);
+				double ga = mc.inner(g, d);
+				if(Math.abs(ga) <= curvature) {
+					probeGradient = g;
+					return a;
+				}
+				if(bracketed ? ga*(aHi-aLo) >= 0 : ga >= 0) {
+					// minimum lies between lo and a
+					aHi=aLo; fHi=fLo; gHi=gLo; hiHasDerivative=true;
+					bracketed = true;
+				}
+				aLo=a; fLo=fa; gLo=ga;
+			}
+			if(bracketed) {
+				if(Math.abs(aHi-aLo) <= 1e-12*Math.max(aLo, aHi))
+					break;
+				a = interpolate(aLo, fLo, gLo, aHi, fHi, gHi, hiHasDerivative);
+			} else {
+				// still descending, extrapolate
+				double next = cubicMinimizer(aPrev, fPrev, gPrev, aLo, fLo, gLo);
+				a = next > 1.1*a && next < MAX_EXTRAPOLATION*a ? next : MAX_EXTRAPOLATION*a;
+			}
+		}
+		// evaluation budget exhausted, fall back to best step size with sufficient decrease
+		if(aLo > 0) {
+			mc.lincomb_inp(probe, 1.0, x, aLo, d);
+			probeValue = fLo;
+			probeGradient = null;
+			return aLo;
+		}
+		// no decrease found at all, probe holds the last (smallest) step size tried
+		return aHi;
+	}
+
+	/**
+	 * Trial step size within the bracketing interval, safeguarded to not come closer than
+	 * 10% of the interval width to its ends. Falls back to bisection when interpolation fails.
+	 */
+	static double interpolate(double aLo, double fLo, double gLo, double aHi, double fHi, double gHi, boolean hiHasDerivative) {
+		double t;
+		if(hiHasDerivative) {
+			t = cubicMinimizer(aLo, fLo, gLo, aHi, fHi, gHi);
+		} else {
+			// minimizer of quadratic through (aLo,fLo) with slope gLo and (aHi,fHi)
+			double w = aHi-aLo;
+			t = aLo - gLo*w*w/(2*(fHi-fLo-gLo*w));
+		}
+		double min = Math.min(aLo, aHi);
+		double max = Math.max(aLo, aHi);
+		double margin = 0.1*(max-min);
+		if(Double.isNaN(t) || Double.isInfinite(t))
+			return 0.5*(aLo+aHi);
+		return Math.max(min+margin, Math.min(max-margin, t));
+	}
+
+	/**
+	 * Minimizer of the cubic interpolating function values and derivatives at a0 and a1
+	 * (Nocedal &amp; Wright, eq. 3.59). NaN when the cubic has no minimizer.
+	 */
+	static double cubicMinimizer(double a0, double f0, double g0, double a1, double f1, double g1) {
+		double d1 = g0 + g1 - 3*(f0-f1)/(a0-a1);
+		double rad = d1*d1 - g0*g1;
+		if(rad < 0)
+			return Double.NaN;
+		double d2 = Math.signum(a1-a0)*Math.sqrt(rad);
+		return a1 - (a1-a0)*(g1+d2-d1)/(g1-g0+2*d2);
+	}
+
+	@Override
+	public double probeValue() {
+		return probeValue;
+	}
+
+	@Override
+	public M probeGradient() {
+		return probeGradient;
+	}
+
+	@Override
+	public int numProbes() {
+		return numProbes;
+	}
+
+	@Override
+	public LineSearch<M> copy() {
+		return new StrongWolfeLineSearch<>(mc);
+	}
+
+}
@@ -0,0 +1,75 @@
+package hageldave.optisled.generic.solver;
+
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.problem.VectorFN;
+import hageldave.optisled.generic.solver.DescentResult.Termination;
+import hageldave.optisled.history.DescentLog;
+
+/**
+ * Runs the sequence of inner descents of a penalty method ({@link LogBarrier}, {@link AugmentedLagrangian}),
+ * warm-starting each descent with state of the previous one, since consecutive inner problems only differ slightly.
+ * <ul>
+ * <li>{@link GradientDescent} starts with the scale of the previous descent as step size, i.e. the distance
+ * it travelled (at least its terminal step size), instead of re-discovering it through backtracking
+ * from the initial step size. The terminal step size alone is far too small (it is below the termination threshold).
+ * The scale is enlarged by {@link #STEP_HEADROOM} and capped at the initial step size.
+ * When the descent still stalls in its first step, it is restarted with the initial step size.</li>
+ * <li>{@link LBFGS} starts with the curvature history of the previous descent.</li>
+ * </ul>
+ * Other solvers are started cold.
+ * @param <M> matrix type
+ */
+final class WarmStartedSolver<M> {
+
+	/** 
+	 * factor on the carried over step size. The minimizer of the next problem is about as far away as the 
+	 * previous one was (the penalty changes by the same factor each outer iteration). Overshooting costs one 
+	 * function evaluation per halving of the backtracking line search in the first iteration, whereas 
+	 * undershooting costs about 4 iterations per factor of 2 (step size increase 1.2 per iteration).
+	 * So the step size is enlarged by one halving (1/0.5) of the default backtracking line search.
+	 */
+	static final double STEP_HEADROOM = 2;
+
+	final MatCalc<M> mc;
+	final DescentAlgorithm<M> solver;
+	final boolean warmStart;
+	double stepSize = Double.NaN;
+	final LBFGS.History<M> history = new LBFGS.History<>();
+
+	/**
+	 * @param mc matrix calculator
+	 * @param solver inner solver
+	 * @param warmStart whether to warm-start, otherwise each descent starts cold
+	 */
+	WarmStartedSolver(MatCalc<M> mc, DescentAlgorithm<M> solver, boolean warmStart) {
+		this.mc = mc;
+		this.solver = solver;
+		this.warmStart = warmStart;
+	}
+
+	DescentResult<M> minimize(ScalarFN<M> f, VectorFN<M> df, M x, DescentLog log) {
+		if(solver instanceof GradientDescent) {
+			GradientDescent<M> gd = (GradientDescent<M>) solver;
+			// configured initial step size bounds the carried over step size
+			double initialStepSize = gd.config().initStepSize;
+			double a = warmStart && !Double.isNaN(stepSize) ? stepSize : initialStepSize;
+			DescentResult<M> result = gd.minimize(f, df, x, log, a);
+			if(a < initialStepSize && result.numIterations == 1 && result.termination == Termination.STEP_SIZE) {
+				// carried over step size was too small to make progress on this problem, restart cold
+				DescentResult<M> cold = gd.minimize(f, df, result.argmin, log, initialStepSize);
+				result = new DescentResult<>(cold.argmin, cold.loss, cold.stepSize, 
+						result.numIterations + cold.numIterations, cold.termination, 
+						result.numFunctionEvaluations + cold.numFunctionEvaluations, 
+						result.numGradientEvaluations + cold.numGradientEvaluations);
+			}
+			stepSize = Math.min(initialStepSize, STEP_HEADROOM*Math.max(result.stepSize, mc.dist(result.argmin, x)));
+			return result;
+		}
+		if(solver instanceof LBFGS && warmStart) {
+			return ((LBFGS<M>) solver).minimize(f, df, x, log, history);
+		}
+		return solver.minimize(f, df, x, log);
+	}
+
+}
@@ -1,25 +1,332 @@
 package hageldave.optisled.history;
 
+import java.util.Arrays;
+
+import hageldave.optisled.generic.numerics.MatCalc;
+
+/**
+ * Log of a descent trajectory, recording position, descent direction, loss and step size per iteration.
+ * <p>
+ * Records are kept in primitive ring buffers, values are copied in. The buffers for positions and directions
+ * grow with the number of records (doubling) until the capacity is reached, so a log with a large capacity only
+ * pays for the records actually written, and logging does not allocate once the capacity is reached
+ * (or when allocated upfront with {@link #DescentLog(int, int, int)}).
+ * When the capacity is exceeded, the oldest records are overwritten.
+ * With a sampling stride of k, only every k-th iteration is recorded.
+ * <p>
+ * A solver calls {@link #position(double[])} at the beginning of each iteration, which starts a new record,
+ * followed by {@link #loss(double)}, {@link #direction(double[])} and {@link #stepSize(double)}.
+ * The step size may be logged several times per iteration (e.g. during line search), the last value is kept.
+ * After the descent, the final position and loss are logged (without direction and step size, which are NaN).
+ * <p>
+ * A descent can be stopped through its log with {@link #requestStop()}, the solver checks this once per iteration.
+ * <p>
+ * Not thread-safe (except for {@link #requestStop()}), use one log per descent.
+ */
 public class DescentLog {
 
+	/** default number of records kept */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/** largest array length supported by common JVMs */
+	static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE-8;
+
+	/** number of records kept */
+	public final int capacity;
+	/** only every stride-th iteration is recorded */
+	public final int stride;
+
+	int dim = -1;
+	double[] positions;
+	double[] directions;
+	double[] losses;
+	double[] stepSizes;
+	long[] iterations;
+	/** buffer for the values of logged matrices (for backends that do not store doubles) */
+	double[] buffer;
+
+	/** number of position calls, i.e. iterations */
+	long numIterations = 0;
+	/** number of records written */
+	long numRecords = 0;
+	/** whether the current iteration is recorded */
+	boolean recording = false;
+	/** ring buffer index of the current record */
+	int current = -1;
+	/** whether the descent using this log is requested to stop */
+	volatile boolean stopRequested = false;
+
+	/**
+	 * Creates a log recording every iteration, keeping the last {@link #DEFAULT_CAPACITY} records.
+	 */
+	public DescentLog() {
+		this(DEFAULT_CAPACITY, 1);
+	}
+
+	/**
+	 * @param capacity number of records kept (0 records nothing)
+	 * @param stride only every stride-th iteration is recorded (1 for every iteration)
+	 */
+	public DescentLog(int capacity, int stride) {
+		if(capacity < 0)
+			throw new IllegalArgumentException("capacity has to be non-negative, but was " + capacity);
+		if(stride < 1)
+			throw new IllegalArgumentException("stride has to be positive, but was " + stride);
+		this.capacity = capacity;
+		this.stride = stride;
+		this.losses = new double[capacity];
+		this.stepSizes = new double[capacity];
+		this.iterations = new long[capacity];
+	}
+
+	/**
+	 * Creates a log with buffers for the specified dimensionality allocated upfront (for all records).
+	 * @param capacity number of records kept (0 records nothing)
+	 * @param stride only every stride-th iteration is recorded (1 for every iteration)
+	 * @param dim dimensionality of positions and directions
+	 * @throws IllegalArgumentException when capacity*dim exceeds the maximum array length
+	 */
+	public DescentLog(int capacity, int stride, int dim) {
+		this(capacity, stride);
+		allocate(dim, capacity);
+	}
+
+	/** allocates buffers for the specified number of records */
+	void allocate(int dim, int records) {
+		long size = (long)capacity*dim;
+		if(size > MAX_ARRAY_LENGTH)
+			throw new IllegalArgumentException("capacity*dim = " + capacity + "*" + dim + " = " + size
+					+ " exceeds the maximum array length, reduce the capacity of the log");
+		this.dim = dim;
+		this.positions = new double[records*dim];
+		this.directions = new double[records*dim];
+	}
+
+	/** grows the buffers so that the record at the specified ring buffer index fits */
+	void ensureRecord(int index) {
+		if((long)(index+1)*dim <= positions.length)
+			return;
+		int records = (int)Math.min(capacity, Math.max(index+1, 2L*positions.length/dim));
+		positions = Arrays.copyOf(positions, records*dim);
+		directions = Arrays.copyOf(directions, records*dim);
+	}
+
+	/**
+	 * Starts a new iteration with the specified position.
+	 * @param array position (values are copied)
+	 */
 	public void position(double[] array) {
-		// TODO Auto-generated method stub
-		
+		position(array, array.length);
+	}
+
+	/**
+	 * Starts a new iteration with the specified position.
+	 * @param mc matrix calculator
+	 * @param x position (values are copied)
+	 */
+	public <M> void position(MatCalc<M> mc, M x) {
+		int n = mc.numElem(x);
+		position(values(mc, x, n), n);
+	}
+
+	/**
+	 * Starts a new iteration with the specified position, all position overloads end up here.
+	 * @param values position (values are copied)
+	 * @param n number of values (dimensionality)
+	 */
+	protected void position(double[] values, int n) {
+		if(startIteration(n))
+			System.arraycopy(values, 0, positions, current*dim, dim);
 	}
 
+	/**
+	 * Starts a new iteration and, when it is recorded, a new record (with unset values).
+	 * @param n dimensionality of the position
+	 * @return whether the iteration is recorded
+	 */
+	boolean startIteration(int n) {
+		recording = capacity > 0 && numIterations++ % stride == 0;
+		if(!recording)
+			return false;
+		if(dim < 0)
+			allocate(n, 1);
+		else if(dim != n)
+			throw new IllegalArgumentException("log is for dimensionality " + dim + " but got position of dimensionality " + n);
+		current = (int)(numRecords++ % capacity);
+		ensureRecord(current);
+		Arrays.fill(directions, current*dim, (current+1)*dim, Double.NaN);
+		losses[current] = Double.NaN;
+		stepSizes[current] = Double.NaN;
+		iterations[current] = numIterations-1;
+		return true;
+	}
+
+	/** 
+	 * values of m without allocation during descent, see {@link MatCalc#toArray(Object, double[])}.
+	 * No copy is made for backends that store doubles.
+	 */
+	<M> double[] values(MatCalc<M> mc, M m, int n) {
+		if(buffer == null || buffer.length < n)
+			buffer = new double[n];
+		return mc.toArray(m, buffer);
+	}
+
+	/**
+	 * Logs the descent direction of the current iteration.
+	 * @param array direction (values are copied)
+	 */
 	public void direction(double[] array) {
-		// TODO Auto-generated method stub
-		
+		direction(array, array.length);
 	}
 
+	/**
+	 * Logs the descent direction of the current iteration.
+	 * @param mc matrix calculator
+	 * @param d direction (values are copied)
+	 */
+	public <M> void direction(MatCalc<M> mc, M d) {
+		if(recording)
+			direction(values(mc, d, mc.numElem(d)), mc.numElem(d));
+	}
+
+	/**
+	 * Logs the descent direction of the current iteration, all direction overloads end up here.
+	 * @param values direction (values are copied)
+	 * @param n number of values (dimensionality)
+	 */
+	protected void direction(double[] values, int n) {
+		if(!recording)
+			return;
+		if(n != dim)
+			throw new IllegalArgumentException("log is for dimensionality " + dim + " but got direction of dimensionality " + n);
+		System.arraycopy(values, 0, directions, current*dim, dim);
+	}
+
+	/**
+	 * Logs the loss of the current iteration.
+	 * @param fx loss
+	 */
 	public void loss(double fx) {
-		// TODO Auto-generated method stub
-		
+		if(recording)
+			losses[current] = fx;
 	}
 
+	/**
+	 * Logs the step size of the current iteration, overwriting a previously logged one.
+	 * @param a step size
+	 */
 	public void stepSize(double a) {
-		// TODO Auto-generated method stub
-		
+		if(recording)
+			stepSizes[current] = a;
+	}
+
+	/**
+	 * @return number of records held, at most {@link #capacity}
+	 */
+	public int size() {
+		return (int)Math.min(numRecords, capacity);
+	}
+
+	/**
+	 * @return number of iterations logged (recorded or not)
+	 */
+	public long numIterations() {
+		return numIterations;
+	}
+
+	/**
+	 * @return dimensionality of positions and directions, -1 if nothing has been recorded yet
+	 */
+	public int dimension() {
+		return dim;
+	}
+
+	/** ring buffer index of the i-th record held (0 is the oldest) */
+	int index(int i) {
+		if(i < 0 || i >= size())
+			throw new IndexOutOfBoundsException("record " + i + " of " + size());
+		return (int)((numRecords - size() + i) % capacity);
+	}
+
+	/**
+	 * @param i record index, 0 is the oldest record held
+	 * @return iteration number of the record
+	 */
+	public long getIteration(int i) {
+		return iterations[index(i)];
+	}
+
+	/**
+	 * @param i record index, 0 is the oldest record held
+	 * @param out array of length {@link #dimension()} to copy the position into
+	 * @return out
+	 */
+	public double[] getPosition(int i, double[] out) {
+		System.arraycopy(positions, index(i)*dim, out, 0, dim);
+		return out;
+	}
+
+	/**
+	 * @param i record index, 0 is the oldest record held
+	 * @param out array of length {@link #dimension()} to copy the direction into (NaN if not logged)
+	 * @return out
+	 */
+	public double[] getDirection(int i, double[] out) {
+		System.arraycopy(directions, index(i)*dim, out, 0, dim);
+		return out;
+	}
+
+	/**
+	 * @param i record index, 0 is the oldest record held
+	 * @return loss of the record (NaN if not logged)
+	 */
+	public double getLoss(int i) {
+		return losses[index(i)];
+	}
+
+	/**
+	 * @param i record index, 0 is the oldest record held
+	 * @return step size of the record (NaN if not logged)
+	 */
+	public double getStepSize(int i) {
+		return stepSizes[index(i)];
+	}
+
+	/**
+	 * Requests the descent using this log to stop. The solver checks the request at the end of each iteration
+	 * and terminates with {@link hageldave.optisled.generic.solver.DescentResult.Termination#STOPPED},
+	 * its result holds the position reached so far.
+	 * May be called from another thread, or from an overridden logging method (e.g. {@link #loss(double)})
+	 * to stop depending on the progress of the descent.
+	 */
+	public void requestStop() {
+		this.stopRequested = true;
+	}
+
+	/**
+	 * @return whether {@link #requestStop()} was called (since the last {@link #clear()})
+	 */
+	public boolean isStopRequested() {
+		return stopRequested;
+	}
+
+	/**
+	 * @param log log of a descent (may be null)
+	 * @return whether a stop of the descent was requested through its log
+	 */
+	public static boolean isStopRequested(DescentLog log) {
+		return log != null && log.stopRequested;
+	}
+
+	/**
+	 * Removes all records, keeping the allocated buffers, and withdraws a stop request.
+	 */
+	public void clear() {
+		numIterations = 0;
+		numRecords = 0;
+		recording = false;
+		current = -1;
+		stopRequested = false;
 	}
 
 }
@@ -0,0 +1,267 @@
+package hageldave.optisled.history;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+
+import hageldave.optisled.generic.solver.AugmentedLagrangian;
+import hageldave.optisled.generic.solver.LogBarrier;
+import hageldave.optisled.generic.solver.TrajectoryInfo;
+
+/**
+ * Trajectory of a constrained solve stored in a compact binary file, usable as the trace list
+ * of {@link LogBarrier#arg_min(hageldave.optisled.generic.problem.OptimizationProblem, Object, java.util.List)}
+ * and {@link AugmentedLagrangian#arg_min(hageldave.optisled.generic.problem.OptimizationProblem, Object, java.util.List)}.
+ * Records appended through {@link #add(TrajectoryInfo)} are streamed to the file through memory mapped
+ * chunks instead of being held on the heap, records are read back lazily through {@link #get(int)}.
+ * <pre>
+ * try(TrajectoryFile trace = TrajectoryFile.create(path)){
+ *     solver.arg_min(problem, initialGuess, trace);
+ * }
+ * try(TrajectoryFile trace = TrajectoryFile.open(path)){
+ *     for(TrajectoryInfo info : trace) ...
+ * }
+ * </pre>
+ * <p>
+ * File layout (little endian): a header of {@value #HEADER_SIZE} bytes (magic number, version, length of x,
+ * number of constraints as ints, number of records as long, 8 bytes reserved) followed by fixed size records
+ * of doubles {@code x[n], fx, gx[m], lambda[m], loss, mu, isGradientDescent}.
+ * The dimensions are determined by the first record, all records need to have the same dimensions.
+ * <p>
+ * Not thread-safe.
+ */
+public class TrajectoryFile extends AbstractList<TrajectoryInfo> implements Closeable {
+
+	/** magic number identifying trajectory files ("OSTR") */
+	public static final int MAGIC = 0x4F535452;
+	/** version of the file layout */
+	public static final int VERSION = 1;
+	/** size of the file header in bytes */
+	public static final int HEADER_SIZE = 32;
+
+	/** upper bound on the bytes mapped at once, unless a single record is larger */
+	static final int MAX_CHUNK_BYTES = 1<<20;
+	/** upper bound on the records mapped at once */
+	static final int MAX_CHUNK_RECORDS = 256;
+
+	final FileChannel channel;
+	final boolean writable;
+	MappedByteBuffer header;
+	int n = -1;
+	int m = -1;
+	int recordSize;
+	int recordsPerChunk;
+	int size;
+
+	/** currently mapped chunk and the index of its first record */
+	MappedByteBuffer chunk;
+	long chunkStart = -1;
+
+	TrajectoryFile(FileChannel channel, boolean writable) throws IOException {
+		this.channel = channel;
+		this.writable = writable;
+		if(writable) {
+			header = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, -1).putInt(12, -1).putLong(16, 0);
+		} else {
+			if(channel.size() < HEADER_SIZE)
+				throw new IOException("not a trajectory file, too small for header");
+			header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			if(header.getInt(0) != MAGIC)
+				throw new IOException("not a trajectory file, magic number mismatch");
+			if(header.getInt(4) != VERSION)
+				throw new IOException("unsupported trajectory file version " + header.getInt(4));
+			long count = header.getLong(16);
+			if(count > 0)
+				setDimensions(header.getInt(8), header.getInt(12));
+			if(count > Integer.MAX_VALUE || (count > 0 && HEADER_SIZE + count*recordSize > channel.size()))
+				throw new IOException("trajectory file is truncated or corrupt, header states " + count + " records");
+			size = (int)count;
+		}
+	}
+
+	/**
+	 * Creates a new (or overwrites an existing) trajectory file for writing.
+	 * @param path location of the file
+	 * @return empty trajectory file to which records can be added
+	 * @throws IOException when the file cannot be created
+	 */
+	public static TrajectoryFile create(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			return new TrajectoryFile(channel, true);
+		} catch(IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens an existing trajectory file for reading.
+	 * @param path location of the file
+	 * @return read-only trajectory file
+	 * @throws IOException when the file cannot be read or is not a trajectory file
+	 */
+	public static TrajectoryFile open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			return new TrajectoryFile(channel, false);
+		} catch(IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	void setDimensions(int n, int m) {
+		this.n = n;
+		this.m = m;
+		this.recordSize = 8*(n + 2*m + 4);
+		this.recordsPerChunk = Math.max(1, Math.min(MAX_CHUNK_RECORDS, MAX_CHUNK_BYTES/recordSize));
+	}
+
+	/** maps the chunk containing the specified record, returns the byte offset of the record within the chunk */
+	int mapRecord(int index) throws IOException {
+		long start = index - index%recordsPerChunk;
+		if(start != chunkStart) {
+			long offset = HEADER_SIZE + start*recordSize;
+			long length = (long)recordsPerChunk*recordSize;
+			if(writable) {
+				chunk = channel.map(MapMode.READ_WRITE, offset, length);
+			} else {
+				chunk = channel.map(MapMode.READ_ONLY, offset, Math.min(length, channel.size()-offset));
+			}
+			chunk.order(ByteOrder.LITTLE_ENDIAN);
+			chunkStart = start;
+		}
+		return (int)(index-start)*recordSize;
+	}
+
+	/**
+	 * Appends a record to the file.
+	 * @param info record, arrays {@code x}, {@code gx} and {@code lambda} must not be null and
+	 * must have the same lengths as those of the first record
+	 * @return true
+	 * @throws UnsupportedOperationException when the file was opened for reading
+	 * @throws UncheckedIOException when writing fails
+	 */
+	@Override
+	public boolean add(TrajectoryInfo info) {
+		if(!writable)
+			throw new UnsupportedOperationException("trajectory file is opened read-only");
+		if(n < 0) {
+			setDimensions(info.x.length, info.gx.length);
+			header.putInt(8, n).putInt(12, m);
+		}
+		if(info.x.length != n || info.gx.length != m || info.lambda.length != m)
+			throw new IllegalArgumentException(String.format(
+					"record dimensions (x:%d, gx:%d, lambda:%d) do not match file (x:%d, constraints:%d)",
+					info.x.length, info.gx.length, info.lambda.length, n, m));
+		try {
+			int pos = mapRecord(size);
+			for(int i=0; i<n; i++, pos+=8)
+				chunk.putDouble(pos, info.x[i]);
+			chunk.putDouble(pos, info.fx); pos+=8;
+			for(int i=0; i<m; i++, pos+=8)
+				chunk.putDouble(pos, info.gx[i]);
+			for(int i=0; i<m; i++, pos+=8)
+				chunk.putDouble(pos, info.lambda[i]);
+			chunk.putDouble(pos, info.loss); pos+=8;
+			chunk.putDouble(pos, info.mu); pos+=8;
+			chunk.putDouble(pos, info.isGradientDescent ? 1.0 : 0.0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		header.putLong(16, ++size);
+		modCount++;
+		return true;
+	}
+
+	/**
+	 * Reads a record into a new {@link TrajectoryInfo}.
+	 * @param index index of the record
+	 * @return record
+	 * @throws UncheckedIOException when reading fails
+	 */
+	@Override
+	public TrajectoryInfo get(int index) {
+		return get(index, new TrajectoryInfo());
+	}
+
+	/**
+	 * Reads a record into the specified {@link TrajectoryInfo}, reusing its arrays when they have matching lengths.
+	 * @param index index of the record
+	 * @param info record to read into
+	 * @return info
+	 * @throws UncheckedIOException when reading fails
+	 */
+	public TrajectoryInfo get(int index, TrajectoryInfo info) {
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("index " + index + " of " + size + " records");
+		if(info.x == null || info.x.length != n)
+			info.x = new double[n];
+		if(info.gx == null || info.gx.length != m)
+			info.gx = new double[m];
+		if(info.lambda == null || info.lambda.length != m)
+			info.lambda = new double[m];
+		try {
+			int pos = mapRecord(index);
+			for(int i=0; i<n; i++, pos+=8)
+				info.x[i] = chunk.getDouble(pos);
+			info.fx = chunk.getDouble(pos); pos+=8;
+			for(int i=0; i<m; i++, pos+=8)
+				info.gx[i] = chunk.getDouble(pos);
+			for(int i=0; i<m; i++, pos+=8)
+				info.lambda[i] = chunk.getDouble(pos);
+			info.loss = chunk.getDouble(pos); pos+=8;
+			info.mu = chunk.getDouble(pos); pos+=8;
+			info.isGradientDescent = chunk.getDouble(pos) != 0.0;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return info;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Flushes written records and closes the file. A file opened for writing is truncated to the size of its records.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(!channel.isOpen())
+			return;
+		try {
+			if(writable) {
+				header.force();
+				if(chunk != null)
+					chunk.force();
+				chunk = null;
+				header = null;
+				// drop the slack of the last chunk (may not be possible on platforms that lock mapped files)
+				long length = HEADER_SIZE + (long)size*Math.max(recordSize, 0);
+				try {
+					channel.truncate(length);
+				} catch (IOException e) {
+					// file remains valid since the header holds the number of records
+				}
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+}
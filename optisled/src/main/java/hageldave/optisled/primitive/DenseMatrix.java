@@ -0,0 +1,61 @@
+package hageldave.optisled.primitive;
+
+/**
+ * Lightweight dense matrix, a flat {@code double[]} in row major order plus its shape.
+ * This is the matrix type of {@link MatCalcPrimitive}.
+ * Fields are public for direct access in hot loops, the shape is fixed on construction.
+ */
+public final class DenseMatrix {
+
+	/** number of rows */
+	public final int rows;
+	/** number of columns */
+	public final int cols;
+	/** values in row major order, {@code data.length == rows*cols} */
+	public final double[] data;
+
+	/**
+	 * Creates a matrix backed by the specified array (no copy is made).
+	 * @param rows number of rows
+	 * @param cols number of columns
+	 * @param data values in row major order
+	 * @throws IllegalArgumentException when {@code data.length != rows*cols}
+	 */
+	public DenseMatrix(int rows, int cols, double[] data) {
+		if(data.length != rows*cols)
+			throw new IllegalArgumentException("data length " + data.length + " does not match shape " + rows + "x" + cols);
+		this.rows = rows;
+		this.cols = cols;
+		this.data = data;
+	}
+
+	/**
+	 * Creates a zero matrix
+	 * @param rows number of rows
+	 * @param cols number of columns
+	 */
+	public DenseMatrix(int rows, int cols) {
+		this(rows, cols, new double[rows*cols]);
+	}
+
+	/**
+	 * @return deep copy of this matrix
+	 */
+	public DenseMatrix copy() {
+		return new DenseMatrix(rows, cols, data.clone());
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(rows).append('x').append(cols).append(" [");
+		for(int r=0; r<rows; r++) {
+			if(r > 0) sb.append("; ");
+			for(int c=0; c<cols; c++) {
+				if(c > 0) sb.append(", ");
+				sb.append(data[r*cols+c]);
+			}
+		}
+		return sb.append(']').toString();
+	}
+}
@@ -0,0 +1,600 @@
+package hageldave.optisled.primitive;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.dense.row.factory.DecompositionFactory_DDRM;
+import org.ejml.interfaces.decomposition.CholeskyDecomposition_F64;
+import org.ejml.interfaces.decomposition.EigenDecomposition_F64;
+import org.ejml.simple.SimpleMatrix;
+import org.ejml.simple.SimpleSVD;
+import org.ejml.simple.ops.SimpleOperations_DDRM;
+
+import hageldave.optisled.generic.numerics.MatCalc;
+
+/**
+ * {@link MatCalc} implementation working directly on flat primitive arrays ({@link DenseMatrix}).
+ * <p>
+ * Element-wise and vector operations (inner products, norms, distances, in-place arithmetic)
+ * are plain loops over the backing arrays without object wrappers or shape checks,
+ * which makes them cheap for problems that are mostly vectors.
+ * Matrix products and decompositions are delegated to the Efficient Java Matrix Library (EJML)
+ * by wrapping the backing arrays (no copies are made for the arguments).
+ */
+public class MatCalcPrimitive implements MatCalc<DenseMatrix> {
+
+	static final SimpleOperations_DDRM ops = new SimpleOperations_DDRM();
+
+	/** wraps the array of m as EJML matrix (sharing data) */
+	static DMatrixRMaj wrap(DenseMatrix m) {
+		return DMatrixRMaj.wrap(m.rows, m.cols, m.data);
+	}
+
+	/** turns EJML matrix into DenseMatrix (sharing data when possible) */
+	static DenseMatrix unwrap(DMatrixRMaj m) {
+		int n = m.numRows*m.numCols;
+		double[] data = m.data.length == n ? m.data : Arrays.copyOf(m.data, n);
+		return new DenseMatrix(m.numRows, m.numCols, data);
+	}
+
+	@Override
+	public DenseMatrix vecOf(double... v) {
+		return new DenseMatrix(v.length, 1, v);
+	}
+
+	@Override
+	public DenseMatrix matOf(int nRows, double... values) {
+		return new DenseMatrix(nRows, values.length/nRows, values);
+	}
+
+	@Override
+	public DenseMatrix matOf(double[][] values) {
+		int rows = values.length;
+		int cols = rows == 0 ? 0 : values[0].length;
+		DenseMatrix m = new DenseMatrix(rows, cols);
+		for(int r=0; r<rows; r++)
+			System.arraycopy(values[r], 0, m.data, r*cols, cols);
+		return m;
+	}
+
+	@Override
+	public DenseMatrix zeros(int n) {
+		return new DenseMatrix(n, 1);
+	}
+
+	@Override
+	public DenseMatrix zeros(int rows, int columns) {
+		return new DenseMatrix(rows, columns);
+	}
+
+	@Override
+	public DenseMatrix eye(int n, double s) {
+		DenseMatrix m = new DenseMatrix(n, n);
+		for(int i=0; i<n; i++)
+			m.data[i*n+i] = s;
+		return m;
+	}
+
+	@Override
+	public int numRows(DenseMatrix m) {
+		return m.rows;
+	}
+
+	@Override
+	public int numCols(DenseMatrix m) {
+		return m.cols;
+	}
+
+	@Override
+	public int numElem(DenseMatrix m) {
+		return m.data.length;
+	}
+
+	@Override
+	public double inner(DenseMatrix a, DenseMatrix b) {
+		final double[] ad = a.data, bd = b.data;
+		double sum = 0;
+		for(int i=0; i<ad.length; i++)
+			sum += ad[i]*bd[i];
+		return sum;
+	}
+
+	@Override
+	public double norm2(DenseMatrix v) {
+		final double[] vd = v.data;
+		double sum = 0;
+		for(int i=0; i<vd.length; i++)
+			sum += vd[i]*vd[i];
+		return sum;
+	}
+
+	@Override
+	public double dist2(DenseMatrix v1, DenseMatrix v2) {
+		final double[] ad = v1.data, bd = v2.data;
+		double sum = 0;
+		for(int i=0; i<ad.length; i++) {
+			double diff = ad[i]-bd[i];
+			sum += diff*diff;
+		}
+		return sum;
+	}
+
+	@Override
+	public double sum(DenseMatrix m) {
+		final double[] md = m.data;
+		double sum = 0;
+		for(int i=0; i<md.length; i++)
+			sum += md[i];
+		return sum;
+	}
+
+	@Override
+	public double frob2(DenseMatrix m) {
+		return norm2(m);
+	}
+
+	@Override
+	public DenseMatrix scale(DenseMatrix m, double s) {
+		DenseMatrix c = new DenseMatrix(m.rows, m.cols);
+		final double[] md = m.data, cd = c.data;
+		for(int i=0; i<md.length; i++)
+			cd[i] = md[i]*s;
+		return c;
+	}
+
+	@Override
+	public DenseMatrix scale_inp(DenseMatrix m, double s) {
+		final double[] md = m.data;
+		for(int i=0; i<md.length; i++)
+			md[i] *= s;
+		return m;
+	}
+
+	@Override
+	public DenseMatrix matmul(DenseMatrix a, DenseMatrix b) {
+		DenseMatrix c = new DenseMatrix(a.rows, b.cols);
+		CommonOps_DDRM.mult(wrap(a), wrap(b), wrap(c));
+		return c;
+	}
+
+	@Override
+	public DenseMatrix mult_aTb(DenseMatrix a, DenseMatrix b) {
+		DenseMatrix c = new DenseMatrix(a.cols, b.cols);
+		CommonOps_DDRM.multTransA(wrap(a), wrap(b), wrap(c));
+		return c;
+	}
+
+	@Override
+	public DenseMatrix mult_abT(DenseMatrix a, DenseMatrix b) {
+		DenseMatrix c = new DenseMatrix(a.rows, b.rows);
+		CommonOps_DDRM.multTransB(wrap(a), wrap(b), wrap(c));
+		return c;
+	}
+
+	@Override
+	public DenseMatrix elemmul(DenseMatrix a, DenseMatrix b) {
+		DenseMatrix c = new DenseMatrix(a.rows, a.cols);
+		final double[] ad = a.data, bd = b.data, cd = c.data;
+		for(int i=0; i<cd.length; i++)
+			cd[i] = ad[i]*bd[i];
+		return c;
+	}
+
+	@Override
+	public DenseMatrix elemmul_inp(DenseMatrix a, DenseMatrix b) {
+		final double[] ad = a.data, bd = b.data;
+		for(int i=0; i<ad.length; i++)
+			ad[i] *= bd[i];
+		return a;
+	}
+
+	@Override
+	public DenseMatrix elemdiv(DenseMatrix a, DenseMatrix b) {
+		DenseMatrix c = new DenseMatrix(a.rows, a.cols);
+		final double[] ad = a.data, bd = b.data, cd = c.data;
+		for(int i=0; i<cd.length; i++)
+			cd[i] = ad[i]/bd[i];
+		return c;
+	}
+
+	@Override
+	public DenseMatrix mulRowsByColVec(DenseMatrix m, DenseMatrix colV) {
+		DenseMatrix c = m.copy();
+		for(int r=0; r<m.rows; r++) {
+			double s = colV.data[r];
+			for(int col=0; col<m.cols; col++)
+				c.data[r*m.cols+col] *= s;
+		}
+		return c;
+	}
+
+	@Override
+	public DenseMatrix mulColsByRowVec(DenseMatrix m, DenseMatrix rowV) {
+		DenseMatrix c = m.copy();
+		for(int r=0; r<m.rows; r++)
+			for(int col=0; col<m.cols; col++)
+				c.data[r*m.cols+col] *= rowV.data[col];
+		return c;
+	}
+
+	@Override
+	public DenseMatrix rowSums(DenseMatrix m) {
+		DenseMatrix v = new DenseMatrix(m.rows, 1);
+		for(int r=0; r<m.rows; r++) {
+			double sum = 0;
+			for(int c=0; c<m.cols; c++)
+				sum += m.data[r*m.cols+c];
+			v.data[r] = sum;
+		}
+		return v;
+	}
+
+	@Override
+	public DenseMatrix colSums(DenseMatrix m) {
+		DenseMatrix v = new DenseMatrix(1, m.cols);
+		for(int r=0; r<m.rows; r++)
+			for(int c=0; c<m.cols; c++)
+				v.data[c] += m.data[r*m.cols+c];
+		return v;
+	}
+
+	@Override
+	public DenseMatrix rowMins(DenseMatrix m) {
+		DenseMatrix v = new DenseMatrix(m.rows, 1);
+		for(int r=0; r<m.rows; r++) {
+			double min = Double.POSITIVE_INFINITY;
+			for(int c=0; c<m.cols; c++)
+				min = Math.min(min, m.data[r*m.cols+c]);
+			v.data[r] = min;
+		}
+		return v;
+	}
+
+	@Override
+	public DenseMatrix rowMaxs(DenseMatrix m) {
+		DenseMatrix v = new DenseMatrix(m.rows, 1);
+		for(int r=0; r<m.rows; r++) {
+			double max = Double.NEGATIVE_INFINITY;
+			for(int c=0; c<m.cols; c++)
+				max = Math.max(max, m.data[r*m.cols+c]);
+			v.data[r] = max;
+		}
+		return v;
+	}
+
+	@Override
+	public DenseMatrix colMins(DenseMatrix m) {
+		DenseMatrix v = new DenseMatrix(1, m.cols);
+		Arrays.fill(v.data, Double.POSITIVE_INFINITY);
+		for(int r=0; r<m.rows; r++)
+			for(int c=0; c<m.cols; c++)
+				v.data[c] = Math.min(v.data[c], m.data[r*m.cols+c]);
+		return v;
+	}
+
+	@Override
+	public DenseMatrix colMaxs(DenseMatrix m) {
+		DenseMatrix v = new DenseMatrix(1, m.cols);
+		Arrays.fill(v.data, Double.NEGATIVE_INFINITY);
+		for(int r=0; r<m.rows; r++)
+			for(int c=0; c<m.cols; c++)
+				v.data[c] = Math.max(v.data[c], m.data[r*m.cols+c]);
+		return v;
+	}
+
+	@Override
+	public DenseMatrix subRowVec(DenseMatrix m, DenseMatrix rowV) {
+		DenseMatrix copy = m.copy();
+		for(int r=0; r<m.rows; r++)
+			for(int c=0; c<m.cols; c++)
+				copy.data[r*m.cols+c] -= rowV.data[c];
+		return copy;
+	}
+
+	@Override
+	public DenseMatrix subColVec(DenseMatrix m, DenseMatrix colV) {
+		DenseMatrix copy = m.copy();
+		for(int r=0; r<m.rows; r++)
+			for(int c=0; c<m.cols; c++)
+				copy.data[r*m.cols+c] -= colV.data[r];
+		return copy;
+	}
+
+	@Override
+	public DenseMatrix addRowVec(DenseMatrix m, DenseMatrix rowV) {
+		DenseMatrix copy = m.copy();
+		for(int r=0; r<m.rows; r++)
+			for(int c=0; c<m.cols; c++)
+				copy.data[r*m.cols+c] += rowV.data[c];
+		return copy;
+	}
+
+	@Override
+	public DenseMatrix addColVec(DenseMatrix m, DenseMatrix colV) {
+		DenseMatrix copy = m.copy();
+		for(int r=0; r<m.rows; r++)
+			for(int c=0; c<m.cols; c++)
+				copy.data[r*m.cols+c] += colV.data[r];
+		return copy;
+	}
+
+	@Override
+	public DenseMatrix trp(DenseMatrix m) {
+		DenseMatrix t = new DenseMatrix(m.cols, m.rows);
+		for(int r=0; r<m.rows; r++)
+			for(int c=0; c<m.cols; c++)
+				t.data[c*m.rows+r] = m.data[r*m.cols+c];
+		return t;
+	}
+
+	@Override
+	public DenseMatrix add(DenseMatrix a, double b) {
+		return add_inp(a.copy(), b);
+	}
+
+	@Override
+	public DenseMatrix add(DenseMatrix a, DenseMatrix b) {
+		DenseMatrix c = new DenseMatrix(a.rows, a.cols);
+		final double[] ad = a.data, bd = b.data, cd = c.data;
+		for(int i=0; i<cd.length; i++)
+			cd[i] = ad[i]+bd[i];
+		return c;
+	}
+
+	@Override
+	public DenseMatrix sub(DenseMatrix a, DenseMatrix b) {
+		DenseMatrix c = new DenseMatrix(a.rows, a.cols);
+		final double[] ad = a.data, bd = b.data, cd = c.data;
+		for(int i=0; i<cd.length; i++)
+			cd[i] = ad[i]-bd[i];
+		return c;
+	}
+
+	@Override
+	public DenseMatrix add_inp(DenseMatrix a, DenseMatrix b) {
+		final double[] ad = a.data, bd = b.data;
+		for(int i=0; i<ad.length; i++)
+			ad[i] += bd[i];
+		return a;
+	}
+
+	@Override
+	public DenseMatrix add_inp(DenseMatrix a, double b) {
+		final double[] ad = a.data;
+		for(int i=0; i<ad.length; i++)
+			ad[i] += b;
+		return a;
+	}
+
+	@Override
+	public DenseMatrix sub_inp(DenseMatrix a, DenseMatrix b) {
+		final double[] ad = a.data, bd = b.data;
+		for(int i=0; i<ad.length; i++)
+			ad[i] -= bd[i];
+		return a;
+	}
+
+	@Override
+	public DenseMatrix axpy_inp(double a, DenseMatrix x, DenseMatrix y) {
+		final double[] xd = x.data, yd = y.data;
+		for(int i=0; i<yd.length; i++)
+			yd[i] += a*xd[i];
+		return y;
+	}
+
+	@Override
+	public DenseMatrix axpby_inp(double a, DenseMatrix x, double b, DenseMatrix y) {
+		final double[] xd = x.data, yd = y.data;
+		for(int i=0; i<yd.length; i++)
+			yd[i] = a*xd[i] + b*yd[i];
+		return y;
+	}
+
+	@Override
+	public DenseMatrix lincomb_inp(DenseMatrix target, double a, DenseMatrix x, double b, DenseMatrix y) {
+		final double[] td = target.data, xd = x.data, yd = y.data;
+		for(int i=0; i<td.length; i++)
+			td[i] = a*xd[i] + b*yd[i];
+		return target;
+	}
+
+	@Override
+	public DenseMatrix elemmulAxpby_inp(double a, DenseMatrix x1, DenseMatrix x2, double b, DenseMatrix y) {
+		final double[] x1d = x1.data, x2d = x2.data, yd = y.data;
+		for(int i=0; i<yd.length; i++)
+			yd[i] = a*x1d[i]*x2d[i] + b*yd[i];
+		return y;
+	}
+
+	@Override
+	public double innerWeighted(DenseMatrix a, DenseMatrix w, DenseMatrix b) {
+		final double[] ad = a.data, wd = w.data, bd = b.data;
+		double sum = 0;
+		for(int i=0; i<ad.length; i++)
+			sum += ad[i]*wd[i]*bd[i];
+		return sum;
+	}
+
+	@Override
+	public DenseMatrix fill_inp(DenseMatrix m, double v) {
+		Arrays.fill(m.data, v);
+		return m;
+	}
+
+	@Override
+	public DenseMatrix set_inp(DenseMatrix m, int idx, double v) {
+		m.data[idx] = v;
+		return m;
+	}
+
+	@Override
+	public DenseMatrix set_inp(DenseMatrix m, int row, int col, double v) {
+		m.data[row*m.cols+col] = v;
+		return m;
+	}
+
+	@Override
+	public double get(DenseMatrix m, int idx) {
+		return m.data[idx];
+	}
+
+	@Override
+	public double get(DenseMatrix m, int row, int col) {
+		return m.data[row*m.cols+col];
+	}
+
+	@Override
+	public DenseMatrix copy(DenseMatrix m) {
+		return m.copy();
+	}
+
+	@Override
+	public double[] toArray(DenseMatrix m) {
+		return m.data;
+	}
+
+	@Override
+	public double[][] toArray2D(DenseMatrix m) {
+		double[][] values = new double[m.rows][m.cols];
+		for(int r=0; r<m.rows; r++)
+			System.arraycopy(m.data, r*m.cols, values[r], 0, m.cols);
+		return values;
+	}
+
+	@Override
+	public DenseMatrix elemwise_inp(DenseMatrix m, DoubleUnaryOperator f) {
+		final double[] md = m.data;
+		for(int i=0; i<md.length; i++)
+			md[i] = f.applyAsDouble(md[i]);
+		return m;
+	}
+
+	@Override
+	public DenseMatrix exp_inp(DenseMatrix m) {
+		final double[] md = m.data;
+		for(int i=0; i<md.length; i++)
+			md[i] = Math.exp(md[i]);
+		return m;
+	}
+
+	@Override
+	public DenseMatrix sqrt_inp(DenseMatrix m) {
+		final double[] md = m.data;
+		for(int i=0; i<md.length; i++)
+			md[i] = Math.sqrt(md[i]);
+		return m;
+	}
+
+	@Override
+	public DenseMatrix[] svd(DenseMatrix m, boolean full) {
+		SimpleSVD<SimpleMatrix> svd = SimpleMatrix.wrap(wrap(m).copy()).svd(!full);
+		return new DenseMatrix[] {unwrap(svd.getU().getDDRM()), unwrap(svd.getW().getDDRM()), unwrap(svd.getV().getDDRM())};
+	}
+
+	@Override
+	public DenseMatrix cholesky(DenseMatrix m) {
+		CholeskyDecomposition_F64<DMatrixRMaj> chol = DecompositionFactory_DDRM.chol(false);
+		chol.decompose(wrap(m).copy());
+		return unwrap(chol.getT(null));
+	}
+
+	@Override
+	public DenseMatrix[] symEvd(DenseMatrix m) {
+		EigenDecomposition_F64<DMatrixRMaj> eig = DecompositionFactory_DDRM.eig(true, true);
+		eig.decompose(wrap(m).copy());
+		int n = m.cols;
+		DenseMatrix vectors = new DenseMatrix(n, n);
+		DenseMatrix values = new DenseMatrix(n, n);
+		for(int i=0; i<n; i++) {
+			values.data[i*n+i] = eig.getEigenvalue(i).real;
+			DMatrixRMaj ev = eig.getEigenVector(i);
+			for(int r=0; r<n; r++)
+				vectors.data[r*n+i] = ev.data[r];
+		}
+		return new DenseMatrix[] {vectors, values};
+	}
+
+	@Override
+	public double det(DenseMatrix m) {
+		return CommonOps_DDRM.det(wrap(m));
+	}
+
+	@Override
+	public DenseMatrix pinv(DenseMatrix m) {
+		DenseMatrix result = new DenseMatrix(m.cols, m.rows);
+		ops.pseudoInverse(wrap(m), wrap(result));
+		return result;
+	}
+
+	@Override
+	public DenseMatrix concatHorz(DenseMatrix a, DenseMatrix b) {
+		DenseMatrix c = new DenseMatrix(a.rows, a.cols+b.cols);
+		for(int r=0; r<a.rows; r++) {
+			System.arraycopy(a.data, r*a.cols, c.data, r*c.cols, a.cols);
+			System.arraycopy(b.data, r*b.cols, c.data, r*c.cols+a.cols, b.cols);
+		}
+		return c;
+	}
+
+	@Override
+	public DenseMatrix concatVert(DenseMatrix a, DenseMatrix b) {
+		DenseMatrix c = new DenseMatrix(a.rows+b.rows, a.cols);
+		System.arraycopy(a.data, 0, c.data, 0, a.data.length);
+		System.arraycopy(b.data, 0, c.data, a.data.length, b.data.length);
+		return c;
+	}
+
+	@Override
+	public DenseMatrix getRange(DenseMatrix m, int ra, int rb, int ca, int cb) {
+		DenseMatrix c = new DenseMatrix(rb-ra, cb-ca);
+		for(int r=ra; r<rb; r++)
+			System.arraycopy(m.data, r*m.cols+ca, c.data, (r-ra)*c.cols, c.cols);
+		return c;
+	}
+
+	@Override
+	public DenseMatrix diagV(DenseMatrix m) {
+		if(m.cols != m.rows) {
+			throw new IllegalArgumentException("argument has to be a square matrix");
+		}
+		DenseMatrix v = new DenseMatrix(m.rows, 1);
+		for(int i=0; i<m.rows; i++)
+			v.data[i] = m.data[i*m.cols+i];
+		return v;
+	}
+
+	@Override
+	public DenseMatrix diagM(DenseMatrix v) {
+		if(!(v.cols==1 || v.rows==1)) {
+			throw new IllegalArgumentException("argument has to be a vector");
+		}
+		int n = v.data.length;
+		DenseMatrix m = new DenseMatrix(n, n);
+		for(int i=0; i<n; i++)
+			m.data[i*n+i] = v.data[i];
+		return m;
+	}
+
+	@Override
+	public void copyValues(DenseMatrix src, DenseMatrix target) {
+		System.arraycopy(src.data, 0, target.data, 0, Math.min(src.data.length, target.data.length));
+	}
+
+	@Override
+	public void copyValues(DenseMatrix src, int startSrc, DenseMatrix target, int startTarget, int len) {
+		System.arraycopy(src.data, startSrc, target.data, startTarget, len);
+	}
+
+	@Override
+	public DenseMatrix[] matArray(int n) {
+		return new DenseMatrix[n];
+	}
+
+	@Override
+	public DenseMatrix[][] matArray(int m, int n) {
+		return new DenseMatrix[m][n];
+	}
+
+}
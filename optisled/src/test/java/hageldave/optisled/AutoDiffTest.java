@@ -0,0 +1,154 @@
+package hageldave.optisled;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.generic.autodiff.Dual;
+import hageldave.optisled.generic.autodiff.ForwardDiffFN;
+import hageldave.optisled.generic.autodiff.Tape;
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.numerics.NumericGradient;
+import hageldave.optisled.generic.problem.OptimizationProblem;
+import hageldave.optisled.generic.problem.OptimizationProblemBuilder;
+import hageldave.optisled.generic.problem.ScalarFN.ScalarFNWithGradient;
+import hageldave.optisled.generic.problem.ScalarFN.ScalarFNWithValueAndGradient;
+import hageldave.optisled.generic.solver.AugmentedLagrangian;
+import hageldave.optisled.generic.solver.LogBarrier;
+import hageldave.optisled.primitive.MatCalcPrimitive;
+
+public class AutoDiffTest {
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testForwardDiff(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+		
+		/* rosenbrock f(x) = sum_i 100*(x_i+1 - x_i^2)^2 + (1-x_i)^2 */
+		ForwardDiffFN<M> f = new ForwardDiffFN<>(mc, x->{
+			Dual sum = Dual.constant(0);
+			for(int i=0; i<x.length-1; i++) {
+				sum = sum.add( x[i+1].sub(x[i].square()).square().mul(100) );
+				sum = sum.add( x[i].neg().add(1).square() );
+			}
+			return sum;
+		});
+		M x = mc.rand(5, 1, new Random(3));
+		M exact = f.gradient().evaluate(x);
+		M numeric = new NumericGradient<>(mc, f).central.evaluate(x);
+		for(int i=0; i<mc.numElem(x); i++) {
+			assertEquals(mc.get(numeric, i), mc.get(exact, i), 1e-5);
+		}
+		
+		OptimizationProblem<M> problem = OptimizationProblemBuilder.instance(mc, 5).setObjective(f, null).build();
+		assertSame(f.gradient(), problem.df());
+	}
+	
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testReverseDiff(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+		
+		M A = mc.rand(7, 5, new Random(4));
+		M b = mc.rand(7, 1, new Random(5));
+		/* f(x) = ||Ax-b||^2 + sum(exp(x)) */
+		Tape<M> tape = new Tape<>(mc);
+		Tape<M>.Node x = tape.input(5, 1);
+		Tape<M>.Node r = tape.sub(tape.matmul(tape.constant(A), x), tape.constant(b));
+		ScalarFNWithGradient<M> f = tape.function(tape.add(tape.inner(r, r), tape.sum(tape.exp(x))));
+		
+		for(int k=0; k<3; k++) {
+			M x0 = mc.rand(5, 1, new Random(k));
+			M residual = mc.sub(mc.matmul(A, x0), b);
+			assertEquals(mc.norm2(residual)+mc.sum(mc.exp_inp(mc.copy(x0))), f.evaluate(x0), 1e-12);
+			M exact = f.gradient().evaluate(x0);
+			M numeric = new NumericGradient<>(mc, f).central.evaluate(x0);
+			for(int i=0; i<mc.numElem(x0); i++) {
+				assertEquals(mc.get(numeric, i), mc.get(exact, i), 1e-5);
+			}
+		}
+	}
+	
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testValueAndGradient(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+		
+		/* f(x) = ||x-c||^2 */
+		Tape<M> tape = new Tape<>(mc);
+		Tape<M>.Node x = tape.input(3, 1);
+		Tape<M>.Node r = tape.sub(x, tape.constant(mc.vecOf(1, 2, 3)));
+		ScalarFNWithValueAndGradient<M> f = tape.function(tape.inner(r, r));
+		/* g(x) = x0*x1 + x2 - 1 <= 0 */
+		int[] numConstraintEvaluations = {0};
+		ForwardDiffFN<M> g = new ForwardDiffFN<>(mc, v->{
+			numConstraintEvaluations[0]++;
+			return v[0].mul(v[1]).add(v[2]).sub(1);
+		});
+		OptimizationProblem<M> problem = OptimizationProblemBuilder.instance(mc, 3)
+				.setObjective(f, null)
+				.addIneqConstraint(g, null)
+				.build();
+		
+		M x0 = mc.vecOf(0.1, -0.3, 0.2);
+		M gradOut = mc.zeros(3);
+		List<ScalarFNWithValueAndGradient<M>> fns = Arrays.asList(
+				f, g, LogBarrier.logBarrFN(problem, 0.5, mc), AugmentedLagrangian.augLagrangian(problem, new double[] {0.3}, 2.0, mc));
+		for(ScalarFNWithValueAndGradient<M> fn : fns) {
+			double value = fn.evaluate(x0);
+			M grad = fn.gradient().evaluate(x0);
+			numConstraintEvaluations[0] = 0;
+			assertEquals(value, fn.evaluateWithGradient(x0, gradOut), 1e-12);
+			assertEquals(fn == f ? 0 : 1, numConstraintEvaluations[0]);
+			for(int i=0; i<3; i++) {
+				assertEquals(mc.get(grad, i), mc.get(gradOut, i), 1e-12);
+			}
+		}
+	}
+	
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testAugLagrangianGradient(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+		
+		/* f(x) = ||x-c||^2 s.t. g(x) = x0*x1 + x2 - 1 <= 0 */
+		Tape<M> tape = new Tape<>(mc);
+		Tape<M>.Node x = tape.input(3, 1);
+		Tape<M>.Node r = tape.sub(x, tape.constant(mc.vecOf(1, 2, 3)));
+		ForwardDiffFN<M> g = new ForwardDiffFN<>(mc, v->v[0].mul(v[1]).add(v[2]).sub(1));
+		OptimizationProblem<M> problem = OptimizationProblemBuilder.instance(mc, 3)
+				.setObjective(tape.function(tape.inner(r, r)), null)
+				.addIneqConstraint(g, null)
+				.build();
+		ScalarFNWithValueAndGradient<M> f = AugmentedLagrangian.augLagrangian(problem, new double[] {0.3}, 2.0, mc);
+		
+		// feasible and infeasible (penalized) point
+		M gradOut = mc.zeros(3);
+		for(M x0 : Arrays.asList(mc.vecOf(0.1, -0.3, 0.2), mc.vecOf(1.5, 0.8, 0.7))) {
+			M numeric = new NumericGradient<>(mc, f).central.evaluate(x0);
+			M exact = f.gradient().evaluate(x0);
+			f.evaluateWithGradient(x0, gradOut);
+			for(int i=0; i<3; i++) {
+				assertEquals(mc.get(numeric, i), mc.get(exact, i), 1e-5);
+				assertEquals(mc.get(numeric, i), mc.get(gradOut, i), 1e-5);
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,108 @@
+package hageldave.optisled;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Random;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.numerics.NumericGradient;
+import hageldave.optisled.generic.problem.CachedFN;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.solver.GradientDescent;
+import hageldave.optisled.primitive.MatCalcPrimitive;
+
+public class CachedFNTest {
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testCachedEvaluations(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+
+		M transform = mc.rand(5, 5, new Random(1));
+		int[] numEvaluations = {0};
+		ScalarFN<M> fx = x->{
+			numEvaluations[0]++;
+			return mc.inner(x, mc.matmul(transform, x)) + mc.norm2(x);
+		};
+		NumericGradient<M> dfx = new NumericGradient<>(mc, fx);
+		M x = mc.rand(5, 1, new Random(2));
+
+		GradientDescent<M> gd = new GradientDescent<>(mc);
+		gd.hyperparams.set(GradientDescent.PARAM_EVALUATION_CACHE_SIZE, 0);
+		M argminUncached = gd.arg_min(fx, dfx, x);
+		int numUncached = numEvaluations[0];
+
+		numEvaluations[0] = 0;
+		gd.hyperparams.set(GradientDescent.PARAM_EVALUATION_CACHE_SIZE, 4);
+		M argminCached = gd.arg_min(fx, dfx, x);
+		int numCached = numEvaluations[0];
+
+		for(int i=0; i<mc.numElem(x); i++) {
+			assertEquals(mc.get(argminUncached, i), mc.get(argminCached, i), 0.0);
+		}
+		// value at the accepted probe is reused by the numeric gradient in each iteration
+		assertTrue(numCached < numUncached, numCached + " < " + numUncached);
+
+		CachedFN<M> cached = new CachedFN<>(mc, fx, dfx, 2);
+		numEvaluations[0] = 0;
+		double value = cached.evaluate(mc.copy(x));
+		M gradient = cached.gradient().evaluate(mc.copy(x));
+		M gradOut = mc.zeros(5);
+		assertEquals(value, cached.evaluateWithGradient(mc.copy(x), gradOut), 0.0);
+		// one value and 5 perturbed points for the gradient
+		assertEquals(1+5, numEvaluations[0]);
+		for(int i=0; i<mc.numElem(x); i++) {
+			assertEquals(mc.get(gradient, i), mc.get(gradOut, i), 0.0);
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testReentrantEvaluation(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+
+		int[] numEvaluations = {0};
+		ScalarFN<M> fx = x->{
+			numEvaluations[0]++;
+			return mc.norm2(x);
+		};
+		CachedFN<M> cached = new CachedFN<>(mc, fx, new NumericGradient<>(mc, fx), 2);
+		M x = mc.vecOf(1, 2, 3);
+		M gradOut = mc.zeros(3);
+
+		// the numeric gradient evaluates the value at x through the cache, which inserts x
+		M gradient = cached.gradient().evaluate(mc.copy(x));
+		assertEquals(1+3, numEvaluations[0]);
+		// value and gradient of x are held in a single slot
+		assertEquals(mc.norm2(x), cached.evaluateWithGradient(mc.copy(x), gradOut), 0.0);
+		assertEquals(1+3, numEvaluations[0]);
+		assertEquals(1, cached.numHits);
+		for(int i=0; i<3; i++)
+			assertEquals(mc.get(gradient, i), mc.get(gradOut, i), 0.0);
+		// so a second point does not evict x
+		M y = mc.vecOf(3, 2, 1);
+		cached.evaluate(y);
+		assertEquals(mc.norm2(x), cached.evaluateWithGradient(mc.copy(x), gradOut), 0.0);
+		assertEquals(1+3+1, numEvaluations[0]);
+
+		// missing gradient of a cached value, evaluated with its base value from the cache
+		cached.clear();
+		numEvaluations[0] = 0;
+		cached.evaluate(mc.copy(x));
+		assertEquals(mc.norm2(x), cached.evaluateWithGradient(mc.copy(x), gradOut), 0.0);
+		cached.evaluate(y);
+		assertEquals(mc.norm2(x), cached.evaluateWithGradient(mc.copy(x), gradOut), 0.0);
+		assertEquals(1+3+1, numEvaluations[0]);
+	}
+
+}
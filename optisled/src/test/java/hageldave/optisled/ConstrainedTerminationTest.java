@@ -0,0 +1,125 @@
+package hageldave.optisled;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.OptimizationProblem;
+import hageldave.optisled.generic.problem.OptimizationProblemBuilder;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.solver.AugmentedLagrangian;
+import hageldave.optisled.generic.solver.LogBarrier;
+import hageldave.optisled.primitive.MatCalcPrimitive;
+
+public class ConstrainedTerminationTest {
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testAugLagrangianEarlyTermination(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+
+		M transform = mc.eye(2, 0.2);
+		M translate = mc.vecOf(3.2, -5);
+		ScalarFN<M> fx = x->{
+			/* f(x) = (x-a)^T B (x-a) */
+			x = mc.sub(x,translate);
+			return mc.inner(x, mc.matmul(transform, x));
+		};
+		// boundary constraint allowing only x-2 < 0 == x < 2
+		ScalarFN.ScalarFNWithGradient<M> boundary = ScalarFN.linear(mc, mc.vecOf(1.0, 0.0), -2.0);
+		OptimizationProblem<M> problem = OptimizationProblemBuilder.instance(mc, 2)
+				.setObjective(fx, null)
+				.addIneqConstraint(boundary, null)
+				.build();
+
+		// KKT test
+		AugmentedLagrangian<M> augl = new AugmentedLagrangian<>(mc);
+		M argmin = augl.arg_min(problem, mc.vecOf(0, 0));
+		assertTrue(augl.numIterationsOnTermination < 20, ""+augl.numIterationsOnTermination);
+		assertEquals(0.0, boundary.evaluate(argmin), 1e-5, Arrays.toString(mc.toArray(argmin)));
+		assertEquals(boundary.evaluate(translate), mc.dist(argmin,translate), 1e-5, Arrays.toString(mc.toArray(argmin)));
+
+		// change test
+		augl.kktTolerance = 0;
+		argmin = augl.arg_min(problem, mc.vecOf(0, 0));
+		assertTrue(augl.numIterationsOnTermination < 30, ""+augl.numIterationsOnTermination);
+		assertEquals(0.0, boundary.evaluate(argmin), 1e-5, Arrays.toString(mc.toArray(argmin)));
+		assertEquals(boundary.evaluate(translate), mc.dist(argmin,translate), 1e-5, Arrays.toString(mc.toArray(argmin)));
+	}
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testLogBarrierGapTermination(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+
+		M transform = mc.eye(2, 0.2);
+		M translate = mc.vecOf(3.2, -5);
+		ScalarFN<M> fx = x->{
+			/* f(x) = (x-a)^T B (x-a) */
+			x = mc.sub(x,translate);
+			return mc.inner(x, mc.matmul(transform, x));
+		};
+		// boundary constraint allowing only x-2 < 0 == x < 2
+		ScalarFN.ScalarFNWithGradient<M> boundary = ScalarFN.linear(mc, mc.vecOf(1.0, 0.0), -2.0);
+		OptimizationProblem<M> problem = OptimizationProblemBuilder.instance(mc, 2)
+				.setObjective(fx, null)
+				.addIneqConstraint(boundary, null)
+				.build();
+
+		LogBarrier<M> lb = new LogBarrier<>(mc);
+		M argmin = lb.arg_min(problem, mc.vecOf(0, 0));
+		// stops after iteration k=23, the first with mu = 8*0.5^k < 1e-6
+		assertEquals(24, lb.numIterationsOnTermination);
+		assertEquals(0.0, boundary.evaluate(argmin), 1e-5, Arrays.toString(mc.toArray(argmin)));
+		assertEquals(boundary.evaluate(translate), mc.dist(argmin,translate), 1e-5, Arrays.toString(mc.toArray(argmin)));
+
+		// looser tolerance stops earlier with a less accurate solution
+		lb.dualityGapTolerance = 1e-3;
+		argmin = lb.arg_min(problem, mc.vecOf(0, 0));
+		assertEquals(14, lb.numIterationsOnTermination);
+		assertEquals(0.0, boundary.evaluate(argmin), 1e-2, Arrays.toString(mc.toArray(argmin)));
+	}
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testLogBarrierChangeTermination(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+
+		M transform = mc.eye(2, 0.2);
+		M translate = mc.vecOf(3.2, -5);
+		ScalarFN<M> fx = x->{
+			/* f(x) = (x-a)^T B (x-a) */
+			x = mc.sub(x,translate);
+			return mc.inner(x, mc.matmul(transform, x));
+		};
+		// boundary constraint allowing only x-2 < 0 == x < 2
+		ScalarFN.ScalarFNWithGradient<M> boundary = ScalarFN.linear(mc, mc.vecOf(1.0, 0.0), -2.0);
+		OptimizationProblem<M> problem = OptimizationProblemBuilder.instance(mc, 2)
+				.setObjective(fx, null)
+				.addIneqConstraint(boundary, null)
+				.build();
+
+		LogBarrier<M> lb = new LogBarrier<>(mc);
+		lb.dualityGapTolerance = 0;
+		M argmin = lb.arg_min(problem, mc.vecOf(0, 0));
+		// stops once mu no longer moves the solution by more than the inner accuracy
+		assertTrue(lb.numIterationsOnTermination > 24, ""+lb.numIterationsOnTermination);
+		assertTrue(lb.numIterationsOnTermination < 40, ""+lb.numIterationsOnTermination);
+		assertEquals(0.0, boundary.evaluate(argmin), 1e-6, Arrays.toString(mc.toArray(argmin)));
+		assertEquals(boundary.evaluate(translate), mc.dist(argmin,translate), 1e-6, Arrays.toString(mc.toArray(argmin)));
+	}
+
+}
@@ -0,0 +1,125 @@
+package hageldave.optisled;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.numerics.NumericGradient;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.solver.DescentResult;
+import hageldave.optisled.generic.solver.GradientDescent;
+import hageldave.optisled.history.DescentLog;
+import hageldave.optisled.primitive.MatCalcPrimitive;
+
+public class DescentLogTest {
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testDescentLog(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+
+		M transform = mc.matOf(2, 2.0,0.2,0.4,1.0);
+		M translate = mc.vecOf(3.2, -5);
+		ScalarFN<M> fx = x->{
+			/* f(x) = (x-a)^T B (x-a) */
+			x = mc.sub(x,translate);
+			return mc.inner(x, mc.matmul(transform, x));
+		};
+		NumericGradient<M> dfx = new NumericGradient<>(mc, fx);
+
+		GradientDescent<M> gd = new GradientDescent<>(mc);
+		DescentLog log = new DescentLog(8, 3);
+		DescentResult<M> result = gd.minimize(fx, dfx, mc.vecOf(0, 0), log);
+
+		// iterations plus final position, every 3rd recorded, last 8 records kept
+		long n = result.numIterations+1;
+		assertEquals(n, log.numIterations());
+		assertEquals(Math.min(8, (n+2)/3), log.size());
+		assertEquals(2, log.dimension());
+		double[] pos = new double[2];
+		for(int i=0; i<log.size(); i++) {
+			long iteration = log.getIteration(i);
+			assertEquals(0, iteration%3);
+			assertEquals(fx.evaluate(mc.vecOf(log.getPosition(i, pos))), log.getLoss(i), 1e-12);
+			if(i > 0)
+				assertTrue(log.getLoss(i) <= log.getLoss(i-1));
+		}
+		assertEquals((n-1)/3*3, log.getIteration(log.size()-1));
+		assertTrue(log.getStepSize(0) > 0);
+	}
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testPositionHook(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+
+		// all position overloads end up in the hook, recorded or not
+		List<double[]> positions = new ArrayList<>();
+		DescentLog log = new DescentLog(4, 2) {
+			@Override
+			protected void position(double[] values, int n) {
+				positions.add(Arrays.copyOf(values, n));
+				super.position(values, n);
+			}
+		};
+		log.position(mc, mc.vecOf(1, 2));
+		log.position(new double[] {3, 4});
+		log.position(mc, mc.vecOf(5, 6));
+		assertEquals(3, positions.size());
+		assertArrayEquals(new double[] {1, 2}, positions.get(0));
+		assertArrayEquals(new double[] {3, 4}, positions.get(1));
+		assertArrayEquals(new double[] {5, 6}, positions.get(2));
+		assertEquals(3, log.numIterations());
+		assertEquals(2, log.size());
+		assertArrayEquals(new double[] {5, 6}, log.getPosition(1, new double[2]));
+	}
+
+	@Test
+	public void testGrowingBuffers() {
+		// buffers grow while records are written, then wrap around
+		DescentLog log = new DescentLog(100, 1);
+		double[] pos = new double[3];
+		for(int i=0; i<250; i++) {
+			log.position(new double[] {i, -i, 2*i});
+			log.direction(new double[] {1, 2, 3});
+			log.loss(i);
+			assertEquals(Math.min(i+1, 100), log.size());
+			assertArrayEquals(new double[] {i, -i, 2*i}, log.getPosition(log.size()-1, pos));
+		}
+		for(int i=0; i<log.size(); i++) {
+			assertEquals(150+i, log.getIteration(i));
+			assertEquals(150+i, log.getLoss(i));
+			assertArrayEquals(new double[] {150+i, -150-i, 300+2*i}, log.getPosition(i, pos));
+			assertArrayEquals(new double[] {1, 2, 3}, log.getDirection(i, pos));
+		}
+		// a large default log does not reserve all records upfront
+		DescentLog large = new DescentLog();
+		large.position(new double[1_000_000]);
+		assertEquals(1, large.size());
+	}
+
+	@Test
+	public void testCapacityOverflow() {
+		// capacity*dim exceeds the maximum array length
+		DescentLog log = new DescentLog(1 << 20, 1);
+		assertThrows(IllegalArgumentException.class, ()->log.position(new double[1 << 12]));
+		assertThrows(IllegalArgumentException.class, ()->new DescentLog(1 << 20, 1, 1 << 12));
+	}
+
+}
@@ -0,0 +1,186 @@
+package hageldave.optisled;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import hageldave.optisled.generic.solver.HogwildSGD;
+import hageldave.optisled.history.DescentLog;
+
+public class HogwildSGDTest {
+
+	/** sparse least squares f(x) = sum_i (a_i'x - b_i)^2, each a_i with 3 non-zeros */
+	static class SparseLeastSquares implements HogwildSGD.SparseTermFN {
+		final int n, dim;
+		final double[] solution;
+		final int[][] idx;
+		final double[][] val;
+		final double[] b;
+
+		SparseLeastSquares(int n, int dim, long seed) {
+			this.n = n;
+			this.dim = dim;
+			Random rnd = new Random(seed);
+			solution = rnd.doubles(dim, -1, 1).toArray();
+			idx = new int[n][3];
+			val = new double[n][3];
+			b = new double[n];
+			for(int i=0; i<n; i++) {
+				for(int k=0; k<3; k++) {
+					idx[i][k] = rnd.nextInt(dim);
+					val[i][k] = rnd.nextDouble()+0.5;
+					b[i] += val[i][k]*solution[idx[i][k]];
+				}
+			}
+		}
+
+		@Override
+		public int numTerms() {
+			return n;
+		}
+
+		@Override
+		public double evaluate(int i, double[] x, HogwildSGD.SparseGradient grad) {
+			double r = -b[i];
+			for(int k=0; k<3; k++)
+				r += val[i][k]*x[idx[i][k]];
+			if(grad != null)
+				for(int k=0; k<3; k++)
+					grad.add(idx[i][k], 2*r*val[i][k]);
+			return r*r;
+		}
+	}
+
+	@Test
+	public void testHogwildSGD() {
+		int n = 5000, dim = 50;
+		SparseLeastSquares lsq = new SparseLeastSquares(n, dim, 1);
+		// every worker waits on its first update until all workers started,
+		// which only passes when they run at the same time (also on a single core)
+		CountDownLatch allStarted = new CountDownLatch(4);
+		ThreadLocal<Boolean> started = ThreadLocal.withInitial(()->false);
+		boolean[] concurrent = {true};
+		HogwildSGD.SparseTermFN f = new HogwildSGD.SparseTermFN() {
+			@Override
+			public int numTerms() {
+				return n;
+			}
+			@Override
+			public double evaluate(int i, double[] x, HogwildSGD.SparseGradient grad) {
+				if(grad != null && !started.get()) {
+					started.set(true);
+					allStarted.countDown();
+					try {
+						if(!allStarted.await(10, TimeUnit.SECONDS))
+							concurrent[0] = false;
+					} catch (InterruptedException e) {
+						concurrent[0] = false;
+					}
+				}
+				return lsq.evaluate(i, x, grad);
+			}
+		};
+
+		HogwildSGD sgd = new HogwildSGD();
+		sgd.parallelism = 4;
+		sgd.stepSize = 0.05;
+		sgd.maxEpochs = 50;
+		sgd.lossTolerance = 0;
+		sgd.rand = new Random(2);
+		DescentLog log = new DescentLog();
+		HogwildSGD.Result result = sgd.arg_min(f, new double[dim], log);
+		assertTrue(concurrent[0], "workers did not run concurrently");
+		// without loss tolerance every worker completes all epochs
+		assertEquals(50, result.numEpochs);
+		assertEquals(4L*50*(n/4), result.numUpdates);
+		assertTrue(result.loss < 1e-6, ""+result.loss);
+		assertArrayEquals(lsq.solution, result.argmin, 1e-3);
+		// monitor logged initial and final loss at least
+		assertTrue(log.size() >= 2);
+		assertEquals(result.loss, log.getLoss(log.size()-1), 0.0);
+
+		// stopped by monitor when loss stagnates
+		sgd.lossTolerance = 1e-2;
+		sgd.maxEpochs = 100000;
+		result = sgd.arg_min(lsq, new double[dim], null);
+		assertTrue(result.converged);
+		assertTrue(result.numEpochs < 100000);
+	}
+
+	@Test
+	public void testMonitorWaitsForSlowestWorker() {
+		int n = 20, dim = 10;
+		SparseLeastSquares lsq = new SparseLeastSquares(n, dim, 1);
+		// the worker that updates first is 10 times slower than the other one
+		Thread[] slowThread = {null};
+		HogwildSGD.SparseTermFN f = new HogwildSGD.SparseTermFN() {
+			@Override
+			public int numTerms() {
+				return n;
+			}
+			@Override
+			public double evaluate(int i, double[] x, HogwildSGD.SparseGradient grad) {
+				if(grad != null) {
+					synchronized (slowThread) {
+						if(slowThread[0] == null)
+							slowThread[0] = Thread.currentThread();
+					}
+					try {
+						Thread.sleep(slowThread[0] == Thread.currentThread() ? 10 : 1);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return lsq.evaluate(i, x, grad);
+			}
+		};
+
+		HogwildSGD sgd = new HogwildSGD();
+		sgd.parallelism = 2;
+		sgd.maxEpochs = 3;
+		sgd.lossTolerance = 0;
+		sgd.monitorIntervalMillis = 1;
+		sgd.rand = new Random(2);
+		DescentLog log = new DescentLog();
+		HogwildSGD.Result result = sgd.arg_min(f, new double[dim], log);
+		assertEquals(3, result.numEpochs);
+		// initial loss, at most one check per epoch of the slowest worker, final loss
+		assertTrue(log.size() <= result.numEpochs+2, ""+log.size());
+	}
+
+	@Test
+	public void testPoolTooSmall() throws Exception {
+		SparseLeastSquares lsq = new SparseLeastSquares(100, 10, 1);
+		HogwildSGD sgd = new HogwildSGD();
+		sgd.parallelism = 4;
+		sgd.maxEpochs = 2;
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			sgd.pool = pool;
+			assertEquals(2, sgd.arg_min(lsq, new double[10], null).numEpochs);
+			// called from within the pool, the calling thread is needed for the monitor
+			assertThrows(IllegalArgumentException.class, ()->{
+				try {
+					pool.submit(()->sgd.arg_min(lsq, new double[10], null)).get();
+				} catch (java.util.concurrent.ExecutionException e) {
+					throw e.getCause();
+				}
+			});
+			sgd.parallelism = 3;
+			assertEquals(2, pool.submit(()->sgd.arg_min(lsq, new double[10], null)).get().numEpochs);
+			sgd.parallelism = 5;
+			assertThrows(IllegalArgumentException.class, ()->sgd.arg_min(lsq, new double[10], null));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,190 @@
+package hageldave.optisled;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.numerics.NumericGradient;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.problem.VectorFN;
+import hageldave.optisled.generic.solver.DescentAlgorithm;
+import hageldave.optisled.generic.solver.DescentResult;
+import hageldave.optisled.generic.solver.GradientDescent;
+import hageldave.optisled.generic.solver.Hyperparams;
+import hageldave.optisled.generic.solver.LBFGS;
+import hageldave.optisled.generic.solver.MultiStart;
+import hageldave.optisled.history.DescentLog;
+import hageldave.optisled.primitive.MatCalcPrimitive;
+
+public class HyperparamsTest {
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testSharedSolver(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+
+		M transform = mc.matOf(2, 2.0,0.2,0.4,1.0);
+		M translate = mc.vecOf(3.2, -5);
+		ScalarFN<M> fx = x->{
+			/* f(x) = (x-a)^T B (x-a) */
+			x = mc.sub(x,translate);
+			return mc.inner(x, mc.matmul(transform, x));
+		};
+		NumericGradient<M> dfx = new NumericGradient<>(mc, fx);
+
+		LBFGS<M> lbfgs = new LBFGS<>(mc);
+		lbfgs.hyperparams = lbfgs.hyperparams.frozen();
+		assertThrows(UnsupportedOperationException.class, ()->lbfgs.hyperparams.set(LBFGS.PARAM_MAX_ITERATIONS, 1));
+
+		List<DescentResult<M>> results = MultiStart.randomStarts(mc, 16, 2, -10, 10, 3)
+				.parallelStream()
+				.map(init->lbfgs.minimize(fx, dfx, init))
+				.collect(Collectors.toList());
+		for(DescentResult<M> r : results) {
+			M diff = mc.sub(r.argmin, translate);
+			assertEquals(0.0, mc.get(diff, 0), 1e-4, r.toString());
+			assertEquals(0.0, mc.get(diff, 1), 1e-4, r.toString());
+			assertEquals(r.loss, fx.evaluate(r.argmin), 1e-12);
+			assertNotEquals(DescentResult.Termination.MAX_ITERATIONS, r.termination);
+			assertTrue(r.numIterations > 0 && r.numFunctionEvaluations > r.numIterations, r.toString());
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testLegacySolver(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+
+		M translate = mc.vecOf(3.2, -5);
+		ScalarFN<M> fx = x->mc.norm2(mc.sub(x,translate));
+		NumericGradient<M> dfx = new NumericGradient<>(mc, fx);
+
+		// solver implementing only arg_min, as before minimize was declared
+		GradientDescent<M> gd = new GradientDescent<>(mc);
+		DescentAlgorithm<M> legacy = new DescentAlgorithm<M>() {
+			@Override
+			public M arg_min(ScalarFN<M> f, VectorFN<M> df, M initialGuess, DescentLog log) {
+				return gd.arg_min(f, df, initialGuess, log);
+			}
+			@Override
+			public Hyperparams getHyperparams() {
+				return gd.getHyperparams();
+			}
+			@Override
+			public void setHyperparams(Hyperparams params) {
+				gd.setHyperparams(params);
+			}
+			@Override
+			public double getLoss() {
+				return gd.getLoss();
+			}
+		};
+		DescentResult<M> r = legacy.minimize(fx, dfx, mc.vecOf(0, 0));
+		assertEquals(0.0, mc.dist(r.argmin, translate), 1e-4, r.toString());
+		assertEquals(fx.evaluate(r.argmin), r.loss, 1e-12);
+		assertEquals(DescentResult.Termination.UNKNOWN, r.termination);
+		assertEquals(-1, r.numIterations);
+	}
+
+	@Test
+	public void testFrozenSnapshotAcrossThreads() {
+		Hyperparams hp = new Hyperparams();
+		hp.set(GradientDescent.KEY_MAX_ITERATIONS, 250);
+		hp.set("custom", "value");
+		// snapshots are created and handed over concurrently, readers see a complete copy
+		AtomicReference<Hyperparams> shared = new AtomicReference<>();
+		IntStream.range(0, 1000).parallel().forEach(i->{
+			Hyperparams frozen = shared.updateAndGet(h->h == null || i%10 == 0 ? hp.frozen() : h);
+			assertTrue(frozen.isFrozen());
+			assertEquals(250, frozen.get(GradientDescent.KEY_MAX_ITERATIONS));
+			assertEquals(250, (int)frozen.get(GradientDescent.PARAM_MAX_ITERATIONS));
+			assertEquals("value", frozen.get("custom"));
+			assertTrue(frozen.has(GradientDescent.KEY_MAX_ITERATIONS) && frozen.has("custom"));
+		});
+		assertTrue(hp.frozen() == hp.frozen().frozen());
+		assertThrows(UnsupportedOperationException.class, ()->hp.frozen().set("custom", "other"));
+	}
+
+	@Test
+	public void testTypedHyperparams() {
+		Hyperparams hp = new GradientDescent.HyperparamsGD();
+		// set by name, read typed and vice versa
+		hp.set(GradientDescent.PARAM_MAX_ITERATIONS, 250.0);
+		assertEquals(250, hp.get(GradientDescent.KEY_MAX_ITERATIONS));
+		assertEquals(250, (int)hp.getOrDefault(GradientDescent.PARAM_MAX_ITERATIONS, 100));
+		hp.set(GradientDescent.KEY_STEP_DECR, 0.25);
+		assertEquals(0.25, (double)hp.get(GradientDescent.PARAM_STEP_DECR));
+		// keys of other solvers with the same name refer to the same parameter
+		assertEquals(250, hp.get(LBFGS.KEY_MAX_ITERATIONS));
+		assertEquals(1e-4, new Hyperparams().get(LBFGS.KEY_LINESEARCH_FACTOR));
+		// misconfiguration fails when set
+		assertThrows(IllegalArgumentException.class, ()->hp.set(GradientDescent.PARAM_MAX_ITERATIONS, 2.5));
+		assertThrows(IllegalArgumentException.class, ()->hp.set(GradientDescent.PARAM_STEP_DECR, 1.5));
+		assertThrows(IllegalArgumentException.class, ()->hp.set(GradientDescent.PARAM_INIT_STEPSIZE, "1.0"));
+		assertThrows(IllegalArgumentException.class, ()->hp.set(GradientDescent.KEY_EVALUATION_CACHE_SIZE, -1));
+		assertThrows(IllegalArgumentException.class, ()->new Hyperparams.IntKey(GradientDescent.PARAM_STEP_DECR, 1, 0, 1));
+		assertEquals(250, hp.get(GradientDescent.KEY_MAX_ITERATIONS));
+		// frozen snapshot is reused until a parameter changes
+		Hyperparams frozen = hp.frozen();
+		assertTrue(frozen == hp.frozen());
+		hp.set(GradientDescent.KEY_MAX_ITERATIONS, 10);
+		assertTrue(frozen != hp.frozen());
+		assertEquals(250, frozen.get(GradientDescent.KEY_MAX_ITERATIONS));
+	}
+
+	@Test
+	public void testSetBeforeKeyDeclared() throws Exception {
+		// load the library in an isolated class loader, so that the solver class is not initialized yet
+		URL classes = Hyperparams.class.getProtectionDomain().getCodeSource().getLocation();
+		try(URLClassLoader loader = new URLClassLoader(new URL[] {classes}, ClassLoader.getSystemClassLoader().getParent())) {
+			Class<?> hyperparams = loader.loadClass(Hyperparams.class.getName());
+			Method set = hyperparams.getMethod("set", String.class, Object.class);
+			Method frozen = hyperparams.getMethod("frozen");
+			Object hp = hyperparams.getDeclaredConstructor().newInstance();
+			Object valid = hyperparams.getDeclaredConstructor().newInstance();
+			// no key declared yet, stored by name
+			set.invoke(hp, GradientDescent.PARAM_MAX_ITERATIONS, 2.5);
+			set.invoke(valid, GradientDescent.PARAM_MAX_ITERATIONS, 20.0);
+			assertEquals(2.5, (double)hyperparams.getMethod("get", String.class).invoke(hp, GradientDescent.PARAM_MAX_ITERATIONS));
+
+			// declaring the keys, misconfiguration fails when frozen (as solvers do before they start) or read
+			Class<?> gd = Class.forName(GradientDescent.class.getName(), true, loader);
+			InvocationTargetException e = assertThrows(InvocationTargetException.class, ()->frozen.invoke(hp));
+			assertTrue(e.getCause() instanceof IllegalArgumentException, e.getCause().toString());
+			Object key = gd.getField("KEY_MAX_ITERATIONS").get(null);
+			Method get = hyperparams.getMethod("get", key.getClass());
+			e = assertThrows(InvocationTargetException.class, ()->get.invoke(hp, key));
+			assertTrue(e.getCause() instanceof IllegalArgumentException, e.getCause().toString());
+			// valid values are converted to the key's type
+			assertEquals(20, get.invoke(frozen.invoke(valid), key));
+			// freezing does not modify the source, which may be read concurrently
+			Field paramMap = hyperparams.getDeclaredField("paramMap");
+			paramMap.setAccessible(true);
+			assertTrue(((Map<?,?>) paramMap.get(valid)).containsKey(GradientDescent.PARAM_MAX_ITERATIONS));
+			assertEquals(20, (int)hyperparams.getMethod("get", String.class).invoke(valid, GradientDescent.PARAM_MAX_ITERATIONS));
+		}
+	}
+
+}
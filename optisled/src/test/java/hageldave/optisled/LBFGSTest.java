@@ -0,0 +1,159 @@
+package hageldave.optisled;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.problem.VectorFN;
+import hageldave.optisled.generic.solver.BacktrackingLineSearch;
+import hageldave.optisled.generic.solver.LBFGS;
+import hageldave.optisled.history.DescentLog;
+import hageldave.optisled.primitive.MatCalcPrimitive;
+
+public class LBFGSTest {
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testRosenbrockLBFGS(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+
+		/* f(x,y) = (1-x)^2 + 100(y-x^2)^2 */
+		ScalarFN<M> fx = x->{
+			double a = mc.get(x, 0), b = mc.get(x, 1);
+			return (1-a)*(1-a) + 100*(b-a*a)*(b-a*a);
+		};
+		VectorFN<M> dfx = x->{
+			double a = mc.get(x, 0), b = mc.get(x, 1);
+			return mc.vecOf(-2*(1-a) - 400*a*(b-a*a), 200*(b-a*a));
+		};
+
+		LBFGS<M> lbfgs = new LBFGS<>(mc);
+		M argmin = lbfgs.arg_min(fx, dfx, mc.vecOf(-1.2, 1.0), null);
+
+		assertEquals(1.0, mc.get(argmin, 0), 1e-5, Arrays.toString(mc.toArray(argmin)));
+		assertEquals(1.0, mc.get(argmin, 1), 1e-5, Arrays.toString(mc.toArray(argmin)));
+
+		// also converges with backtracking instead of strong Wolfe line search
+		lbfgs.lineSearch = new BacktrackingLineSearch<>(mc);
+		argmin = lbfgs.arg_min(fx, dfx, mc.vecOf(-1.2, 1.0), null);
+
+		assertEquals(1.0, mc.get(argmin, 0), 1e-5, Arrays.toString(mc.toArray(argmin)));
+		assertEquals(1.0, mc.get(argmin, 1), 1e-5, Arrays.toString(mc.toArray(argmin)));
+	}
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testRejectedCurvaturePair(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+
+		/* f(x,y) = x^4 - 3x^2 + x + y^4 - 3y^2 + y, non-convex for |x| or |y| < 1/sqrt(2) */
+		ScalarFN<M> fx = x->{
+			double sum = 0;
+			for(int i=0; i<2; i++) {
+				double v = mc.get(x, i);
+				sum += v*v*v*v - 3*v*v + v;
+			}
+			return sum;
+		};
+		VectorFN<M> dfx = x->mc.vecOf(
+				4*Math.pow(mc.get(x, 0), 3) - 6*mc.get(x, 0) + 1,
+				4*Math.pow(mc.get(x, 1), 3) - 6*mc.get(x, 1) + 1);
+
+		// backtracking does not enforce the curvature condition, so pairs get rejected in the non-convex region
+		int historySize = 2;
+		LBFGS<M> lbfgs = new LBFGS<>(mc);
+		lbfgs.lineSearch = new BacktrackingLineSearch<>(mc);
+		lbfgs.hyperparams.set(LBFGS.KEY_HISTORY_SIZE, historySize);
+		DescentLog log = new DescentLog(10_000, 1);
+		lbfgs.minimize(fx, dfx, mc.vecOf(2.5, 0.1), log);
+
+		// replay the descent with a reference two-loop recursion over the accepted pairs only
+		int n = log.size();
+		double[][] xs = new double[n][2];
+		double[][] gs = new double[n][];
+		for(int k=0; k<n; k++) {
+			log.getPosition(k, xs[k]);
+			gs[k] = mc.toArray(mc.copy(dfx.evaluate(mc.vecOf(xs[k]))));
+		}
+		double[][] s = new double[historySize][];
+		double[][] y = new double[historySize][];
+		double[] rho = new double[historySize];
+		int count = 0, newest = -1, numRejectedWhileFull = 0;
+		double[] direction = new double[2];
+		for(int k=0; k<n-1; k++) {
+			double[] d = twoLoop(gs[k], s, y, rho, count, newest);
+			if(!(dot(gs[k], d) < 0)) {
+				count = 0;
+				d = twoLoop(gs[k], s, y, rho, count, newest);
+			}
+			assertArrayEquals(d, log.getDirection(k, direction), 1e-9*norm(d), "iteration " + k);
+
+			double[] sk = {xs[k+1][0]-xs[k][0], xs[k+1][1]-xs[k][1]};
+			double[] yk = {gs[k+1][0]-gs[k][0], gs[k+1][1]-gs[k][1]};
+			double sy = dot(sk, yk);
+			if(sy > 1e-10*dot(yk, yk)) {
+				newest = (newest+1)%historySize;
+				s[newest] = sk;
+				y[newest] = yk;
+				rho[newest] = 1.0/sy;
+				count = Math.min(count+1, historySize);
+			} else if(count == historySize) {
+				numRejectedWhileFull++;
+			}
+		}
+		assertTrue(numRejectedWhileFull > 0, "no pair was rejected while the history was full");
+	}
+
+	/** d = -H*g of L-BFGS, normalized steepest descent without curvature information */
+	static double[] twoLoop(double[] g, double[][] s, double[][] y, double[] rho, int count, int newest) {
+		int m = s.length;
+		double[] d = g.clone();
+		double[] alpha = new double[m];
+		for(int k=0; k<count; k++) {
+			int i = Math.floorMod(newest-k, m);
+			alpha[i] = rho[i]*dot(s[i], d);
+			axpy(-alpha[i], y[i], d);
+		}
+		double scale = count > 0 ? 1.0/(rho[newest]*dot(y[newest], y[newest])) : 1.0/norm(g);
+		for(int j=0; j<d.length; j++)
+			d[j] *= scale;
+		for(int k=count-1; k>=0; k--) {
+			int i = Math.floorMod(newest-k, m);
+			double beta = rho[i]*dot(y[i], d);
+			axpy(alpha[i]-beta, s[i], d);
+		}
+		for(int j=0; j<d.length; j++)
+			d[j] = -d[j];
+		return d;
+	}
+
+	static double dot(double[] a, double[] b) {
+		double sum = 0;
+		for(int i=0; i<a.length; i++)
+			sum += a[i]*b[i];
+		return sum;
+	}
+
+	static double norm(double[] a) {
+		return Math.sqrt(dot(a, a));
+	}
+
+	static void axpy(double a, double[] x, double[] y) {
+		for(int i=0; i<y.length; i++)
+			y[i] += a*x[i];
+	}
+
+}
@@ -4,7 +4,10 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.ejml.MatCalcEJMLF32;
+import hageldave.optisled.primitive.MatCalcPrimitive;
 import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.numerics.SparseVec;
 
 import java.lang.reflect.InvocationTargetException;
 
@@ -13,7 +16,7 @@ import static org.junit.jupiter.api.Assertions.*;
 public class MatCalcTest {
 
 	@ParameterizedTest
-	@ValueSource(classes = {MatCalcEJML.class})
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class, MatCalcEJMLF32.class})
 	public <M> void testMatCalc(Class<MatCalc<M>> implementation)
 			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
 	{
@@ -63,10 +66,38 @@ public class MatCalcTest {
 		M mult = mc.mult_ab(rot, inverse);
 		M diag = mc.diagV(mult);
 		M zero = mc.sub(mult,mc.diagM(diag));
+		// rounding errors of single precision backend exceed 1e-10
+		double tol = Math.max(1e-10, 16*mc.machineEpsilon());
 		for(int i=0; i<mc.numElem(zero); i++)
-			assertEquals(0.0, mc.get(zero,i), 1e-10, "i="+i);
+			assertEquals(0.0, mc.get(zero,i), tol, "i="+i);
 		for(int i=0; i<mc.numElem(diag); i++)
-			assertEquals(1.0,mc.get(diag,i),1e-10);
+			assertEquals(1.0,mc.get(diag,i),tol);
 	}
 	
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class, MatCalcEJMLF32.class})
+	public <M> void testSparse(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+
+		SparseVec s = SparseVec.of(5, new int[] {1, 4}, new double[] {2.0, -1.0});
+		assertEquals(2, s.nnz());
+		assertEquals(0.0, s.get(0));
+		assertEquals(-1.0, s.get(4));
+		assertEquals(Math.sqrt(5), s.norm());
+		M dense = s.toDense(mc);
+		assertArrayEquals(new double[] {0,2,0,0,-1}, mc.toArray(dense));
+
+		M y = mc.vecOf(1,1,1,1,1);
+		assertEquals(1.0, mc.innerSparse(s, y));
+		assertEquals(mc.inner(dense, y), mc.innerSparse(s, y));
+		assertSame(y, mc.axpySparse_inp(0.5, s, y));
+		assertArrayEquals(new double[] {1,2,1,1,0.5}, mc.toArray(y));
+
+		assertThrows(IllegalArgumentException.class, ()->SparseVec.of(5, new int[] {4, 1}, new double[] {1, 1}));
+		assertThrows(IllegalArgumentException.class, ()->SparseVec.of(5, new int[] {5}, new double[] {1}));
+		assertThrows(IllegalArgumentException.class, ()->mc.innerSparse(s, mc.zeros(4)));
+	}
+
 }
@@ -0,0 +1,144 @@
+package hageldave.optisled;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.MinibatchFN;
+import hageldave.optisled.generic.solver.AdamGradientDescent;
+import hageldave.optisled.generic.solver.DescentResult;
+import hageldave.optisled.generic.solver.GradientDescent;
+import hageldave.optisled.generic.solver.MinibatchScheduler;
+import hageldave.optisled.generic.solver.StochasticGradientDescent;
+import hageldave.optisled.primitive.MatCalcPrimitive;
+
+public class MinibatchTest {
+
+	/** solution of {@link #leastSquares(MatCalc, int, AtomicInteger)} */
+	static final double[] SOLUTION = {1, -2, 3};
+
+	/**
+	 * @param n number of terms
+	 * @param numTermEvaluations counts evaluated terms (may be null)
+	 * @return least squares f(x) = sum_i (a_i'x - b_i)^2 with solution x = {@link #SOLUTION}
+	 */
+	static <M> MinibatchFN<M> leastSquares(MatCalc<M> mc, int n, AtomicInteger numTermEvaluations) {
+		M solution = mc.vecOf(SOLUTION);
+		Random rnd = new Random(1);
+		M[] a = mc.matArray(n);
+		double[] b = new double[n];
+		for(int i=0; i<n; i++) {
+			a[i] = mc.rand(3, 1, rnd);
+			b[i] = mc.inner(a[i], solution);
+		}
+		return MinibatchFN.of(mc, n, (i, x, gradAccum)->{
+			if(numTermEvaluations != null)
+				numTermEvaluations.incrementAndGet();
+			double r = mc.inner(a[i], x) - b[i];
+			if(gradAccum != null)
+				mc.axpby_inp(2*r, a[i], 1.0, gradAccum);
+			return r*r;
+		});
+	}
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testMinibatch(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+		int n = 200;
+		M solution = mc.vecOf(SOLUTION);
+		AtomicInteger numTermEvaluations = new AtomicInteger();
+		MinibatchFN<M> f = leastSquares(mc, n, numTermEvaluations);
+
+		StochasticGradientDescent<M> sgd = new StochasticGradientDescent<>(mc);
+		sgd.rand = new Random(2);
+		sgd.hyperparams.set(StochasticGradientDescent.KEY_BATCH_SIZE, 10);
+		sgd.hyperparams.set(GradientDescent.KEY_MAX_ITERATIONS, 1000);
+		DescentResult<M> result = sgd.minimize(f, null, mc.zeros(3, 1), null);
+		assertEquals(0.0, mc.dist(solution, result.argmin), 1e-2, Arrays.toString(mc.toArray(result.argmin)));
+		assertEquals(f.evaluate(result.argmin), result.loss, 1e-12);
+		// each evaluation only touches a minibatch (plus one evaluation of all terms for the final loss)
+		assertEquals(10*result.numFunctionEvaluations + 2*n, numTermEvaluations.get());
+
+		AdamGradientDescent<M> adam = new AdamGradientDescent<>(mc);
+		adam.rand = new Random(3);
+		adam.hyperparams.set(AdamGradientDescent.KEY_BATCH_SIZE, 10);
+		adam.hyperparams.set(AdamGradientDescent.KEY_STEP_SCALING, 0.05);
+		adam.hyperparams.set(AdamGradientDescent.KEY_MAX_ITERATIONS, 2000);
+		result = adam.minimize(f, null, mc.zeros(3, 1), null);
+		assertEquals(0.0, mc.dist(solution, result.argmin), 1e-2, Arrays.toString(mc.toArray(result.argmin)));
+
+		// shuffled epochs visit every term exactly once
+		MinibatchScheduler<M> batches = new MinibatchScheduler<>(mc, f, 64, new Random(4));
+		int[] visits = new int[n];
+		for(int k=0; k<4; k++) {
+			batches.next();
+			for(int j=batches.from(); j<batches.to(); j++)
+				visits[batches.indices()[j]]++;
+		}
+		assertEquals(1, batches.numEpochs());
+		assertEquals(n-3*64, batches.to()-batches.from());
+		assertTrue(Arrays.stream(visits).allMatch(v->v==1));
+	}
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testBatchSizeChange(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+		int n = 200;
+		AtomicInteger numTermEvaluations = new AtomicInteger();
+		MinibatchFN<M> f = leastSquares(mc, n, numTermEvaluations);
+
+		// the batch size is resolved with the configuration, and again when it is changed
+		StochasticGradientDescent<M> sgd = new StochasticGradientDescent<>(mc);
+		sgd.hyperparams.set(GradientDescent.KEY_MAX_ITERATIONS, 20);
+		for(int batchSize : new int[] {10, 25, 10}) {
+			sgd.hyperparams.set(StochasticGradientDescent.KEY_BATCH_SIZE, batchSize);
+			numTermEvaluations.set(0);
+			DescentResult<M> result = sgd.minimize(f, null, mc.zeros(3, 1), null);
+			// minibatch evaluations plus one evaluation of all terms for the final loss
+			assertEquals(batchSize*result.numFunctionEvaluations + n, numTermEvaluations.get());
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testParallelMinibatch(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+		M solution = mc.vecOf(SOLUTION);
+		MinibatchFN<M> f = leastSquares(mc, 1000, null);
+
+		double[][] argmins = new double[3][];
+		for(int k=0; k<3; k++) {
+			AdamGradientDescent<M> adam = new AdamGradientDescent<>(mc);
+			adam.rand = new Random(3);
+			adam.parallelism = k==0 ? 1 : 7;
+			adam.hyperparams.set(AdamGradientDescent.KEY_BATCH_SIZE, 100);
+			adam.hyperparams.set(AdamGradientDescent.KEY_STEP_SCALING, 0.05);
+			adam.hyperparams.set(AdamGradientDescent.KEY_MAX_ITERATIONS, 500);
+			DescentResult<M> result = adam.minimize(f, null, mc.zeros(3, 1), null);
+			assertEquals(0.0, mc.dist(solution, result.argmin), 1e-2, Arrays.toString(mc.toArray(result.argmin)));
+			argmins[k] = mc.toArray(mc.copy(result.argmin));
+		}
+		// parallel evaluation only differs from sequential by rounding, and is reproducible
+		assertArrayEquals(argmins[0], argmins[1], 1e-8);
+		assertArrayEquals(argmins[1], argmins[2], 0.0);
+	}
+
+}
@@ -0,0 +1,168 @@
+package hageldave.optisled;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.problem.VectorFN;
+import hageldave.optisled.generic.solver.DescentAlgorithm;
+import hageldave.optisled.generic.solver.DescentResult;
+import hageldave.optisled.generic.solver.DescentResult.Termination;
+import hageldave.optisled.generic.solver.GradientDescent;
+import hageldave.optisled.generic.solver.Hyperparams;
+import hageldave.optisled.generic.solver.LBFGS;
+import hageldave.optisled.generic.solver.MultiStart;
+import hageldave.optisled.history.DescentLog;
+import hageldave.optisled.primitive.MatCalcPrimitive;
+
+public class MultiStartTest {
+
+	/** f(x) = sum_i x_i^4 - 3x_i^2 + x_i, global minimum at x_i = -1.3008, local minimum at x_i = 1.1309 */
+	static <M> ScalarFN<M> doubleWell(MatCalc<M> mc) {
+		return x->{
+			double sum = 0;
+			for(int i=0; i<mc.numElem(x); i++) {
+				double v = mc.get(x, i);
+				sum += v*v*v*v - 3*v*v + v;
+			}
+			return sum;
+		};
+	}
+
+	/** gradient of {@link #doubleWell(MatCalc)} */
+	static <M> VectorFN<M> doubleWellGradient(MatCalc<M> mc) {
+		return x->{
+			M g = mc.zeros(mc.numElem(x));
+			for(int i=0; i<mc.numElem(x); i++) {
+				double v = mc.get(x, i);
+				mc.set_inp(g, i, 4*v*v*v - 6*v + 1);
+			}
+			return g;
+		};
+	}
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testMultiStart(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+		ScalarFN<M> fx = doubleWell(mc);
+		VectorFN<M> dfx = doubleWellGradient(mc);
+
+		MultiStart<M> ms = new MultiStart<>(mc, ()->new LBFGS<>(mc));
+		MultiStart.Result<M> result = ms.arg_min(fx, dfx, MultiStart.randomStarts(mc, 16, 3, -2, 2, 7));
+
+		assertEquals(16, result.runs.size());
+		assertEquals(false, result.runs.get(result.bestStart).cancelled);
+		for(int i=0; i<3; i++)
+			assertEquals(-1.3008, mc.get(result.argmin, i), 1e-4, Arrays.toString(mc.toArray(result.argmin)));
+	}
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testCancellation(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+		ScalarFN<M> fx = doubleWell(mc);
+		VectorFN<M> dfx = doubleWellGradient(mc);
+
+		// runs one after the other, the second start descends into the dominated local minimum
+		ForkJoinPool pool = new ForkJoinPool(1);
+		try {
+			MultiStart<M> ms = new MultiStart<>(mc, ()->{
+				GradientDescent<M> gd = new GradientDescent<>(mc);
+				gd.hyperparams.set(GradientDescent.KEY_TERMINATION_STEPSIZE, 1e-12);
+				return gd;
+			});
+			ms.pool = pool;
+			ms.cancellationGraceIterations = 5;
+			ms.cancellationMargin = 0.1;
+			MultiStart.Result<M> result = ms.arg_min(fx, dfx, Arrays.asList(mc.vecOf(-1,-1,-1), mc.vecOf(1,1,1)));
+
+			assertEquals(0, result.bestStart);
+			assertFalse(result.runs.get(0).cancelled);
+			MultiStart.Run<M> dominated = result.runs.get(1);
+			assertTrue(dominated.cancelled);
+			// cancelled runs keep the location they reached
+			assertNotNull(dominated.argmin);
+			assertEquals(fx.evaluate(dominated.argmin), dominated.loss, 1e-12);
+			// stop requested in the first iteration after the grace iterations
+			assertEquals(ms.cancellationGraceIterations+1, dominated.numIterations);
+			// completed runs report the descent steps of the solver
+			DescentResult<M> single = ms.solverFactory.get().minimize(fx, dfx, mc.vecOf(-1,-1,-1));
+			assertEquals(single.numIterations, result.runs.get(0).numIterations);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testBestRunNeverCancelled() {
+		// loss rises after the first iteration in every run, each run is dominated by the first loss of another
+		MultiStart<Double> ms = new MultiStart<>(null, ()->new NonMonotoneSolver());
+		ms.cancellationGraceIterations = 0;
+		ms.cancellationMargin = 0;
+		for(int repetition=0; repetition<20; repetition++) {
+			MultiStart.Result<Double> result = ms.arg_min(x->x, x->1.0, Collections.nCopies(8, 0.0));
+			assertTrue(result.bestStart >= 0);
+			assertFalse(result.runs.get(result.bestStart).cancelled);
+			assertEquals(5.0, result.argmin);
+			assertEquals(5.0, result.loss);
+		}
+	}
+
+	/** reports the losses 0, 5, 5, 5 and stops when requested */
+	static class NonMonotoneSolver implements DescentAlgorithm<Double> {
+		Hyperparams hyperparams = new Hyperparams();
+
+		@Override
+		public DescentResult<Double> minimize(ScalarFN<Double> f, VectorFN<Double> df, Double initialGuess, DescentLog log) {
+			double[] losses = {0, 5, 5, 5};
+			int i = 0;
+			do {
+				log.position(new double[] {losses[i]});
+				log.loss(losses[i]);
+			} while(++i < losses.length-1 && !DescentLog.isStopRequested(log));
+			log.position(new double[] {losses[i]});
+			log.loss(losses[i]);
+			Termination termination = i < losses.length-1 ? Termination.STOPPED : Termination.MAX_ITERATIONS;
+			return new DescentResult<>(losses[i], losses[i], 0, i, termination, i+1, 0);
+		}
+
+		@Override
+		public Double arg_min(ScalarFN<Double> f, VectorFN<Double> df, Double initialGuess, DescentLog log) {
+			return minimize(f, df, initialGuess, log).argmin;
+		}
+
+		@Override
+		public Hyperparams getHyperparams() {
+			return hyperparams;
+		}
+
+		@Override
+		public void setHyperparams(Hyperparams params) {
+			this.hyperparams = params;
+		}
+
+		@Override
+		public double getLoss() {
+			return 5;
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+package hageldave.optisled;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.numerics.NumericGradient;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.problem.ScalarFN.BatchScalarFN;
+import hageldave.optisled.generic.solver.GradientDescent;
+import hageldave.optisled.primitive.MatCalcPrimitive;
+
+public class NumericGradientTest {
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testParallelEqualsSequential(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+		
+		M transform = mc.rand(13, 13, new Random(1));
+		ScalarFN<M> fx = x->mc.inner(x, mc.matmul(transform, x)) + Math.sin(mc.sum(x));
+		M x = mc.rand(13, 1, new Random(2));
+		
+		NumericGradient<M> sequential = new NumericGradient<>(mc, fx);
+		NumericGradient<M> parallel = new NumericGradient<>(mc, fx);
+		parallel.parallelism = 4;
+		parallel.pool = new ForkJoinPool(4);
+		
+		M dSeq = sequential.evaluate(x);
+		M dPar = parallel.evaluate(x);
+		M dSeqCentral = sequential.central.evaluate(x);
+		M dParCentral = parallel.central.evaluate(x);
+		for(int i=0; i<mc.numElem(x); i++) {
+			assertEquals(mc.get(dSeq, i), mc.get(dPar, i), 0.0);
+			assertEquals(mc.get(dSeqCentral, i), mc.get(dParCentral, i), 0.0);
+		}
+		parallel.pool.shutdown();
+	}
+	
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testBatchedEqualsSequential(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+		
+		M transform = mc.rand(13, 13, new Random(1));
+		ScalarFN<M> fx = x->mc.inner(x, mc.matmul(transform, x)) + Math.sin(mc.sum(x));
+		BatchScalarFN<M> fxBatch = new BatchScalarFN<M>() {
+			@Override
+			public double evaluate(M x) {
+				return fx.evaluate(x);
+			}
+			@Override
+			public void evaluateBatch(M points, double[] results) {
+				for(int j=0; j<mc.numCols(points); j++)
+					results[j] = fx.evaluate(mc.getCol(points, j));
+			}
+		};
+		M x = mc.rand(13, 1, new Random(2));
+		
+		NumericGradient<M> sequential = new NumericGradient<>(mc, fx);
+		NumericGradient<M> batched = new NumericGradient<>(mc, fxBatch);
+		batched.batchSize = 5;
+		
+		M dSeq = sequential.evaluate(x);
+		M dBatch = batched.evaluate(x);
+		M dSeqCentral = sequential.central.evaluate(x);
+		M dBatchCentral = batched.central.evaluate(x);
+		for(int i=0; i<mc.numElem(x); i++) {
+			assertEquals(mc.get(dSeq, i), mc.get(dBatch, i), 0.0);
+			assertEquals(mc.get(dSeqCentral, i), mc.get(dBatchCentral, i), 0.0);
+		}
+		
+		GradientDescent<M> gd = new GradientDescent<>(mc);
+		M argminSeq = gd.arg_min(fx, sequential, x);
+		M argminBatch = gd.arg_min(fxBatch, sequential, x);
+		for(int i=0; i<mc.numElem(x); i++) {
+			assertEquals(mc.get(argminSeq, i), mc.get(argminBatch, i), 0.0);
+		}
+	}
+	
+}
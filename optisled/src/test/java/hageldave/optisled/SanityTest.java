@@ -10,6 +10,7 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.primitive.MatCalcPrimitive;
 import hageldave.optisled.generic.numerics.MatCalc;
 import hageldave.optisled.generic.numerics.NumericGradient;
 import hageldave.optisled.generic.problem.ScalarFN;
@@ -21,7 +22,7 @@ import java.util.Arrays;
 public class SanityTest {
 
 	@ParameterizedTest
-	@ValueSource(classes = {MatCalcEJML.class})
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
 	public <M> void testQuadraticProblem(Class<MatCalc<M>> implementation)
 			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
 	{
@@ -50,7 +51,7 @@ public class SanityTest {
 	}
 
 	@ParameterizedTest
-	@ValueSource(classes = {MatCalcEJML.class})
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
 	public <M> void testQuadraticConstrainedProblemAug(Class<MatCalc<M>> implementation)
 			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
 	{
@@ -83,7 +84,7 @@ public class SanityTest {
 	}
 
 	@ParameterizedTest
-	@ValueSource(classes = {MatCalcEJML.class})
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
 	public <M> void testQuadraticConstrainedProblemLB(Class<MatCalc<M>> implementation)
 			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
 	{
@@ -114,5 +115,5 @@ public class SanityTest {
 		assertEquals(0.0, boundary.evaluate(argmin), 1e-5, Arrays.toString(mc.toArray(argmin)));
 		assertEquals(boundary.evaluate(translate), mc.dist(argmin,translate), 1e-5, Arrays.toString(mc.toArray(argmin)));
 	}
-	
+
 }
@@ -0,0 +1,101 @@
+package hageldave.optisled;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.FMatrixRMaj;
+import org.junit.jupiter.api.Test;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.ejml.MatCalcEJMLF32;
+import hageldave.optisled.generic.numerics.NumericGradient;
+import hageldave.optisled.generic.problem.CachedFN;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.solver.AdamGradientDescent;
+import hageldave.optisled.generic.solver.DescentResult;
+import hageldave.optisled.generic.solver.GradientDescent;
+import hageldave.optisled.generic.solver.StrongWolfeLineSearch;
+import hageldave.optisled.history.DescentLog;
+
+public class SinglePrecisionTest {
+
+	@Test
+	public void testSinglePrecision() {
+		MatCalcEJMLF32 mc = new MatCalcEJMLF32();
+		FMatrixRMaj translate = mc.vecOf(3.2, -5);
+		ScalarFN<FMatrixRMaj> fx = x->{
+			/* f(x) = (x-a)^T (x-a) */
+			x = mc.sub(x,translate);
+			return mc.inner(x, x);
+		};
+		// default finite difference step is adapted to float precision
+		NumericGradient<FMatrixRMaj> dfx = new NumericGradient<>(mc, fx);
+		ScalarFN<DMatrixRMaj> fxDouble = x->0.0;
+		assertEquals(NumericGradient.DEFAULT_H, new NumericGradient<>(new MatCalcEJML(), fxDouble).h);
+		assertTrue(dfx.h > 1e-5, ""+dfx.h);
+		FMatrixRMaj x = mc.vecOf(1, 1);
+		FMatrixRMaj grad = mc.scale(mc.sub(x, translate), 2);
+		assertEquals(0.0, mc.dist(grad, dfx.evaluate(x)), 1e-2*mc.norm(grad));
+		assertEquals(0.0, mc.dist(grad, dfx.central.evaluate(x)), 1e-2*mc.norm(grad));
+
+		GradientDescent<FMatrixRMaj> gd = new GradientDescent<>(mc);
+		DescentResult<FMatrixRMaj> result = gd.minimize(fx, dfx, mc.vecOf(0, 0), null);
+		assertEquals(DescentResult.Termination.STEP_SIZE, result.termination);
+		assertEquals(0.0, mc.dist(result.argmin, translate), 1e-3, Arrays.toString(mc.toArray(result.argmin)));
+		gd.lineSearch = new StrongWolfeLineSearch<>(mc);
+		for(int i=0; i<20; i++) {
+			result = gd.minimize(fx, dfx, mc.rand(2, 1), null);
+			assertEquals(0.0, mc.dist(result.argmin, translate), 1e-3, Arrays.toString(mc.toArray(result.argmin)));
+		}
+
+		AdamGradientDescent<FMatrixRMaj> adam = new AdamGradientDescent<>(mc);
+		adam.hyperparams.set(AdamGradientDescent.KEY_STEP_SCALING, 0.1);
+		adam.hyperparams.set(AdamGradientDescent.KEY_MAX_ITERATIONS, 2000);
+		result = adam.minimize(fx, dfx, mc.vecOf(0, 0), null);
+		assertEquals(0.0, mc.dist(result.argmin, translate), 1e-2, Arrays.toString(mc.toArray(result.argmin)));
+
+		// values are handed out as double copies
+		double[] values = mc.toArray(translate);
+		values[0] = 0;
+		assertEquals(3.2f, mc.get(translate, 0));
+	}
+
+	@Test
+	public void testNoCopiesOnHotPath() {
+		// bytes allocated by the current thread, only available on HotSpot
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(!(bean instanceof com.sun.management.ThreadMXBean) || !((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported())
+			return;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)bean;
+		long thread = Thread.currentThread().getId();
+
+		MatCalcEJMLF32 mc = new MatCalcEJMLF32();
+		int dim = 100_000;
+		FMatrixRMaj x = mc.zeros(dim);
+		CachedFN<FMatrixRMaj> cached = new CachedFN<>(mc, v->0.0, v->v, 4);
+		DescentLog log = new DescentLog(4, 10);
+		// warm up, buffers, cache keys and all records of the log are allocated
+		for(int i=0; i<40; i++) {
+			mc.set_inp(x, 0, i);
+			cached.evaluate(x);
+			log.position(mc, x);
+			log.direction(mc, x);
+		}
+		long before = threads.getThreadAllocatedBytes(thread);
+		for(int i=0; i<100; i++) {
+			mc.set_inp(x, 0, -i);
+			cached.evaluate(x);
+			log.position(mc, x);
+			log.direction(mc, x);
+		}
+		long allocated = threads.getThreadAllocatedBytes(thread)-before;
+		assertEquals(140, cached.numFunctionEvaluations);
+		// a single widened copy of x would be 800kB
+		assertTrue(allocated < 100_000, allocated + " bytes allocated");
+	}
+
+}
@@ -0,0 +1,73 @@
+package hageldave.optisled;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.OptimizationProblem;
+import hageldave.optisled.generic.problem.OptimizationProblemBuilder;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.solver.DescentResult;
+import hageldave.optisled.generic.solver.LogBarrier;
+import hageldave.optisled.generic.solver.SolverListener;
+import hageldave.optisled.primitive.MatCalcPrimitive;
+
+public class SolverListenerTest {
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testSolverListener(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+
+		M translate = mc.vecOf(3.2, -5);
+		ScalarFN<M> fx = x->mc.dist(x, translate);
+		// boundary constraint allowing only x-2 < 0 == x < 2
+		ScalarFN.ScalarFNWithGradient<M> boundary = ScalarFN.linear(mc, mc.vecOf(1.0, 0.0), -2.0);
+		OptimizationProblem<M> problem = OptimizationProblemBuilder.instance(mc, 2)
+				.setObjective(fx, null)
+				.addIneqConstraint(boundary, null)
+				.build();
+
+		int[] counts = new int[4];
+		int[] numInnerIterations = new int[1];
+		LogBarrier<M> lb = new LogBarrier<>(mc);
+		lb.maxNumIterations = 5;
+		lb.listener = new SolverListener() {
+			@Override
+			public void lineSearchFinished(int numProbes, double stepSize, long nanos) {
+				assertTrue(numProbes > 0 && nanos >= 0);
+				counts[0]++;
+			}
+			@Override
+			public void descentFinished(DescentResult<?> result, long nanos) {
+				assertTrue(result.numFunctionEvaluations > result.numIterations);
+				numInnerIterations[0] += result.numIterations;
+				counts[1]++;
+			}
+			@Override
+			public void outerIterationFinished(int iteration, DescentResult<?> inner, long nanos) {
+				assertEquals(counts[2]++, iteration);
+			}
+			@Override
+			public void constrainedSolveFinished(int numOuterIterations, long nanos) {
+				assertEquals(5, numOuterIterations);
+				counts[3]++;
+			}
+		};
+		lb.arg_min(problem, mc.vecOf(0, 0));
+
+		assertEquals(numInnerIterations[0], counts[0]);
+		assertEquals(5, counts[1]);
+		assertEquals(5, counts[2]);
+		assertEquals(1, counts[3]);
+	}
+
+}
@@ -0,0 +1,58 @@
+package hageldave.optisled;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.numerics.SparseVec;
+import hageldave.optisled.generic.problem.OptimizationProblem;
+import hageldave.optisled.generic.problem.OptimizationProblemBuilder;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.problem.SparseVectorFN;
+import hageldave.optisled.generic.solver.AugmentedLagrangian;
+import hageldave.optisled.generic.solver.LogBarrier;
+import hageldave.optisled.primitive.MatCalcPrimitive;
+
+public class SparseConstraintsTest {
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testSparseConstraints(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+
+		M transform = mc.eye(2, 0.2);
+		M translate = mc.vecOf(3.2, -5);
+		ScalarFN<M> fx = x->{
+			/* f(x) = (x-a)^T B (x-a) */
+			x = mc.sub(x,translate);
+			return mc.inner(x, mc.matmul(transform, x));
+		};
+		// same boundary constraint x < 2 with dense and sparse gradient
+		ScalarFN.ScalarFNWithGradient<M> dense = ScalarFN.linear(mc, mc.vecOf(1.0, 0.0), -2.0);
+		ScalarFN.ScalarFNWithGradient<M> sparse = ScalarFN.linear(mc, SparseVec.unit(2, 0, 1.0), -2.0);
+		assertTrue(sparse.gradient() instanceof SparseVectorFN);
+		assertArrayEquals(mc.toArray(dense.gradient().evaluate(translate)), mc.toArray(sparse.gradient().evaluate(translate)));
+
+		for(int k=0; k<2; k++) {
+			OptimizationProblem<M> problem = OptimizationProblemBuilder.instance(mc, 2)
+					.setObjective(fx, null)
+					.addIneqConstraint(k==0 ? dense : sparse, null)
+					.build();
+			M argminLB = new LogBarrier<>(mc).arg_min(problem, mc.vecOf(0, 0));
+			M argminAL = new AugmentedLagrangian<>(mc).arg_min(problem, mc.vecOf(0, 0));
+			assertEquals(0.0, dense.evaluate(argminLB), 1e-5, Arrays.toString(mc.toArray(argminLB)));
+			assertEquals(0.0, dense.evaluate(argminAL), 1e-4, Arrays.toString(mc.toArray(argminAL)));
+		}
+	}
+
+}
@@ -0,0 +1,47 @@
+package hageldave.optisled;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.numerics.NumericGradient;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.solver.GradientDescent;
+import hageldave.optisled.generic.solver.StrongWolfeLineSearch;
+import hageldave.optisled.primitive.MatCalcPrimitive;
+
+public class StrongWolfeLineSearchTest {
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testQuadraticProblemWolfe(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+
+		M transform = mc.matOf(2, 2.0,0.2,0.4,1.0);
+		M translate = mc.vecOf(3.2, -5);
+
+		ScalarFN<M> fx = x->{
+			/* f(x) = (x-a)^T B (x-a) */
+			x = mc.sub(x,translate);
+			return mc.inner(x, mc.matmul(transform, x));
+		};
+		NumericGradient<M> dfx = new NumericGradient<>(mc, fx);
+
+		GradientDescent<M> gd = new GradientDescent<>(mc);
+		gd.lineSearch = new StrongWolfeLineSearch<>(mc);
+		gd.hyperparams.set(StrongWolfeLineSearch.PARAM_LINESEARCH_CURVATURE_FACTOR, 0.1);
+		M argmin = gd.arg_min(fx, dfx, mc.rand(2, 1), null);
+
+		M diff = mc.sub(argmin, translate);
+		assertEquals(0.0, mc.get(diff, 0), 1e-4);
+		assertEquals(0.0, mc.get(diff, 1), 1e-4);
+	}
+
+}
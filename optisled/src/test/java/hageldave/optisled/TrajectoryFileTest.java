@@ -0,0 +1,72 @@
+package hageldave.optisled;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.OptimizationProblem;
+import hageldave.optisled.generic.problem.OptimizationProblemBuilder;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.solver.LogBarrier;
+import hageldave.optisled.generic.solver.TrajectoryInfo;
+import hageldave.optisled.history.TrajectoryFile;
+import hageldave.optisled.primitive.MatCalcPrimitive;
+
+public class TrajectoryFileTest {
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testTrajectoryFile(Class<MatCalc<M>> implementation, @TempDir Path tmp)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException, IOException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+
+		M translate = mc.vecOf(3.2, -5);
+		ScalarFN<M> fx = x->mc.dist(x, translate);
+		ScalarFN.ScalarFNWithGradient<M> boundary = ScalarFN.linear(mc, mc.vecOf(1.0, 0.0), -2.0);
+		OptimizationProblem<M> problem = OptimizationProblemBuilder.instance(mc, 2)
+				.setObjective(fx, null)
+				.addIneqConstraint(boundary, null)
+				.build();
+
+		LogBarrier<M> lb = new LogBarrier<>(mc);
+		lb.maxNumIterations = 20;
+		List<TrajectoryInfo> expected = new ArrayList<>();
+		lb.arg_min(problem, mc.vecOf(0, 0), expected);
+		Path file = tmp.resolve("trace.bin");
+		try(TrajectoryFile trace = TrajectoryFile.create(file)){
+			lb.arg_min(problem, mc.vecOf(0, 0), trace);
+			assertEquals(expected.size(), trace.size());
+		}
+
+		try(TrajectoryFile trace = TrajectoryFile.open(file)){
+			assertEquals(expected.size(), trace.size());
+			assertEquals(TrajectoryFile.HEADER_SIZE + expected.size()*8L*(2+2*1+4), Files.size(file));
+			for(int i=0; i<expected.size(); i++) {
+				TrajectoryInfo e = expected.get(i);
+				TrajectoryInfo r = trace.get(i);
+				assertArrayEquals(e.x, r.x);
+				assertArrayEquals(e.gx, r.gx);
+				assertArrayEquals(e.lambda, r.lambda);
+				assertEquals(e.fx, r.fx);
+				assertEquals(e.loss, r.loss);
+				assertEquals(e.mu, r.mu);
+			}
+			assertThrows(UnsupportedOperationException.class, ()->trace.add(expected.get(0)));
+		}
+	}
+
+}
@@ -0,0 +1,136 @@
+package hageldave.optisled;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import hageldave.optisled.ejml.MatCalcEJML;
+import hageldave.optisled.generic.numerics.MatCalc;
+import hageldave.optisled.generic.problem.OptimizationProblem;
+import hageldave.optisled.generic.problem.OptimizationProblemBuilder;
+import hageldave.optisled.generic.problem.ScalarFN;
+import hageldave.optisled.generic.solver.AugmentedLagrangian;
+import hageldave.optisled.generic.solver.DescentResult;
+import hageldave.optisled.generic.solver.LBFGS;
+import hageldave.optisled.generic.solver.LogBarrier;
+import hageldave.optisled.generic.solver.SolverListener;
+import hageldave.optisled.primitive.MatCalcPrimitive;
+
+public class WarmStartTest {
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testWarmStartLBFGS(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+
+		M transform = mc.eye(2, 0.2);
+		M translate = mc.vecOf(3.2, -5);
+		ScalarFN<M> fx = x->{
+			/* f(x) = (x-a)^T B (x-a) */
+			x = mc.sub(x,translate);
+			return mc.inner(x, mc.matmul(transform, x));
+		};
+		// boundary constraint allowing only x-2 < 0 == x < 2
+		ScalarFN.ScalarFNWithGradient<M> boundary = ScalarFN.linear(mc, mc.vecOf(1.0, 0.0), -2.0);
+		OptimizationProblem<M> problem = OptimizationProblemBuilder.instance(mc, 2)
+				.setObjective(fx, null)
+				.addIneqConstraint(boundary, null)
+				.build();
+
+		int[] numEvaluations = new int[2];
+		for(int warm=0; warm<2; warm++) {
+			int w = warm;
+			AugmentedLagrangian<M> augl = new AugmentedLagrangian<>(mc);
+			augl.innerSolver = new LBFGS<>(mc);
+			augl.warmStart = warm==1;
+			augl.listener = new SolverListener() {
+				@Override
+				public void outerIterationFinished(int iteration, DescentResult<?> inner, long nanos) {
+					numEvaluations[w] += inner.numFunctionEvaluations;
+				}
+			};
+			M argmin = augl.arg_min(problem, mc.vecOf(0, 0));
+			assertEquals(0.0, boundary.evaluate(argmin), 1e-5, Arrays.toString(mc.toArray(argmin)));
+			assertEquals(boundary.evaluate(translate), mc.dist(argmin,translate), 1e-5, Arrays.toString(mc.toArray(argmin)));
+		}
+		// reusing the curvature history saves evaluations
+		assertTrue(numEvaluations[1] < numEvaluations[0], Arrays.toString(numEvaluations));
+	}
+
+	@ParameterizedTest
+	@ValueSource(classes = {MatCalcEJML.class, MatCalcPrimitive.class})
+	public <M> void testWarmStartGradientDescent(Class<MatCalc<M>> implementation)
+			throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException
+	{
+		MatCalc<M> mc = implementation.getDeclaredConstructor().newInstance();
+
+		M transform = mc.eye(2, 0.2);
+		M translate = mc.vecOf(3.2, -5);
+		ScalarFN<M> fx = x->{
+			/* f(x) = (x-a)^T B (x-a) */
+			x = mc.sub(x,translate);
+			return mc.inner(x, mc.matmul(transform, x));
+		};
+		// boundary constraint allowing only x-2 < 0 == x < 2
+		ScalarFN.ScalarFNWithGradient<M> boundary = ScalarFN.linear(mc, mc.vecOf(1.0, 0.0), -2.0);
+		OptimizationProblem<M> problem = OptimizationProblemBuilder.instance(mc, 2)
+				.setObjective(fx, null)
+				.addIneqConstraint(boundary, null)
+				.build();
+
+		// default inner gradient descent, counting evaluations and line search probes through the listener
+		int[][] counts = new int[2][2];
+		for(int warm=0; warm<2; warm++) {
+			int[] c = counts[warm];
+			SolverListener listener = new SolverListener() {
+				@Override
+				public void lineSearchFinished(int numProbes, double stepSize, long nanos) {
+					c[1] += numProbes;
+				}
+				@Override
+				public void outerIterationFinished(int iteration, DescentResult<?> inner, long nanos) {
+					c[0] += inner.numFunctionEvaluations;
+				}
+			};
+			LogBarrier<M> lb = new LogBarrier<>(mc);
+			lb.warmStart = warm==1;
+			lb.listener = listener;
+			M argmin = lb.arg_min(problem, mc.vecOf(0, 0));
+			assertEquals(0.0, boundary.evaluate(argmin), 1e-5, Arrays.toString(mc.toArray(argmin)));
+			assertEquals(boundary.evaluate(translate), mc.dist(argmin,translate), 1e-5, Arrays.toString(mc.toArray(argmin)));
+		}
+		// carrying over the step size saves backtracking
+		assertTrue(counts[1][0] < counts[0][0], Arrays.deepToString(counts));
+		assertTrue(counts[1][1] < counts[0][1], Arrays.deepToString(counts));
+
+		for(int warm=0; warm<2; warm++) {
+			int[] c = counts[warm];
+			c[0] = c[1] = 0;
+			AugmentedLagrangian<M> augl = new AugmentedLagrangian<>(mc);
+			augl.warmStart = warm==1;
+			augl.listener = new SolverListener() {
+				@Override
+				public void lineSearchFinished(int numProbes, double stepSize, long nanos) {
+					c[1] += numProbes;
+				}
+				@Override
+				public void outerIterationFinished(int iteration, DescentResult<?> inner, long nanos) {
+					c[0] += inner.numFunctionEvaluations;
+				}
+			};
+			M argmin = augl.arg_min(problem, mc.vecOf(0, 0));
+			assertEquals(0.0, boundary.evaluate(argmin), 1e-5, Arrays.toString(mc.toArray(argmin)));
+			assertEquals(boundary.evaluate(translate), mc.dist(argmin,translate), 1e-5, Arrays.toString(mc.toArray(argmin)));
+		}
+		assertTrue(counts[1][0] < counts[0][0], Arrays.deepToString(counts));
+		assertTrue(counts[1][1] < counts[0][1], Arrays.deepToString(counts));
+	}
+
+}